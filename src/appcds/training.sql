@@ -0,0 +1,12 @@
+-- loads the lexer, the validator and the dialects
+-- for the AppCDS archive of the command line runner
+CREATE TABLE appcds_training (
+    id INT,
+    "name" VARCHAR(100)
+);
+
+/* a block comment */
+INSERT INTO appcds_training VALUES (1, 'it''s; a literal');
+UPDATE appcds_training SET "name"=E'\'' WHERE id=1;
+DELETE FROM appcds_training;
+DROP TABLE appcds_training;
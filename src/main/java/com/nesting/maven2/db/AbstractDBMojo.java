@@ -1,25 +1,32 @@
 
 package com.nesting.maven2.db;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
+import java.lang.management.ManagementFactory;
 import java.nio.charset.Charset;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -28,11 +35,21 @@ import org.apache.maven.settings.Settings;
 
 /**
  * Abstract mojo that all DB related mojos
- * inherit from.
+ * inherit from. The scripts are executed by
+ * a {@link ScriptRunner}, configured from the
+ * mojo's parameters. The runner goes through
+ * the mojo's protected script methods, so
+ * subclasses can override them to change how
+ * the scripts are executed.
  */
 public abstract class AbstractDBMojo
     extends AbstractMojo {    
     
+    private static final String PROGRESS_MBEAN_NAME = 
+        "com.nesting.maven2.db:type=ScriptProgress";
+    
+    private static final String UNKNOWN_LOCATION = "unknown";
+    
     /**
      * The database connection settings for
      * the application.
@@ -84,6 +101,155 @@ public abstract class AbstractDBMojo
 	 */
 	private String scriptEncoding;
     
+    /**
+     * The runner that executes the scripts, created
+     * for every execution.
+     */
+    private MojoScriptRunner runner;
+    
+    /**
+     * The length (in characters, or hex digits) above which string
+     * literals of INSERT and UPDATE statements are streamed to the
+     * database as parameters rather than sent as sql text, 0 to
+     * never do so.
+     * @parameter default-value="1048576"
+     */
+    private int lobThreshold;
+    
+    /**
+     * Whether or not to rewrite consecutive single row INSERTs
+     * into the same table into multi row INSERTs. Needs a known
+     * sql dialect, INSERTs using sequence values are left alone.
+     * @parameter default-value="false"
+     */
+    private boolean coalesceInserts;
+    
+    /**
+     * The most rows in one coalesced INSERT.
+     * @parameter default-value="1000"
+     */
+    private int coalesceMaxRows;
+    
+    /**
+     * The most characters of values in one coalesced INSERT.
+     * @parameter default-value="1048576"
+     */
+    private int coalesceMaxLength;
+    
+    /**
+     * The sql dialect of the database (mysql, mariadb, postgresql,
+     * sqlserver, oracle, db2, h2, hsqldb, derby, sqlite or generic),
+     * detected from the connection if not set.
+     * @parameter
+     */
+    private String sqlDialect;
+    
+    /**
+     * The number of threads used to decompress compressed scripts
+     * whose format allows it (BGZF, pbzip2 and multi frame zstd),
+     * 0 means one per available processor.
+     * @parameter default-value="0"
+     */
+    private int decompressionThreads;
+    
+    /**
+     * The timeout, in seconds, of a single statement, 0 for none.
+     * @parameter default-value="0"
+     */
+    private int statementTimeout;
+    
+    /**
+     * The timeout, in seconds, of a batch, 0 for none.
+     * @parameter default-value="0"
+     */
+    private int batchTimeout;
+    
+    /**
+     * The lock timeout, in seconds, set on every connection
+     * using the sql dialect's session setting, 0 to leave
+     * the database's default.
+     * @parameter default-value="0"
+     */
+    private int lockTimeout;
+    
+    /**
+     * The number of seconds a statement (or batch) may run
+     * before a warning, saying where it came from, is logged.
+     * 0 for no warnings.
+     * @parameter default-value="60"
+     */
+    private int slowStatementWarning;
+    
+    /**
+     * Whether or not to refresh the optimizer statistics of the
+     * tables written to by the scripts once the goal is done.
+     * @parameter default-value="false"
+     */
+    private boolean refreshStatistics;
+    
+    /**
+     * The number of connections statistics are refreshed on
+     * in parallel.
+     * @parameter default-value="4"
+     */
+    private int statisticsThreads;
+    
+    /**
+     * How often, in seconds, to report the progress of the
+     * script being executed, 0 to not report it.
+     * @parameter default-value="10"
+     */
+    private int progressInterval;
+    
+    /**
+     * Whether or not to validate every script before the
+     * first connection is opened, failing the build on
+     * unterminated strings or comments, empty statements,
+     * text that isn't valid in the script encoding and
+     * misplaced delimiters.
+     * @parameter default-value="false"
+     */
+    private boolean validateScripts;
+    
+    /**
+     * Whether or not to also prepare (without executing) every
+     * statement on a single connection once the scripts are
+     * validated. Statements the database can't prepare are
+     * logged as warnings, as they may refer to objects created
+     * by the statements before them. Whether preparing reaches
+     * the server at all depends on the driver.
+     * @parameter default-value="false"
+     */
+    private boolean validatePrepare;
+    
+    /**
+     * Used to create artifacts for script artifacts.
+     * @component
+     */
+    private ArtifactFactory artifactFactory;
+    
+    /**
+     * Used to resolve script artifacts.
+     * @component
+     */
+    private ArtifactResolver artifactResolver;
+    
+    /**
+     * The local repository.
+     * @parameter expression="${localRepository}"
+     * @required
+     * @readonly
+     */
+    private ArtifactRepository localRepository;
+    
+    /**
+     * The remote repositories.
+     * @parameter expression="${project.remoteArtifactRepositories}"
+     * @required
+     * @readonly
+     */
+    private List remoteRepositories;
+    
     /**
      * Child mojos need to implement this.
      * @throws MojoExecutionException on error
@@ -93,6 +259,24 @@ public abstract class AbstractDBMojo
         throws MojoExecutionException, 
         MojoFailureException;
     
+    /**
+     * Returns the directories of the scripts the mojo
+     * executes, for validating them.
+     * @return the directories, or null if none
+     */
+    protected File[] getScriptDirectories() {
+        return null;
+    }
+    
+    /**
+     * Returns the artifacts of the scripts the mojo
+     * executes, for validating them.
+     * @return the artifacts, or null if none
+     */
+    protected ScriptArtifact[] getScriptArtifacts() {
+        return null;
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -101,7 +285,261 @@ public abstract class AbstractDBMojo
         MojoFailureException {
         checkDbSettings(adminDbConnectionSettings, "admin");
         checkDbSettings(appDbConnectionSettings, "application");
-        executeInternal();
+        runner = createRunner();
+        ObjectName progressName = null;
+        try {
+            if (validateScripts) {
+                validateScripts();
+            }
+            progressName = registerProgress();
+            executeInternal();
+            if (refreshStatistics) {
+                refreshStatistics();
+            }
+        } catch(MojoExceptionTunnel tunnel) {
+            tunnel.rethrow();
+        } finally {
+            unregisterProgress(progressName);
+            runner.close();
+        }
+    }
+    
+    /**
+     * Creates the {@link ScriptRunner} from the mojo's parameters.
+     * @return the runner
+     * @throws MojoFailureException on error
+     */
+    private MojoScriptRunner createRunner() 
+        throws MojoFailureException {
+        MojoScriptRunner ret = new MojoScriptRunner();
+        ret.setBatchSize(batchSize);
+        ret.setUseBatch(useBatch);
+        ret.setSqlDelimiter(sqlDelimiter);
+        ret.setScriptEncoding(scriptEncoding);
+        ret.setLobThreshold(lobThreshold);
+        ret.setCoalesceInserts(coalesceInserts);
+        ret.setCoalesceMaxRows(coalesceMaxRows);
+        ret.setCoalesceMaxLength(coalesceMaxLength);
+        ret.setDecompressionThreads(decompressionThreads);
+        ret.setStatementTimeout(statementTimeout);
+        ret.setBatchTimeout(batchTimeout);
+        ret.setLockTimeout(lockTimeout);
+        ret.setSlowStatementWarning(slowStatementWarning);
+        ret.setProgressInterval(progressInterval);
+        ret.setTrackTables(refreshStatistics);
+        if (!StringUtils.isEmpty(sqlDialect)) {
+            SqlDialect dialect = SqlDialect.forName(sqlDialect);
+            if (dialect==null) {
+                throw new MojoFailureException("Unknown sql dialect: "+sqlDialect);
+            }
+            ret.setSqlDialect(dialect);
+        }
+        return ret;
+    }
+    
+    /**
+     * Returns the {@link ScriptRunner} of the current execution.
+     * @return the runner
+     */
+    protected ScriptRunner getRunner() {
+        return runner;
+    }
+    
+    /**
+     * Validates all of the scripts in the directories and
+     * artifacts of the mojo, in parallel, and prepares their
+     * statements if validatePrepare is set.
+     * @throws MojoExecutionException on error
+     * @throws MojoFailureException on error
+     */
+    private void validateScripts()
+        throws MojoExecutionException, 
+        MojoFailureException {
+        
+        // gather the scripts
+        List scripts = new ArrayList();
+        List zips = new ArrayList();
+        File[] directories = getScriptDirectories();
+        ScriptArtifact[] artifacts = getScriptArtifacts();
+        try {
+            for (int i=0; directories!=null && i<directories.length; i++) {
+                checkDirectory(directories[i]);
+                File[] files = ScriptRunner.listScriptFiles(directories[i]);
+                for (int j=0; j<files.length; j++) {
+                    final File file = files[j];
+                    scripts.add(new ScriptValidator.Script() {
+                        public String getName() {
+                            return file.getName();
+                        }
+                        public InputStream open()
+                            throws IOException {
+                            return new FileInputStream(file);
+                        } }
+                    );
+                }
+            }
+            for (int i=0; artifacts!=null && i<artifacts.length; i++) {
+                final ZipFile zip = new ZipFile(
+                    resolveScriptArtifact(artifacts[i]));
+                zips.add(zip);
+                final String prefix = 
+                    ScriptRunner.normalizeScriptPath(artifacts[i].getPath());
+                List entries = runner.listScriptEntries(zip, prefix);
+                for (int j=0; j<entries.size(); j++) {
+                    final ZipEntry entry = (ZipEntry)entries.get(j);
+                    scripts.add(new ScriptValidator.Script() {
+                        public String getName() {
+                            return entry.getName().substring(prefix.length());
+                        }
+                        public InputStream open()
+                            throws IOException {
+                            return zip.getInputStream(entry);
+                        } }
+                    );
+                }
+            }
+            
+            // tokenize them all
+            getLog().info("Validating "+scripts.size()+" script(s)");
+            double startTime = System.currentTimeMillis();
+            String encoding = scriptEncoding!=null 
+                ? scriptEncoding : Charset.defaultCharset().name();
+            SqlDialect dialect = runner.getDialect(
+                appDbConnectionSettings.getJdbcUrl());
+            List problems = new ScriptValidator(sqlDelimiter, encoding, dialect)
+                .validate(scripts);
+            for (int i=0; i<problems.size(); i++) {
+                getLog().error(" "+problems.get(i));
+            }
+            if (!problems.isEmpty()) {
+                throw new MojoFailureException(
+                    problems.size()+" problem(s) found validating the scripts");
+            }
+            double endTime = System.currentTimeMillis();
+            double elapsed = ((endTime-startTime)/1000.0);
+            getLog().info(" scripts validated in "+elapsed+" second(s)");
+            
+            if (validatePrepare) {
+                prepareScripts(scripts);
+            }
+            
+        } catch(IOException ioe) {
+            throw new MojoExecutionException(
+                "Error validating database scripts", ioe);
+        } finally {
+            for (int i=0; i<zips.size(); i++) {
+                try {
+                    ((ZipFile)zips.get(i)).close();
+                } catch(IOException ioe) {
+                    getLog().debug("Unable to close script artifact", ioe);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Prepares, without executing, every statement of the given
+     * scripts on one connection, logging the ones that the
+     * database can't prepare.
+     * @param scripts the {@link ScriptValidator.Script}s
+     * @throws MojoExecutionException on error
+     * @throws MojoFailureException on error
+     * @throws IOException on error
+     */
+    private void prepareScripts(List scripts)
+        throws MojoExecutionException, 
+        MojoFailureException,
+        IOException {
+        getLog().info("Preparing the statements of "+scripts.size()+" script(s)");
+        int failed = 0;
+        try {
+            Connection con = openApplicationDbConnection();
+            try {
+                for (int i=0; i<scripts.size(); i++) {
+                    ScriptValidator.Script script = 
+                        (ScriptValidator.Script)scripts.get(i);
+                    failed += runner.prepareSqlScript(
+                        script.getName(), script.open(), con);
+                }
+            } finally {
+                con.close();
+            }
+        } catch(SQLException se) {
+            throw new MojoExecutionException(
+                "Error preparing database scripts", se);
+        }
+        getLog().info(" "+failed+" statement(s) couldn't be prepared");
+    }
+    
+    /**
+     * Refreshes the optimizer statistics of the tables written
+     * to, spreading them over statisticsThreads connections.
+     * @throws MojoExecutionException on error
+     * @throws MojoFailureException on error
+     */
+    private void refreshStatistics()
+        throws MojoExecutionException, 
+        MojoFailureException {
+        int tables = runner.getWrittenTables().size();
+        if (tables==0) {
+            return;
+        }
+        List connections = new ArrayList();
+        try {
+            int threads = Math.max(1, Math.min(statisticsThreads, tables));
+            for (int i=0; i<threads; i++) {
+                connections.add(openApplicationDbConnection());
+            }
+            runner.refreshStatistics(connections);
+            
+        } catch(SQLException se) {
+            throw new MojoExecutionException(
+                "Error refreshing statistics", se);
+        } catch(InterruptedException ie) {
+            throw new MojoExecutionException(
+                "Interrupted while refreshing statistics", ie);
+        } finally {
+            for (int i=0; i<connections.size(); i++) {
+                try {
+                    ((Connection)connections.get(i)).close();
+                } catch(SQLException sqle) {
+                    getLog().debug("Unable to close connection", sqle);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Registers the {@link ScriptProgressMBean} with the
+     * platform MBean server.
+     * @return the name it's registered under, or null if
+     *      it couldn't be registered
+     */
+    private ObjectName registerProgress() {
+        try {
+            ObjectName name = new ObjectName(PROGRESS_MBEAN_NAME);
+            ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(runner.getProgress(), name);
+            return name;
+        } catch(JMException jme) {
+            getLog().debug("Unable to register progress MBean", jme);
+            return null;
+        }
+    }
+    
+    /**
+     * Unregisters the {@link ScriptProgressMBean}.
+     * @param name the name it's registered under, or null
+     */
+    private void unregisterProgress(ObjectName name) {
+        if (name==null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch(JMException jme) {
+            getLog().debug("Unable to unregister progress MBean", jme);
+        }
     }
     
     /**
@@ -159,133 +597,125 @@ public abstract class AbstractDBMojo
         MojoFailureException,
         MojoExecutionException,
         IOException {
-        
-        // talk a bit :)
-        getLog().info("Executing scripts in: "+directory.getName());
-        
-        // make sure we can read it, and that it's 
-        // a file and not a directory
+        checkDirectory(directory);
+        try {
+            runner.executeScriptsInDirectory(directory, con);
+        } catch(MojoExceptionTunnel tunnel) {
+            tunnel.rethrow();
+        }
+    }
+    
+    /**
+     * Makes sure the given script directory is a directory.
+     * @param directory the directory
+     * @throws MojoFailureException if it isn't
+     */
+    private void checkDirectory(File directory) 
+        throws MojoFailureException {
         if (!directory.isDirectory()) {
             throw new MojoFailureException(
                 directory.getName()+" is not a directory");
         }
-        
-        // get all files in directory
-        File[] files = directory.listFiles();
-        
-        // sort
-        Arrays.sort(files, new Comparator() {
-            public int compare(Object arg0, Object arg1) {
-                return ((File)arg0).getName().compareTo(((File)arg1).getName());
-            } }
-        );
-        
-        // loop through all the files and execute them
-        for (int i = 0; i<files.length; i++) {
-            if (!files[i].isDirectory() && files[i].isFile()) {
-                double startTime = System.currentTimeMillis();
-                if (useBatch) {
-                    batchExecuteSqlScript(files[i], con);
-                } else {
-                    executeSqlScript(files[i], con);
-                }
-                double endTime = System.currentTimeMillis();
-                double elapsed = ((endTime-startTime)/1000.0);
-                getLog().info(" script completed execution in "+elapsed+" second(s)");
-            }
-        }
-        
     }
     
     /**
-     * Batch executes a script file.
-     * @param file the file
-     * @param con the connection
+     * Executes all of the sql scripts found under the
+     * configured path of the given script artifact, streaming
+     * them straight out of the resolved jar/zip file.
+     * @param scriptArtifact the script artifact
+     * @param con the database connection
      * @throws SQLException on error
      * @throws MojoFailureException on error
      * @throws MojoExecutionException on error
      * @throws IOException on error
      */
-    protected void batchExecuteSqlScript(File file, Connection con) 
+    protected void executeScriptsInArtifact(
+        ScriptArtifact scriptArtifact, Connection con) 
         throws SQLException,
         MojoFailureException,
         MojoExecutionException,
         IOException {
-            
+        
         // talk a bit :)
-        getLog().info("batch executing script: "+file.getName());
+        getLog().info("Executing scripts in: "+scriptArtifact);
         
-        // make sure we can read it, and that it's 
-        // a file and not a directory
-        if (!file.exists() || !file.canRead() 
-            || file.isDirectory() || !file.isFile()) {
-            throw new MojoFailureException(file.getName()+" is not a file");
+        try {
+            runner.executeScriptsInArchive(
+                resolveScriptArtifact(scriptArtifact), 
+                scriptArtifact.getPath(), con);
+        } catch(MojoExceptionTunnel tunnel) {
+            tunnel.rethrow();
         }
+    }
+    
+    /**
+     * Resolves the given script artifact and returns
+     * its file.
+     * @param scriptArtifact the script artifact
+     * @return the artifact's file
+     * @throws MojoFailureException on error
+     * @throws MojoExecutionException on error
+     */
+    private File resolveScriptArtifact(ScriptArtifact scriptArtifact) 
+        throws MojoFailureException,
+        MojoExecutionException {
         
-        // open input stream to file
-        InputStream ips = new FileInputStream(file);
-        
-        // if it's a compressed file (gzip) then unzip as
-        // we read it in
-        if (file.getName().toUpperCase().endsWith("GZ")) {
-            ips = new GZIPInputStream(ips);
+        // check coordinates
+        if (StringUtils.isEmpty(scriptArtifact.getGroupId())
+            || StringUtils.isEmpty(scriptArtifact.getArtifactId())
+            || StringUtils.isEmpty(scriptArtifact.getVersion())) {
+            throw new MojoFailureException(
+                "groupId, artifactId and version are required for "
+                +"script artifact: "+scriptArtifact);
         }
-
-        // check encoding
-        checkEncoding();
-        
-        // our file reader
-        Reader reader;
-        reader = new InputStreamReader(ips, scriptEncoding);
         
-        // create SQL Statement
-        Statement st = con.createStatement();
+        Artifact artifact = artifactFactory.createArtifactWithClassifier(
+            scriptArtifact.getGroupId(),
+            scriptArtifact.getArtifactId(),
+            scriptArtifact.getVersion(),
+            scriptArtifact.getType(),
+            scriptArtifact.getClassifier());
         
-        StringBuffer sql = new StringBuffer();
-        String line;
-        BufferedReader in = new BufferedReader(reader);
-
-        // loop through the statements
-        int execCount = 0;
-        List sqlLines = new ArrayList();
-        while ((line = in.readLine()) != null) {
-            
-            // append the line
-            line.trim();
-            sql.append("\n").append(line);
-            
-            // if the line ends with the delimiter, then
-            // lets execute it
-            if (sql.toString().endsWith(sqlDelimiter)) {
-                String sqlLine = sql.substring(
-                    0, sql.length() - sqlDelimiter.length());
-                sqlLines.add(sqlLine);
-                sql.replace(0, sql.length(), "");
-                execCount++;
-                if (sqlLines.size()>=batchSize) {
-                    executeBatch(st, sqlLines);
-                    sqlLines.clear();
-                }
-            }
+        try {
+            artifactResolver.resolve(
+                artifact, remoteRepositories, localRepository);
+        } catch(ArtifactResolutionException are) {
+            throw new MojoExecutionException(
+                "Unable to resolve script artifact: "+scriptArtifact, are);
+        } catch(ArtifactNotFoundException anfe) {
+            throw new MojoFailureException(
+                "Script artifact not found: "+scriptArtifact);
         }
         
-        // execute last statement
-        if (sql.toString().trim().length()>0) {
-            sqlLines.add(sql.toString());
-            sql.replace(0, sql.length(), "");
-            execCount++;
-            executeBatch(st, sqlLines);
-            sqlLines.clear();
-        } else if (sqlLines.size()>0) {
-            executeBatch(st, sqlLines);
-            sqlLines.clear();
+        File file = artifact.getFile();
+        if (file==null || !file.isFile()) {
+            throw new MojoFailureException(
+                "Script artifact "+scriptArtifact+" is not a jar/zip file");
+        }
+        return file;
+    }
+    
+    /**
+     * Batch executes a script file.
+     * @param file the file
+     * @param con the connection
+     * @throws SQLException on error
+     * @throws MojoFailureException on error
+     * @throws MojoExecutionException on error
+     * @throws IOException on error
+     */
+    protected void batchExecuteSqlScript(File file, Connection con) 
+        throws SQLException,
+        MojoFailureException,
+        MojoExecutionException,
+        IOException {
+        checkFile(file);
+        try {
+            runner.batchExecuteSqlScript(
+                file.getName(), new FileInputStream(file), con);
+        } catch(MojoExceptionTunnel tunnel) {
+            tunnel.rethrow();
         }
-        
-        st.close();
-        reader.close();
-        in.close();
-        
-        getLog().info(" "+execCount+" statements batch executed from "+file.getName());
     }
     
     /**
@@ -303,160 +733,215 @@ public abstract class AbstractDBMojo
         MojoFailureException,
         MojoExecutionException,
         IOException {
-        
-        // talk a bit :)
-        getLog().info("executing script: "+file.getName());
-        
-        // make sure we can read it, and that it's 
-        // a file and not a directory
-        if (!file.exists() || !file.canRead() 
-            || file.isDirectory() || !file.isFile()) {
-            throw new MojoFailureException(file.getName()+" is not a file");
+        checkFile(file);
+        try {
+            runner.executeSqlScript(
+                file.getName(), new FileInputStream(file), con);
+        } catch(MojoExceptionTunnel tunnel) {
+            tunnel.rethrow();
         }
-        
-        // open input stream to file
-        InputStream ips = new FileInputStream(file);
-        
-        // if it's a compressed file (gzip) then unzip as
-        // we read it in
-        if (file.getName().toUpperCase().endsWith("GZ")) {
-            ips = new GZIPInputStream(ips);
-            getLog().info(" file is gz compressed, using gzip stream");
+    }
+    
+    /**
+     * Executes a script read from the given stream, reporting
+     * its progress every progressInterval seconds while doing so.
+     * @param name the name of the script
+     * @param ips the stream to read the script from
+     * @param size the size of the stream, -1 if unknown
+     * @param con the connection
+     * @throws SQLException on error
+     * @throws MojoFailureException on error
+     * @throws MojoExecutionException on error
+     * @throws IOException on error
+     */
+    protected void executeScript(
+        String name, InputStream ips, long size, Connection con)
+        throws SQLException,
+        MojoFailureException,
+        MojoExecutionException,
+        IOException {
+        try {
+            runner.defaultExecuteScript(name, ips, size, con);
+        } catch(MojoExceptionTunnel tunnel) {
+            tunnel.rethrow();
         }
- 
-        // check encoding
-        checkEncoding();
-        
-        // our file reader
-        Reader reader;
-        reader = new InputStreamReader(ips, scriptEncoding);
-        
-        // create SQL Statement
-        Statement st = con.createStatement();
-        
-        StringBuffer sql = new StringBuffer();
-        String line;
-        BufferedReader in = new BufferedReader(reader);
-
-        // loop through the statements
-        int execCount = 0;
-        while ((line = in.readLine()) != null) {
-            
-            // append the line
-            line.trim();
-            sql.append("\n").append(line);
-            
-            // if the line ends with the delimiter, then
-            // lets execute it
-            if (sql.toString().endsWith(sqlDelimiter)) {
-                String sqlLine = sql.substring(
-                    0, sql.length() - sqlDelimiter.length());
-                executeStatement(st, sqlLine);
-                sql.replace(0, sql.length(), "");
-                execCount++;
-            }
+    }
+    
+    /**
+     * Batch executes a script read from the given stream,
+     * the stream is closed when done.
+     * @param name the name of the script
+     * @param ips the stream to read the script from
+     * @param con the connection
+     * @throws SQLException on error
+     * @throws MojoFailureException on error
+     * @throws MojoExecutionException on error
+     * @throws IOException on error
+     */
+    protected void batchExecuteSqlScript(
+        String name, InputStream ips, Connection con) 
+        throws SQLException,
+        MojoFailureException,
+        MojoExecutionException,
+        IOException {
+        try {
+            runner.defaultBatchExecuteSqlScript(name, ips, con);
+        } catch(MojoExceptionTunnel tunnel) {
+            tunnel.rethrow();
         }
-        
-        // execute last statement
-        if (sql.toString().trim().length()>0) {
-            executeStatement(st, sql.toString());
-            sql.replace(0, sql.length(), "");
-            execCount++;
+    }
+    
+    /**
+     * Executes a script read from the given stream, using
+     * the given connection. The stream is closed when done.
+     * @param name the name of the script
+     * @param ips the stream to read the script from
+     * @param con the connection
+     * @throws SQLException on error
+     * @throws MojoFailureException on error
+     * @throws MojoExecutionException on error
+     * @throws IOException on error
+     */
+    protected void executeSqlScript(
+        String name, InputStream ips, Connection con) 
+        throws SQLException,
+        MojoFailureException,
+        MojoExecutionException,
+        IOException {
+        try {
+            runner.defaultExecuteSqlScript(name, ips, con);
+        } catch(MojoExceptionTunnel tunnel) {
+            tunnel.rethrow();
+        }
+    }
+    
+    /**
+     * Opens the stream of statements to execute from
+     * the given script.
+     * @param reader the script
+     * @param con the connection
+     * @return the statements
+     * @throws SQLException on error
+     * @throws MojoFailureException on error
+     */
+    protected SqlStatementSource openStatementSource(
+        Reader reader, Connection con) 
+        throws SQLException,
+        MojoFailureException {
+        try {
+            return runner.defaultOpenStatementSource(reader, con);
+        } catch(MojoExceptionTunnel tunnel) {
+            tunnel.rethrowFailure();
+            throw tunnel;
         }
-        
-        st.close();
-        reader.close();
-        in.close();
-        
-        getLog().info(" "+execCount+" statements executed from "+file.getName());
+    }
+    
+    /**
+     * Returns the configured {@link SqlDialect}, or the one
+     * of the database the given connection is connected to.
+     * @param con the connection
+     * @return the dialect
+     * @throws SQLException on error
+     * @throws MojoFailureException on error
+     */
+    protected SqlDialect getDialect(Connection con) 
+        throws SQLException,
+        MojoFailureException {
+        return runner.defaultGetDialect(con);
+    }
+    
+    /**
+     * Wraps the given stream in a decompressing stream
+     * if its magic bytes say it's compressed.
+     * @param ips the raw stream
+     * @return the stream to read the script from
+     * @throws IOException on error
+     */
+    protected InputStream openDecompressingStream(InputStream ips)
+        throws IOException {
+        return runner.defaultOpenDecompressingStream(ips);
     }
     
     /**
      * Executes a batch update.
      * @param st the statement
      * @param sqlLines the sql lines
+     * @param location the script and line the batch starts at
      * @throws SQLException on error
      */
+    protected void executeBatch(Statement st, List sqlLines, String location)
+        throws SQLException {
+        runner.defaultExecuteBatch(st, sqlLines, location);
+    }
+    
+    /**
+     * Executes a batch update, for callers that don't know
+     * where the batch comes from.
+     * @param st the statement
+     * @param sqlLines the sql lines
+     * @throws SQLException on error
+     * @deprecated use {@link #executeBatch(Statement, List, String)},
+     * which the scripts are executed with
+     */
     protected void executeBatch(Statement st, List sqlLines)
         throws SQLException {
-        
-        if (getLog().isDebugEnabled()) {
-            getLog().debug("Executing batch");
-        }
-        
-        // add to batch
-        for (int i=0; i<sqlLines.size(); i++) {
-            st.addBatch((String)sqlLines.get(i));
-        }
-        
-        int[] ret  = st.executeBatch();
-        if (getLog().isDebugEnabled()) {
-            getLog().debug("    "+ret.length+" statement(s) executed");
-        }
-        
-        for (int i=0; i<ret.length; i++) {
-            if (ret[i]==Statement.SUCCESS_NO_INFO
-                && getLog().isDebugEnabled()) {
-                getLog().debug("    statement "+i+" processed successfully "
-                    + "without return results");
-                
-            } else if (ret[i]==Statement.EXECUTE_FAILED) {
-                getLog().error("    error durring batch execution of statement: "+sqlLines.get(i));
-                throw new SQLException("Error executing: "+sqlLines.get(i));
-                
-            } else if (ret[i]>=0 && getLog().isDebugEnabled()) {
-                getLog().debug("    statement "+i+" processed successfully "
-                    + " with "+ret[i]+" records effected");
-            }
-        }
-        
+        executeBatch(st, sqlLines, UNKNOWN_LOCATION);
     }
     
     /**
      * Runs the given SQL statement.
-     * 
-     * @param st
-     *            the statement to run it on
-     * @param sqlLine
-     *            the sql statement
-     * @throws SQLException
-     *             on error
+     * @param st the statement to run it on
+     * @param sqlLine the sql statement
+     * @param location the script and line the statement is at
+     * @throws SQLException on error
+     */
+    protected void executeStatement(
+        Statement st, String sqlLine, String location) 
+        throws SQLException {
+        runner.defaultExecuteStatement(st, sqlLine, location);
+    }
+    
+    /**
+     * Runs the given SQL statement, for callers that don't
+     * know where the statement comes from.
+     * @param st the statement to run it on
+     * @param sqlLine the sql statement
+     * @throws SQLException on error
+     * @deprecated use {@link #executeStatement(Statement, String, String)},
+     * which the scripts are executed with
      */
     protected void executeStatement(Statement st, String sqlLine) 
         throws SQLException {
-        if (getLog().isDebugEnabled()) {
-            getLog().debug("    executing:\n"+sqlLine);
-        }
-        boolean execRet = false;
-        try {
-            execRet = st.execute(sqlLine);
-        } catch(SQLException sqle) {
-            SQLException se = new SQLException(
-                sqle.getMessage()+"\n\nSQL:\n"+sqlLine, 
-                sqle.getSQLState(), 
-                sqle.getErrorCode());
-            se.setNextException(sqle);
-            throw se;
-        }
-        boolean loop = true;
-        while (loop) {
-            if (execRet) {
-                getLog().warn(" statement returned a resultset");
-            } else {
-                // Got an update count
-                int count = st.getUpdateCount();
-
-                if (count == -1) {
-                    // Nothing left
-                    loop = false;
-                } else if (getLog().isDebugEnabled()){
-                    // An update count was returned
-                    getLog().debug("    "+count+" row(s) updated");
-                }
-            }
-            if (loop) {
-                execRet = st.getMoreResults();
-            }
+        executeStatement(st, sqlLine, UNKNOWN_LOCATION);
+    }
+    
+    /**
+     * Runs the given SQL statement as a prepared statement,
+     * streaming its lobs to the database as parameters.
+     * @param con the connection
+     * @param sql the statement
+     * @param location the script and line the statement is at
+     * @throws SQLException on error
+     * @throws IOException on error
+     */
+    protected void executeLobStatement(
+        Connection con, SqlStatement sql, String location) 
+        throws SQLException,
+        IOException {
+        runner.defaultExecuteLobStatement(con, sql, location);
+    }
+    
+    /**
+     * Makes sure the given script can be read, and that
+     * it's a file and not a directory.
+     * @param file the script
+     * @throws MojoFailureException if it isn't
+     */
+    private void checkFile(File file) 
+        throws MojoFailureException {
+        if (!file.exists() || !file.canRead() 
+            || file.isDirectory() || !file.isFile()) {
+            throw new MojoFailureException(file.getName()+" is not a file");
         }
     }
     
@@ -527,26 +1012,296 @@ public abstract class AbstractDBMojo
             username,
             password);
         
+        // set the lock timeout
+        runner.prepareConnection(con);
+        
         // we're good :)
         return con;
     }
-
-	private void checkEncoding() {
-		if (scriptEncoding == null) {
-			scriptEncoding = Charset.defaultCharset().name();
-			getLog().warn("Using platform encoding (" + scriptEncoding + ") for executing script, i.e. build is platform dependent!");
-		} else {
-			getLog().info(" setting encoding for executing script: " + scriptEncoding);
-		}
-	}
+    
+    /**
+     * The runner of the mojo. Its script methods go through
+     * the mojo's protected ones, which by default call back
+     * into the runner's own implementations.
+     */
+    private class MojoScriptRunner
+        extends ScriptRunner {
+        
+        /**
+         * Creates the runner, logging to the mojo's log.
+         */
+        MojoScriptRunner() {
+            super(new MavenScriptLog(getLog()));
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        public void executeScript(
+            String name, InputStream ips, long size, Connection con)
+            throws SQLException,
+            IOException {
+            try {
+                AbstractDBMojo.this.executeScript(name, ips, size, con);
+            } catch(MojoFailureException mfe) {
+                throw new MojoExceptionTunnel(mfe);
+            } catch(MojoExecutionException mee) {
+                throw new MojoExceptionTunnel(mee);
+            }
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        public void batchExecuteSqlScript(
+            String name, InputStream ips, Connection con)
+            throws SQLException,
+            IOException {
+            try {
+                AbstractDBMojo.this.batchExecuteSqlScript(name, ips, con);
+            } catch(MojoFailureException mfe) {
+                throw new MojoExceptionTunnel(mfe);
+            } catch(MojoExecutionException mee) {
+                throw new MojoExceptionTunnel(mee);
+            }
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        public void executeSqlScript(
+            String name, InputStream ips, Connection con)
+            throws SQLException,
+            IOException {
+            try {
+                AbstractDBMojo.this.executeSqlScript(name, ips, con);
+            } catch(MojoFailureException mfe) {
+                throw new MojoExceptionTunnel(mfe);
+            } catch(MojoExecutionException mee) {
+                throw new MojoExceptionTunnel(mee);
+            }
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        protected SqlStatementSource openStatementSource(
+            Reader reader, Connection con)
+            throws SQLException {
+            try {
+                return AbstractDBMojo.this.openStatementSource(reader, con);
+            } catch(MojoFailureException mfe) {
+                throw new MojoExceptionTunnel(mfe);
+            }
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        public SqlDialect getDialect(Connection con)
+            throws SQLException {
+            try {
+                return AbstractDBMojo.this.getDialect(con);
+            } catch(MojoFailureException mfe) {
+                throw new MojoExceptionTunnel(mfe);
+            }
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        protected InputStream openDecompressingStream(InputStream ips)
+            throws IOException {
+            return AbstractDBMojo.this.openDecompressingStream(ips);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        protected void executeBatch(
+            Statement st, List sqlLines, String location)
+            throws SQLException {
+            AbstractDBMojo.this.executeBatch(st, sqlLines, location);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        protected void executeStatement(
+            Statement st, String sqlLine, String location)
+            throws SQLException {
+            AbstractDBMojo.this.executeStatement(st, sqlLine, location);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        protected void executeLobStatement(
+            Connection con, SqlStatement sql, String location)
+            throws SQLException,
+            IOException {
+            AbstractDBMojo.this.executeLobStatement(con, sql, location);
+        }
+        
+        /**
+         * The runner's own {@link #executeScript}.
+         * @param name the name of the script
+         * @param ips the stream to read the script from
+         * @param size the size of the stream, -1 if unknown
+         * @param con the connection
+         * @throws SQLException on error
+         * @throws IOException on error
+         */
+        void defaultExecuteScript(
+            String name, InputStream ips, long size, Connection con)
+            throws SQLException,
+            IOException {
+            super.executeScript(name, ips, size, con);
+        }
+        
+        /**
+         * The runner's own {@link #batchExecuteSqlScript}.
+         * @param name the name of the script
+         * @param ips the stream to read the script from
+         * @param con the connection
+         * @throws SQLException on error
+         * @throws IOException on error
+         */
+        void defaultBatchExecuteSqlScript(
+            String name, InputStream ips, Connection con)
+            throws SQLException,
+            IOException {
+            super.batchExecuteSqlScript(name, ips, con);
+        }
+        
+        /**
+         * The runner's own {@link #executeSqlScript}.
+         * @param name the name of the script
+         * @param ips the stream to read the script from
+         * @param con the connection
+         * @throws SQLException on error
+         * @throws IOException on error
+         */
+        void defaultExecuteSqlScript(
+            String name, InputStream ips, Connection con)
+            throws SQLException,
+            IOException {
+            super.executeSqlScript(name, ips, con);
+        }
+        
+        /**
+         * The runner's own {@link #openStatementSource}.
+         * @param reader the script
+         * @param con the connection
+         * @return the statements
+         * @throws SQLException on error
+         */
+        SqlStatementSource defaultOpenStatementSource(
+            Reader reader, Connection con)
+            throws SQLException {
+            return super.openStatementSource(reader, con);
+        }
+        
+        /**
+         * The runner's own {@link #getDialect(Connection)}.
+         * @param con the connection
+         * @return the dialect
+         * @throws SQLException on error
+         */
+        SqlDialect defaultGetDialect(Connection con)
+            throws SQLException {
+            return super.getDialect(con);
+        }
+        
+        /**
+         * The runner's own {@link #openDecompressingStream}.
+         * @param ips the raw stream
+         * @return the stream to read the script from
+         * @throws IOException on error
+         */
+        InputStream defaultOpenDecompressingStream(InputStream ips)
+            throws IOException {
+            return super.openDecompressingStream(ips);
+        }
+        
+        /**
+         * The runner's own {@link #executeBatch}.
+         * @param st the statement
+         * @param sqlLines the sql lines
+         * @param location the script and line the batch starts at
+         * @throws SQLException on error
+         */
+        void defaultExecuteBatch(
+            Statement st, List sqlLines, String location)
+            throws SQLException {
+            super.executeBatch(st, sqlLines, location);
+        }
+        
+        /**
+         * The runner's own {@link #executeStatement}.
+         * @param st the statement to run it on
+         * @param sqlLine the sql statement
+         * @param location the script and line the statement is at
+         * @throws SQLException on error
+         */
+        void defaultExecuteStatement(
+            Statement st, String sqlLine, String location)
+            throws SQLException {
+            super.executeStatement(st, sqlLine, location);
+        }
+        
+        /**
+         * The runner's own {@link #executeLobStatement}.
+         * @param con the connection
+         * @param sql the statement
+         * @param location the script and line the statement is at
+         * @throws SQLException on error
+         * @throws IOException on error
+         */
+        void defaultExecuteLobStatement(
+            Connection con, SqlStatement sql, String location)
+            throws SQLException,
+            IOException {
+            super.executeLobStatement(con, sql, location);
+        }
+    }
+    
+    /**
+     * Carries the mojo exceptions thrown by overridden script
+     * methods through the runner, whose methods don't declare
+     * them, back to the mojo.
+     */
+    private static class MojoExceptionTunnel
+        extends RuntimeException {
+        
+        /**
+         * @param cause the mojo exception
+         */
+        MojoExceptionTunnel(Exception cause) {
+            super(cause);
+        }
+        
+        /**
+         * Throws the mojo exception.
+         * @throws MojoFailureException the exception, if it's one
+         * @throws MojoExecutionException the exception, if it's one
+         */
+        void rethrow()
+            throws MojoFailureException,
+            MojoExecutionException {
+            rethrowFailure();
+            throw (MojoExecutionException)getCause();
+        }
+        
+        /**
+         * Throws the mojo exception if it's a failure.
+         * @throws MojoFailureException the exception, if it's one
+         */
+        void rethrowFailure()
+            throws MojoFailureException {
+            if (getCause() instanceof MojoFailureException) {
+                throw (MojoFailureException)getCause();
+            }
+        }
+    }
 }
-
-
-
-
-
-
-
-
-
-
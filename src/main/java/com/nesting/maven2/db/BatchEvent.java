@@ -0,0 +1,67 @@
+package com.nesting.maven2.db;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of an executed batch or statement,
+ * lasting for as long as the database took to execute it.
+ * Only ever loaded by {@link ScriptProgress} once it made sure
+ * that the vm has a flight recorder (JDK 11+, 8u262+), so that
+ * older vms never see the jdk.jfr classes.
+ */
+@Name("com.nesting.maven2.db.Batch")
+@Label("Script Batch")
+@Category({"Maven", "Database"})
+@Description("A batch or statement executed from a sql script")
+final class BatchEvent
+    extends Event {
+
+    @Label("Script")
+    private String script;
+
+    @Label("Location")
+    @Description("The script and line of the (first) statement")
+    private String location;
+
+    @Label("Statements")
+    private int statements;
+
+    @Label("Rows")
+    private long rows;
+
+    /**
+     * Starts timing a batch.
+     * @param script the name of the script
+     * @return the event
+     */
+    static Object begin(String script) {
+        BatchEvent ret = new BatchEvent();
+        ret.script = script;
+        ret.begin();
+        return ret;
+    }
+
+    /**
+     * Ends a batch, committing its event if it's recorded.
+     * @param batch the event returned by {@link #begin(String)}
+     * @param location the script and line of the batch
+     * @param statementCount the number of statements
+     * @param rowCount the rows they updated
+     */
+    static void commit(
+        Object batch, String location, int statementCount, long rowCount) {
+        BatchEvent event = (BatchEvent)batch;
+        event.end();
+        if (event.shouldCommit()) {
+            event.location = location;
+            event.statements = statementCount;
+            event.rows = rowCount;
+            event.commit();
+        }
+    }
+
+}
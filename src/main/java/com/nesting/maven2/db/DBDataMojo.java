@@ -19,10 +19,30 @@ public class DBDataMojo
      * The directory that contains data
      * scripts.
      * @parameter
-     * @required
      */
     private File[] dbDataScriptsDirectory;
     
+    /**
+     * The artifacts that contain data
+     * scripts, executed after the directories.
+     * @parameter
+     */
+    private ScriptArtifact[] dbDataScriptsArtifacts;
+    
+    /**
+     * {@inheritDoc}
+     */
+    protected File[] getScriptDirectories() {
+        return dbDataScriptsDirectory;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    protected ScriptArtifact[] getScriptArtifacts() {
+        return dbDataScriptsArtifacts;
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -32,10 +52,16 @@ public class DBDataMojo
         
         try {
             Connection con = openApplicationDbConnection();
-            for (int i=0; i<dbDataScriptsDirectory.length; i++) {
+            for (int i=0; dbDataScriptsDirectory!=null
+                && i<dbDataScriptsDirectory.length; i++) {
                 executeScriptsInDirectory(
                     dbDataScriptsDirectory[i], con);
             }
+            for (int i=0; dbDataScriptsArtifacts!=null
+                && i<dbDataScriptsArtifacts.length; i++) {
+                executeScriptsInArtifact(
+                    dbDataScriptsArtifacts[i], con);
+            }
             
         } catch(SQLException se) {
             throw new MojoExecutionException(
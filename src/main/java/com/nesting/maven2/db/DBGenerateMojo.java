@@ -0,0 +1,103 @@
+package com.nesting.maven2.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Mojo for filling databases with generated data, for load
+ * tests. The rows are inserted straight into the database, or
+ * written to compressed scripts that the data goal executes.
+ * @goal generate
+ */
+public class DBGenerateMojo
+    extends AbstractDBMojo {
+
+    /**
+     * The tables to generate rows for, in order: tables
+     * referenced by others come first.
+     * @parameter
+     * @required
+     */
+    private GeneratedTable[] generatedTables;
+
+    /**
+     * The seed of the random numbers, the same seed
+     * generates the same rows.
+     * @parameter default-value="1"
+     */
+    private long generateSeed;
+
+    /**
+     * The number of connections (or threads, when writing
+     * scripts) generating the rows of a table.
+     * @parameter default-value="4"
+     */
+    private int generateThreads;
+
+    /**
+     * The number of rows in one batch.
+     * @parameter default-value="1000"
+     */
+    private int generateBatchSize;
+
+    /**
+     * The directory to write gzip compressed scripts of the
+     * generated rows to, instead of inserting them.
+     * @parameter
+     */
+    private File generateOutputDirectory;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void executeInternal()
+        throws MojoExecutionException,
+        MojoFailureException {
+
+        DataGenerator generator = new DataGenerator(new MavenScriptLog(getLog()));
+        generator.setSeed(generateSeed);
+        generator.setThreads(Math.max(1, generateThreads));
+        generator.setBatchSize(generateBatchSize);
+
+        List connections = new ArrayList();
+        try {
+            if (generateOutputDirectory!=null) {
+                generator.generate(generatedTables, generateOutputDirectory);
+            } else {
+                for (int i=0; i<Math.max(1, generateThreads); i++) {
+                    connections.add(openApplicationDbConnection());
+                }
+                generator.generate(generatedTables, connections);
+            }
+
+        } catch(IllegalArgumentException iae) {
+            throw new MojoFailureException(iae.getMessage());
+        } catch(InterruptedException ie) {
+            throw new MojoExecutionException(
+                "Interrupted while generating data", ie);
+        } catch(SQLException se) {
+            throw new MojoExecutionException(
+                "Error generating data", se);
+        } catch(IOException ioe) {
+            throw new MojoExecutionException(
+                "Error generating data", ioe);
+        } finally {
+            for (int i=0; i<connections.size(); i++) {
+                try {
+                    ((Connection)connections.get(i)).close();
+                } catch(SQLException sqle) {
+                    getLog().debug("Unable to close connection", sqle);
+                }
+            }
+        }
+
+    }
+
+}
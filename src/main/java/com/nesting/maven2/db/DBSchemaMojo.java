@@ -19,10 +19,30 @@ public class DBSchemaMojo
      * The directory that contains schema
      * scripts.
      * @parameter
-     * @required
      */
     private File[] dbSchemaScriptsDirectory;
     
+    /**
+     * The artifacts that contain schema
+     * scripts, executed after the directories.
+     * @parameter
+     */
+    private ScriptArtifact[] dbSchemaScriptsArtifacts;
+    
+    /**
+     * {@inheritDoc}
+     */
+    protected File[] getScriptDirectories() {
+        return dbSchemaScriptsDirectory;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    protected ScriptArtifact[] getScriptArtifacts() {
+        return dbSchemaScriptsArtifacts;
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -32,10 +52,16 @@ public class DBSchemaMojo
         
         try {
             Connection con = openApplicationDbConnection();
-            for (int i=0; i<dbSchemaScriptsDirectory.length; i++) {
+            for (int i=0; dbSchemaScriptsDirectory!=null
+                && i<dbSchemaScriptsDirectory.length; i++) {
                 executeScriptsInDirectory(
                     dbSchemaScriptsDirectory[i], con);
             }
+            for (int i=0; dbSchemaScriptsArtifacts!=null
+                && i<dbSchemaScriptsArtifacts.length; i++) {
+                executeScriptsInArtifact(
+                    dbSchemaScriptsArtifacts[i], con);
+            }
             
             
         } catch(SQLException se) {
@@ -19,10 +19,30 @@ public class DBUpdatesMojo
      * The directory that contains update
      * scripts.
      * @parameter
-     * @required
      */
     private File[] dbUpdateScriptsDirectory;
     
+    /**
+     * The artifacts that contain update
+     * scripts, executed after the directories.
+     * @parameter
+     */
+    private ScriptArtifact[] dbUpdateScriptsArtifacts;
+    
+    /**
+     * {@inheritDoc}
+     */
+    protected File[] getScriptDirectories() {
+        return dbUpdateScriptsDirectory;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    protected ScriptArtifact[] getScriptArtifacts() {
+        return dbUpdateScriptsArtifacts;
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -32,10 +52,16 @@ public class DBUpdatesMojo
         
         try {
             Connection con = openApplicationDbConnection();
-            for (int i=0; i<dbUpdateScriptsDirectory.length; i++) {
+            for (int i=0; dbUpdateScriptsDirectory!=null
+                && i<dbUpdateScriptsDirectory.length; i++) {
                 executeScriptsInDirectory(
                     dbUpdateScriptsDirectory[i], con);
             }
+            for (int i=0; dbUpdateScriptsArtifacts!=null
+                && i<dbUpdateScriptsArtifacts.length; i++) {
+                executeScriptsInArtifact(
+                    dbUpdateScriptsArtifacts[i], con);
+            }
             
             
         } catch(SQLException se) {
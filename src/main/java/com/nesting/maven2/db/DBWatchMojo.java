@@ -0,0 +1,355 @@
+package com.nesting.maven2.db;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Mojo for developing scripts: watches the schema, data and
+ * update script directories and executes the scripts that are
+ * added or modified, over a connection that stays open, until
+ * the build is interrupted (Ctrl-C).
+ * @goal watch
+ */
+public class DBWatchMojo
+    extends AbstractDBMojo {
+
+    private static final WatchEvent.Kind[] WATCHED_EVENTS =
+        new WatchEvent.Kind[] {
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY
+        };
+
+    private static final long STOP_WAIT_MILLIS = 10000;
+
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * The directory that contains schema
+     * scripts.
+     * @parameter
+     */
+    private File[] dbSchemaScriptsDirectory;
+
+    /**
+     * The directory that contains data
+     * scripts.
+     * @parameter
+     */
+    private File[] dbDataScriptsDirectory;
+
+    /**
+     * The directory that contains update
+     * scripts.
+     * @parameter
+     */
+    private File[] dbUpdateScriptsDirectory;
+
+    /**
+     * How long, in milliseconds, the directories have to
+     * be left alone after a change before the changed
+     * scripts are executed.
+     * @parameter default-value="300"
+     */
+    private int watchDebounce;
+
+    /**
+     * Whether or not to execute the scripts changed at once
+     * in a transaction that is rolled back if one of them
+     * fails. Note that most databases commit DDL statements
+     * implicitly.
+     * @parameter default-value="false"
+     */
+    private boolean watchTransaction;
+
+    /**
+     * The last modification time, length and checksum of every
+     * script executed, or there when watching started, by path.
+     */
+    private Map executed = new HashMap();
+
+    /**
+     * The watch service, closed to stop watching.
+     */
+    private volatile WatchService watcher;
+
+    /**
+     * {@inheritDoc}
+     */
+    protected File[] getScriptDirectories() {
+        List ret = new ArrayList();
+        addAll(ret, dbSchemaScriptsDirectory);
+        addAll(ret, dbDataScriptsDirectory);
+        addAll(ret, dbUpdateScriptsDirectory);
+        return (File[])ret.toArray(new File[ret.size()]);
+    }
+
+    /**
+     * Adds the given directories, if any, to a list.
+     * @param list the list
+     * @param directories the directories, may be null
+     */
+    private static void addAll(List list, File[] directories) {
+        for (int i=0; directories!=null && i<directories.length; i++) {
+            list.add(directories[i]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void executeInternal()
+        throws MojoExecutionException,
+        MojoFailureException {
+        File[] directories = getScriptDirectories();
+        if (directories.length==0) {
+            throw new MojoFailureException("No script directories to watch");
+        }
+
+        Connection con = null;
+        Thread stopper = null;
+        try {
+
+            // watch the directories, remembering what's in them
+            watcher = FileSystems.getDefault().newWatchService();
+            for (int i=0; i<directories.length; i++) {
+                if (!directories[i].isDirectory()) {
+                    throw new MojoFailureException(
+                        directories[i].getName()+" is not a directory");
+                }
+                directories[i].toPath().register(watcher, WATCHED_EVENTS);
+                File[] files = ScriptRunner.listScriptFiles(directories[i]);
+                for (int j=0; j<files.length; j++) {
+                    executed.put(files[j].getPath(), stamp(files[j]));
+                }
+            }
+
+            con = openApplicationDbConnection();
+            if (watchTransaction) {
+                con.setAutoCommit(false);
+            }
+
+            // Ctrl-C runs the shutdown hooks, it doesn't interrupt us
+            stopper = createStopper(Thread.currentThread());
+            Runtime.getRuntime().addShutdownHook(stopper);
+            getLog().info("Watching "+directories.length+" script directories, "
+                +"interrupt the build to stop");
+
+            while (true) {
+
+                // wait for a change, and for things to settle down
+                drain(watcher.take());
+                WatchKey key;
+                while ((key = watcher.poll(watchDebounce, TimeUnit.MILLISECONDS))!=null) {
+                    drain(key);
+                }
+
+                // find and execute what changed
+                List changed = new ArrayList();
+                for (int i=0; i<directories.length; i++) {
+                    File[] files = ScriptRunner.listScriptFiles(directories[i]);
+                    for (int j=0; j<files.length; j++) {
+
+                        // one that went away while listing is left
+                        // for the change event that follows
+                        String stamp = stamp(files[j]);
+                        if (stamp!=null
+                            && !stamp.equals(executed.get(files[j].getPath()))) {
+                            changed.add(files[j]);
+                        }
+                    }
+                }
+                if (!changed.isEmpty()) {
+                    executeChanged(changed, con);
+                }
+            }
+
+        } catch(ClosedWatchServiceException cwse) {
+            getLog().info("Stopped watching");
+        } catch(InterruptedException ie) {
+            getLog().info("Stopped watching");
+
+        } catch(SQLException se) {
+            throw new MojoExecutionException(
+                "Error executing database scripts", se);
+        } catch(IOException ioe) {
+            throw new MojoExecutionException(
+                "Error watching database scripts", ioe);
+
+        } finally {
+            stopWatching();
+            if (stopper!=null) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(stopper);
+                } catch(IllegalStateException ise) {
+                    // shutting down, the hook is running
+                }
+            }
+            if (con!=null) {
+                try {
+                    con.close();
+                } catch(SQLException sqle) {
+                    getLog().debug("Unable to close connection", sqle);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the shutdown hook that stops watching, and gives
+     * the watching thread some time to close the connection.
+     * @param watching the watching thread
+     * @return the hook
+     */
+    private Thread createStopper(final Thread watching) {
+        return new Thread("db-watch-stopper") {
+            public void run() {
+                stopWatching();
+                try {
+                    watching.join(STOP_WAIT_MILLIS);
+                } catch(InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            } };
+    }
+
+    /**
+     * Stops watching: closes the watch service, which ends
+     * the wait for the next change.
+     */
+    void stopWatching() {
+        WatchService closing = watcher;
+        if (closing==null) {
+            return;
+        }
+        try {
+            closing.close();
+        } catch(IOException ioe) {
+            getLog().debug("Unable to close watch service", ioe);
+        }
+    }
+
+    /**
+     * Executes the given changed scripts. Failures are logged,
+     * so that watching carries on. When using a transaction,
+     * a failure rolls back all of the scripts, and they're
+     * executed again on the next change.
+     * @param changed the changed scripts
+     * @param con the connection
+     * @throws SQLException if rolling back fails
+     */
+    private void executeChanged(List changed, Connection con)
+        throws SQLException {
+        getLog().info("Executing "+changed.size()+" changed script(s)");
+        double startTime = System.currentTimeMillis();
+        Map done = new LinkedHashMap();
+        try {
+            for (int i=0; i<changed.size(); i++) {
+
+                // stamped first, so that an edit made while it
+                // runs is executed on the next change
+                File file = (File)changed.get(i);
+                done.put(file.getPath(), stamp(file));
+                getRunner().executeScript(file.getName(),
+                    new FileInputStream(file), file.length(), con);
+            }
+            if (watchTransaction) {
+                con.commit();
+            }
+
+        } catch(SQLException sqle) {
+            failed(sqle, done, con);
+            return;
+        } catch(IOException ioe) {
+            failed(ioe, done, con);
+            return;
+        }
+
+        executed.putAll(done);
+        double endTime = System.currentTimeMillis();
+        double elapsed = ((endTime-startTime)/1000.0);
+        getLog().info(" changed script(s) executed in "+elapsed+" second(s)");
+    }
+
+    /**
+     * Logs a failed execution, rolling it back when using a
+     * transaction, and otherwise remembering the scripts that
+     * were executed (including the failed one, which is only
+     * executed again once it's changed).
+     * @param cause the error
+     * @param done the stamps of the scripts executed, by path,
+     *      the failed one last
+     * @param con the connection
+     * @throws SQLException if rolling back fails
+     */
+    private void failed(Exception cause, Map done, Connection con)
+        throws SQLException {
+        getLog().error(cause.getMessage());
+        if (watchTransaction) {
+            con.rollback();
+            getLog().error(" rolled back, waiting for the next change");
+            return;
+        }
+        executed.putAll(done);
+        getLog().error(" waiting for the next change");
+    }
+
+    /**
+     * Takes the events of a watch key, they only tell that
+     * something changed, and resets it.
+     * @param key the key
+     */
+    private void drain(WatchKey key) {
+        key.pollEvents();
+        if (!key.reset()) {
+            getLog().warn("No longer watching "+key.watchable());
+        }
+    }
+
+    /**
+     * Returns what tells the given version of a script apart:
+     * the checksum of its content catches the edits that keep
+     * its length within the file system's time granularity.
+     * @param file the script
+     * @return the last modification time, length and checksum,
+     *      null if the script can't be read
+     */
+    private static String stamp(File file) {
+        CRC32 crc = new CRC32();
+        try {
+            InputStream ips = new FileInputStream(file);
+            try {
+                byte[] buf = new byte[BUFFER_SIZE];
+                for (int len = ips.read(buf); len!=-1; len = ips.read(buf)) {
+                    crc.update(buf, 0, len);
+                }
+            } finally {
+                ips.close();
+            }
+        } catch(IOException ioe) {
+            return null;
+        }
+        return file.lastModified()+":"+file.length()+":"
+            +Long.toHexString(crc.getValue());
+    }
+
+}
@@ -0,0 +1,847 @@
+package com.nesting.maven2.db;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.nesting.maven2.db.compress.BgzfOutputStream;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Generates rows for {@link GeneratedTable}s, either straight into
+ * the database as batches of prepared statements or into BGZF
+ * compressed scripts of INSERT statements, as read by the data
+ * goal. The tables are generated one after the other, in the order
+ * given, and the rows of a table by several threads at once.
+ * <p>
+ * The rows are generated in blocks of {@link #BLOCK_ROWS}, each with
+ * its own random numbers seeded from the seed, the table and the
+ * block, so the same seed gives the same rows whatever the number
+ * of threads. Timestamps are in UTC, so they don't depend on the
+ * time zone of the machine either.
+ */
+public class DataGenerator {
+
+    /**
+     * The rows generated, committed or compressed, at once.
+     */
+    public static final int BLOCK_ROWS = 10000;
+
+    private static final int MILLIS = 1000;
+    private static final String DATE_PATTERN = "yyyy-MM-dd";
+    private static final String TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss";
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final String ALPHABET =
+        "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    private ScriptLog log;
+    private long seed = 1;
+    private int threads = 4;
+    private int batchSize = 1000;
+
+    /**
+     * Creates the generator.
+     * @param log the log to talk to
+     */
+    public DataGenerator(ScriptLog log) {
+        this.log = log;
+    }
+
+    /**
+     * Generates the rows of the given tables into the database,
+     * a thread per connection. Every block of rows is committed
+     * on its own.
+     * @param tables the tables
+     * @param connections the {@link Connection}s, left open
+     * @throws SQLException on error
+     * @throws IOException on error
+     * @throws InterruptedException if interrupted
+     */
+    public void generate(GeneratedTable[] tables, final List connections)
+        throws SQLException,
+        IOException,
+        InterruptedException {
+        List compiled = compile(tables);
+        for (int t=0; t<compiled.size(); t++) {
+            final Table table = (Table)compiled.get(t);
+            final int[] types = getColumnTypes(
+                (Connection)connections.get(0), table);
+            final String sql = table.getInsert("?", "?");
+            final Blocks blocks = new Blocks(table.blocks);
+            List tasks = new ArrayList();
+            for (int i=0; i<connections.size(); i++) {
+                final Connection con = (Connection)connections.get(i);
+                tasks.add(new Callable() {
+                    public Object call()
+                        throws Exception {
+                        try {
+                            insertBlocks(con, table, sql, types, blocks);
+                        } catch(Exception e) {
+                            blocks.abort();
+                            throw e;
+                        }
+                        return null;
+                    } }
+                );
+            }
+            run(table, tasks, blocks);
+        }
+    }
+
+    /**
+     * Generates the rows of the given tables into BGZF compressed
+     * scripts in the given directory, one per table, named so that
+     * the data goal executes them in order.
+     * @param tables the tables
+     * @param directory the directory
+     * @throws SQLException on error
+     * @throws IOException on error
+     * @throws InterruptedException if interrupted
+     */
+    public void generate(GeneratedTable[] tables, File directory)
+        throws SQLException,
+        IOException,
+        InterruptedException {
+        List compiled = compile(tables);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create "+directory);
+        }
+        for (int t=0; t<compiled.size(); t++) {
+            final Table table = (Table)compiled.get(t);
+            String name = StringUtils.leftPad(String.valueOf(t+1), 3, '0')
+                +"-"+table.spec.getName()+".sql.gz";
+            OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(new File(directory, name)));
+            try {
+                final OrderedOutput output = new OrderedOutput(out);
+                final Blocks blocks = new Blocks(table.blocks);
+                List tasks = new ArrayList();
+                for (int i=0; i<threads; i++) {
+                    tasks.add(new Callable() {
+                        public Object call()
+                            throws Exception {
+                            try {
+                                writeBlocks(table, blocks, output);
+                            } catch(Exception e) {
+                                blocks.abort();
+                                output.abort();
+                                throw e;
+                            }
+                            return null;
+                        } }
+                    );
+                }
+                log.info(" writing "+name);
+                run(table, tasks, blocks);
+                out.write(BgzfOutputStream.EOF);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Runs the tasks generating a table, and waits for them.
+     * @param table the table
+     * @param tasks the {@link Callable}s
+     * @param blocks the blocks they take
+     * @throws SQLException on error
+     * @throws IOException on error
+     * @throws InterruptedException if interrupted
+     */
+    private void run(Table table, List tasks, Blocks blocks)
+        throws SQLException,
+        IOException,
+        InterruptedException {
+        log.info("Generating "+table.spec.getRows()+" row(s) into "
+            +table.spec.getName()+" using "+tasks.size()+" thread(s)");
+        double startTime = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            List futures = new ArrayList();
+            for (int i=0; i<tasks.size(); i++) {
+                futures.add(executor.submit((Callable)tasks.get(i)));
+            }
+            for (int i=0; i<futures.size(); i++) {
+                try {
+                    ((Future)futures.get(i)).get();
+                } catch(ExecutionException ee) {
+                    blocks.abort();
+                    Throwable cause = ee.getCause();
+                    if (cause instanceof SQLException) {
+                        throw (SQLException)cause;
+                    } else if (cause instanceof IOException) {
+                        throw (IOException)cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException)cause;
+                    }
+                    throw new IllegalStateException(cause.toString());
+                }
+            }
+        } finally {
+            blocks.abort();
+            executor.shutdownNow();
+        }
+        double endTime = System.currentTimeMillis();
+        double elapsed = ((endTime-startTime)/1000.0);
+        log.info(" "+table.spec.getRows()+" row(s) generated in "+elapsed
+            +" second(s), "+(long)(table.spec.getRows()/Math.max(elapsed, 0.001))
+            +" row(s)/s");
+    }
+
+    /**
+     * Inserts the blocks of a table taken off the given blocks
+     * until there are none left.
+     * @param con the connection
+     * @param table the table
+     * @param sql the insert statement
+     * @param types the sql types of the columns
+     * @param blocks the blocks
+     * @throws SQLException on error
+     */
+    private void insertBlocks(
+        Connection con, Table table, String sql, int[] types, Blocks blocks)
+        throws SQLException {
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        PreparedStatement ps = con.prepareStatement(sql);
+        Calendar utc = Calendar.getInstance(UTC);
+        try {
+            Object[] row = new Object[table.columns.length];
+            for (long block = blocks.next(); block!=-1; block = blocks.next()) {
+                Random random = table.random(block);
+                long end = Math.min(table.spec.getRows(), (block+1)*BLOCK_ROWS);
+                int batched = 0;
+                for (long r=block*BLOCK_ROWS; r<end; r++) {
+                    table.generate(random, r, row);
+                    for (int i=0; i<row.length; i++) {
+                        if (row[i]==null) {
+                            ps.setNull(i+1, types[i]);
+                        } else if (row[i] instanceof Timestamp) {
+                            ps.setTimestamp(i+1, (Timestamp)row[i], utc);
+                        } else {
+                            ps.setObject(i+1, row[i]);
+                        }
+                    }
+                    ps.addBatch();
+                    if (++batched>=batchSize) {
+                        ps.executeBatch();
+                        batched = 0;
+                    }
+                }
+                if (batched>0) {
+                    ps.executeBatch();
+                }
+                con.commit();
+            }
+
+        } catch(SQLException sqle) {
+
+            // restoring auto commit would commit the failed block
+            rollback(con);
+            throw sqle;
+        } catch(RuntimeException re) {
+            rollback(con);
+            throw re;
+        } finally {
+            ps.close();
+            con.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Rolls back a failed block, a failure to do so is logged
+     * so that the one that failed the block is reported.
+     * @param con the connection
+     */
+    private void rollback(Connection con) {
+        try {
+            con.rollback();
+        } catch(SQLException sqle) {
+            log.warn("Unable to roll back the failed block: "+sqle.getMessage());
+        }
+    }
+
+    /**
+     * Writes the blocks of a table taken off the given blocks,
+     * each compressed into BGZF members of its own, so that the
+     * data goal decompresses the scripts in parallel, until there
+     * are none left.
+     * @param table the table
+     * @param blocks the blocks
+     * @param output where the compressed blocks go, in order
+     * @throws IOException on error
+     * @throws InterruptedException if interrupted
+     */
+    private void writeBlocks(Table table, Blocks blocks, OrderedOutput output)
+        throws IOException,
+        InterruptedException {
+        Object[] row = new Object[table.columns.length];
+        String[] literals = new String[row.length];
+        DateFormat timestamps = utcFormat(TIMESTAMP_PATTERN);
+        for (long block = blocks.next(); block!=-1; block = blocks.next()) {
+            Random random = table.random(block);
+            long end = Math.min(table.spec.getRows(), (block+1)*BLOCK_ROWS);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            Writer writer = new OutputStreamWriter(
+                new BgzfOutputStream(bytes), "UTF-8");
+            for (long r=block*BLOCK_ROWS; r<end; r++) {
+                table.generate(random, r, row);
+                for (int i=0; i<row.length; i++) {
+                    literals[i] = toLiteral(row[i], timestamps);
+                }
+                writer.write(table.getInsert("", StringUtils.join(literals, ", ")));
+                writer.write(";\n");
+            }
+            writer.close();
+            if (!output.write(block, bytes.toByteArray())) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Renders a generated value as an sql literal.
+     * @param value the value
+     * @param timestamps the format of timestamps
+     * @return the literal
+     */
+    private static String toLiteral(Object value, DateFormat timestamps) {
+        if (value==null) {
+            return "NULL";
+        } else if (value instanceof Number) {
+            return value.toString();
+        } else if (value instanceof Timestamp) {
+            return "'"+timestamps.format((Timestamp)value)+"'";
+        }
+        return "'"+StringUtils.replace(value.toString(), "'", "''")+"'";
+    }
+
+    /**
+     * Returns the sql types of the generated columns, for
+     * setting NULLs.
+     * @param con the connection
+     * @param table the table
+     * @return the types
+     * @throws SQLException on error
+     */
+    private int[] getColumnTypes(Connection con, Table table)
+        throws SQLException {
+        Statement st = con.createStatement();
+        try {
+            ResultSetMetaData meta = st.executeQuery("SELECT "
+                +StringUtils.join(table.getColumnNames(), ", ")
+                +" FROM "+table.spec.getName()+" WHERE 1=0").getMetaData();
+            int[] ret = new int[table.columns.length];
+            for (int i=0; i<ret.length; i++) {
+                ret[i] = meta.getColumnType(i+1);
+            }
+            return ret;
+        } finally {
+            st.close();
+        }
+    }
+
+    /**
+     * Checks the table specs and creates their value generators.
+     * @param tables the table specs
+     * @return the {@link Table}s
+     */
+    private List compile(GeneratedTable[] tables) {
+        List ret = new ArrayList();
+        Map byName = new HashMap();
+        for (int t=0; t<tables.length; t++) {
+            GeneratedTable spec = tables[t];
+            if (StringUtils.isEmpty(spec.getName()) || spec.getRows()<0
+                || spec.getColumns()==null || spec.getColumns().length==0) {
+                throw new IllegalArgumentException(
+                    "A generated table needs a name, rows and columns");
+            }
+            Table table = new Table(spec, t);
+            for (int i=0; i<table.columns.length; i++) {
+                table.columns[i] = createGenerator(
+                    spec.getName(), spec.getColumns()[i], byName);
+            }
+            byName.put(spec.getName().toLowerCase(), table);
+            ret.add(table);
+        }
+        return ret;
+    }
+
+    /**
+     * Creates the value generator of a column.
+     * @param tableName the name of the column's table
+     * @param column the column's spec
+     * @param tables the {@link Table}s generated before, by
+     *      lower case name
+     * @return the generator
+     */
+    private static ValueGenerator createGenerator(
+        String tableName, final GeneratedColumn column, Map tables) {
+        String where = tableName+"."+column.getName()+": ";
+        String generator = column.getGenerator()==null
+            ? "" : column.getGenerator().toLowerCase();
+        final int scale = column.getScale();
+
+        if (generator.equals("sequence")) {
+            return new ValueGenerator(column) {
+                Object value(Random random, long row) {
+                    return Long.valueOf(column.getStart()+row*column.getStep());
+                } };
+
+        } else if (generator.equals("uniform")) {
+            final double min = parseNumber(where, column.getMin(), 0);
+            final double max = parseNumber(where, column.getMax(), Integer.MAX_VALUE);
+            return new ValueGenerator(column) {
+                Object value(Random random, long row) {
+                    if (scale==0) {
+                        return Long.valueOf((long)min
+                            +(long)(random.nextDouble()*((long)max-(long)min+1)));
+                    }
+                    return round(min+random.nextDouble()*(max-min), scale);
+                } };
+
+        } else if (generator.equals("normal")) {
+            final double min = parseNumber(where, column.getMin(), -Double.MAX_VALUE);
+            final double max = parseNumber(where, column.getMax(), Double.MAX_VALUE);
+            return new ValueGenerator(column) {
+                Object value(Random random, long row) {
+                    double value = column.getMean()
+                        +random.nextGaussian()*column.getStddev();
+                    value = Math.max(min, Math.min(max, value));
+                    return scale==0 ? (Object)Long.valueOf(Math.round(value))
+                        : round(value, scale);
+                } };
+
+        } else if (generator.equals("choice")) {
+            if (StringUtils.isEmpty(column.getValues())) {
+                throw new IllegalArgumentException(where+"choice needs values");
+            }
+            final String[] values = StringUtils.split(column.getValues(), ',');
+            final double[] cumulative = new double[values.length];
+            String[] weights = column.getWeights()==null
+                ? new String[0] : StringUtils.split(column.getWeights(), ',');
+            double total = 0;
+            for (int i=0; i<values.length; i++) {
+                values[i] = values[i].trim();
+                total += i<weights.length ? parseNumber(where, weights[i], 1) : 1;
+                cumulative[i] = total;
+            }
+            final double sum = total;
+            return new ValueGenerator(column) {
+                Object value(Random random, long row) {
+                    double pick = random.nextDouble()*sum;
+                    for (int i=0; i<cumulative.length-1; i++) {
+                        if (pick<cumulative[i]) {
+                            return values[i];
+                        }
+                    }
+                    return values[values.length-1];
+                } };
+
+        } else if (generator.equals("string")) {
+            final int minLength = column.getMinLength();
+            final int maxLength = Math.max(minLength, column.getMaxLength());
+            return new ValueGenerator(column) {
+                Object value(Random random, long row) {
+                    int length = minLength+random.nextInt(maxLength-minLength+1);
+                    char[] chars = new char[length];
+                    for (int i=0; i<length; i++) {
+                        chars[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+                    }
+                    return new String(chars);
+                } };
+
+        } else if (generator.equals("timestamp")) {
+            final long min = parseTimestamp(where, column.getMin());
+            final long max = parseTimestamp(where, column.getMax());
+            return new ValueGenerator(column) {
+                Object value(Random random, long row) {
+                    long millis = min+(long)(random.nextDouble()*(max-min));
+                    return new Timestamp(millis-millis%MILLIS);
+                } };
+
+        } else if (generator.equals("reference")) {
+            Table parent = column.getTable()==null
+                ? null : (Table)tables.get(column.getTable().toLowerCase());
+            if (parent==null) {
+                throw new IllegalArgumentException(where
+                    +"references table "+column.getTable()
+                    +", which isn't generated before it");
+            }
+            final GeneratedColumn key = parent.getColumn(column.getColumn());
+            if (key==null || !"sequence".equalsIgnoreCase(key.getGenerator())) {
+                throw new IllegalArgumentException(where
+                    +"references "+column.getTable()+"."+column.getColumn()
+                    +", which isn't a sequence column");
+            }
+            final long parentRows = parent.spec.getRows();
+            return new ValueGenerator(column) {
+                Object value(Random random, long row) {
+                    long parentRow = (long)(random.nextDouble()*parentRows);
+                    return Long.valueOf(key.getStart()+parentRow*key.getStep());
+                } };
+
+        } else if (generator.equals("constant")) {
+            return new ValueGenerator(column) {
+                Object value(Random random, long row) {
+                    return column.getValue();
+                } };
+        }
+        throw new IllegalArgumentException(
+            where+"unknown generator: "+column.getGenerator());
+    }
+
+    /**
+     * Rounds a number.
+     * @param value the number
+     * @param scale the digits after the point
+     * @return the rounded number
+     */
+    private static BigDecimal round(double value, int scale) {
+        return new BigDecimal(value).setScale(scale, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Parses a number of a column spec.
+     * @param where the column, for errors
+     * @param value the number, may be null
+     * @param defaultValue the value if it's null
+     * @return the number
+     */
+    private static double parseNumber(String where, String value, double defaultValue) {
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch(NumberFormatException nfe) {
+            throw new IllegalArgumentException(where+"not a number: "+value);
+        }
+    }
+
+    /**
+     * Parses a timestamp of a column spec.
+     * @param where the column, for errors
+     * @param value yyyy-MM-dd or yyyy-MM-dd HH:mm:ss, in UTC
+     * @return the timestamp
+     */
+    private static long parseTimestamp(String where, String value) {
+        if (StringUtils.isBlank(value)) {
+            throw new IllegalArgumentException(where+"timestamp needs min and max");
+        }
+        String pattern = value.trim().length()>DATE_PATTERN.length()
+            ? TIMESTAMP_PATTERN : DATE_PATTERN;
+        try {
+            return utcFormat(pattern).parse(value.trim()).getTime();
+        } catch(ParseException pe) {
+            throw new IllegalArgumentException(where+"not a "+pattern+": "+value);
+        }
+    }
+
+    /**
+     * @param pattern the pattern
+     * @return a format of the pattern, in UTC
+     */
+    private static DateFormat utcFormat(String pattern) {
+        DateFormat ret = new SimpleDateFormat(pattern);
+        ret.setTimeZone(UTC);
+        return ret;
+    }
+
+    /**
+     * Mixes the bits of a long (the finalizer of SplitMix64),
+     * for seeding the random numbers of a block.
+     * @param z the long
+     * @return the mixed long
+     */
+    private static long mix(long z) {
+        z = (z^(z>>>30))*0xbf58476d1ce4e5b9L;
+        z = (z^(z>>>27))*0x94d049bb133111ebL;
+        return z^(z>>>31);
+    }
+
+    /**
+     * Generates the value of a column.
+     */
+    private abstract static class ValueGenerator {
+
+        private double nullRate;
+
+        /**
+         * Creates the generator.
+         * @param column the column's spec
+         */
+        ValueGenerator(GeneratedColumn column) {
+            this.nullRate = column.getNullRate();
+        }
+
+        /**
+         * Generates a value, or NULL nullRate of the time.
+         * @param random the random numbers of the block
+         * @param row the row number, from 0
+         * @return the value, null for NULL
+         */
+        Object next(Random random, long row) {
+            if (nullRate>0 && random.nextDouble()<nullRate) {
+                return null;
+            }
+            return value(random, row);
+        }
+
+        /**
+         * Generates a (non NULL) value.
+         * @param random the random numbers of the block
+         * @param row the row number, from 0
+         * @return the value
+         */
+        abstract Object value(Random random, long row);
+
+    }
+
+    /**
+     * A table spec with the generators of its columns.
+     */
+    private final class Table {
+
+        private GeneratedTable spec;
+        private int index;
+        private ValueGenerator[] columns;
+        private long blocks;
+
+        /**
+         * Creates the table.
+         * @param spec the spec
+         * @param index the position of the table in the specs
+         */
+        Table(GeneratedTable spec, int index) {
+            this.spec = spec;
+            this.index = index;
+            this.columns = new ValueGenerator[spec.getColumns().length];
+            this.blocks = (spec.getRows()+BLOCK_ROWS-1)/BLOCK_ROWS;
+        }
+
+        /**
+         * @return the random numbers of a block
+         * @param block the block
+         */
+        Random random(long block) {
+            return new Random(mix(seed+mix(index+mix(block))));
+        }
+
+        /**
+         * Generates a row.
+         * @param random the random numbers of the row's block
+         * @param row the row number, from 0
+         * @param values the values of the row, filled in
+         */
+        void generate(Random random, long row, Object[] values) {
+            for (int i=0; i<columns.length; i++) {
+                values[i] = columns[i].next(random, row);
+            }
+        }
+
+        /**
+         * @return the names of the columns
+         */
+        String[] getColumnNames() {
+            String[] ret = new String[columns.length];
+            for (int i=0; i<ret.length; i++) {
+                ret[i] = spec.getColumns()[i].getName();
+            }
+            return ret;
+        }
+
+        /**
+         * @param name a column name
+         * @return the spec of the column, or null
+         */
+        GeneratedColumn getColumn(String name) {
+            for (int i=0; i<spec.getColumns().length; i++) {
+                if (spec.getColumns()[i].getName().equalsIgnoreCase(name)) {
+                    return spec.getColumns()[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns the INSERT statement of a row.
+         * @param parameter the text of a parameter, to repeat
+         *      for every column, or empty when giving the values
+         * @param values the values, when not using parameters
+         * @return the statement
+         */
+        String getInsert(String parameter, String values) {
+            StringBuffer sql = new StringBuffer("INSERT INTO ")
+                .append(spec.getName()).append(" (")
+                .append(StringUtils.join(getColumnNames(), ", "))
+                .append(") VALUES (");
+            if (parameter.length()==0) {
+                sql.append(values);
+            } else {
+                for (int i=0; i<columns.length; i++) {
+                    sql.append(i>0 ? ", " : "").append(parameter);
+                }
+            }
+            return sql.append(")").toString();
+        }
+
+    }
+
+    /**
+     * Hands out the blocks of a table, in order, to the threads
+     * generating it.
+     */
+    private static final class Blocks {
+
+        private long count;
+        private long next;
+
+        /**
+         * Creates the blocks.
+         * @param count the number of blocks
+         */
+        Blocks(long count) {
+            this.count = count;
+        }
+
+        /**
+         * @return the next block, -1 when there are none left
+         */
+        synchronized long next() {
+            return next<count ? next++ : -1;
+        }
+
+        /**
+         * Hands out no more blocks.
+         */
+        synchronized void abort() {
+            next = count;
+        }
+
+    }
+
+    /**
+     * Writes the compressed blocks of a table in order, whatever
+     * the order the threads finish them in.
+     */
+    private static final class OrderedOutput {
+
+        private OutputStream out;
+        private long next;
+        private boolean aborted;
+
+        /**
+         * Creates the output.
+         * @param out where the blocks go
+         */
+        OrderedOutput(OutputStream out) {
+            this.out = out;
+        }
+
+        /**
+         * Writes a block once the blocks before it are written.
+         * @param block the block
+         * @param bytes the compressed block
+         * @return false if writing was aborted
+         * @throws IOException on error
+         * @throws InterruptedException if interrupted
+         */
+        synchronized boolean write(long block, byte[] bytes)
+            throws IOException,
+            InterruptedException {
+            while (next!=block && !aborted) {
+                wait();
+            }
+            if (aborted) {
+                return false;
+            }
+            out.write(bytes);
+            next++;
+            notifyAll();
+            return true;
+        }
+
+        /**
+         * Gives up writing, as a block will never come.
+         */
+        synchronized void abort() {
+            aborted = true;
+            notifyAll();
+        }
+
+    }
+
+    /**
+     * @return the seed of the random numbers
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param seed the seed of the random numbers
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return the number of threads writing files
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param threads the number of threads writing files
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @return the rows per batch when inserting
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize the rows per batch when inserting
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+}
@@ -0,0 +1,283 @@
+package com.nesting.maven2.db;
+
+/**
+ * Class for storing how the values of a generated column are
+ * generated. The generator is one of:
+ * <ul>
+ * <li>sequence: start, start+step, ... (start and step default to 1)</li>
+ * <li>uniform: numbers evenly spread between min and max, with
+ *     scale digits after the point</li>
+ * <li>normal: normally distributed numbers around mean, with the
+ *     given stddev, kept between min and max if set, with scale
+ *     digits after the point</li>
+ * <li>choice: one of the comma separated values, picked using the
+ *     comma separated weights if set</li>
+ * <li>string: random letters and digits, between minLength and
+ *     maxLength long</li>
+ * <li>timestamp: timestamps evenly spread between min and max,
+ *     given as yyyy-MM-dd or yyyy-MM-dd HH:mm:ss</li>
+ * <li>reference: a value of the sequence column of a table generated
+ *     before this one, picked evenly among its rows</li>
+ * <li>constant: value</li>
+ * </ul>
+ * Any of them yields NULL nullRate of the time.
+ */
+public class GeneratedColumn {
+
+    private String name;
+    private String generator;
+    private long start = 1;
+    private long step = 1;
+    private String min;
+    private String max;
+    private double mean;
+    private double stddev = 1;
+    private int scale;
+    private String values;
+    private String weights;
+    private int minLength = 1;
+    private int maxLength = 10;
+    private String table;
+    private String column;
+    private String value;
+    private double nullRate;
+    
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * @param name the name to set
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    /**
+     * @return the generator
+     */
+    public String getGenerator() {
+        return generator;
+    }
+    
+    /**
+     * @param generator the generator to set
+     */
+    public void setGenerator(String generator) {
+        this.generator = generator;
+    }
+    
+    /**
+     * @return the start
+     */
+    public long getStart() {
+        return start;
+    }
+    
+    /**
+     * @param start the start to set
+     */
+    public void setStart(long start) {
+        this.start = start;
+    }
+    
+    /**
+     * @return the step
+     */
+    public long getStep() {
+        return step;
+    }
+    
+    /**
+     * @param step the step to set
+     */
+    public void setStep(long step) {
+        this.step = step;
+    }
+    
+    /**
+     * @return the min
+     */
+    public String getMin() {
+        return min;
+    }
+    
+    /**
+     * @param min the min to set
+     */
+    public void setMin(String min) {
+        this.min = min;
+    }
+    
+    /**
+     * @return the max
+     */
+    public String getMax() {
+        return max;
+    }
+    
+    /**
+     * @param max the max to set
+     */
+    public void setMax(String max) {
+        this.max = max;
+    }
+    
+    /**
+     * @return the mean
+     */
+    public double getMean() {
+        return mean;
+    }
+    
+    /**
+     * @param mean the mean to set
+     */
+    public void setMean(double mean) {
+        this.mean = mean;
+    }
+    
+    /**
+     * @return the stddev
+     */
+    public double getStddev() {
+        return stddev;
+    }
+    
+    /**
+     * @param stddev the stddev to set
+     */
+    public void setStddev(double stddev) {
+        this.stddev = stddev;
+    }
+    
+    /**
+     * @return the scale
+     */
+    public int getScale() {
+        return scale;
+    }
+    
+    /**
+     * @param scale the scale to set
+     */
+    public void setScale(int scale) {
+        this.scale = scale;
+    }
+    
+    /**
+     * @return the values
+     */
+    public String getValues() {
+        return values;
+    }
+    
+    /**
+     * @param values the values to set
+     */
+    public void setValues(String values) {
+        this.values = values;
+    }
+    
+    /**
+     * @return the weights
+     */
+    public String getWeights() {
+        return weights;
+    }
+    
+    /**
+     * @param weights the weights to set
+     */
+    public void setWeights(String weights) {
+        this.weights = weights;
+    }
+    
+    /**
+     * @return the minLength
+     */
+    public int getMinLength() {
+        return minLength;
+    }
+    
+    /**
+     * @param minLength the minLength to set
+     */
+    public void setMinLength(int minLength) {
+        this.minLength = minLength;
+    }
+    
+    /**
+     * @return the maxLength
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+    
+    /**
+     * @param maxLength the maxLength to set
+     */
+    public void setMaxLength(int maxLength) {
+        this.maxLength = maxLength;
+    }
+    
+    /**
+     * @return the table
+     */
+    public String getTable() {
+        return table;
+    }
+    
+    /**
+     * @param table the table to set
+     */
+    public void setTable(String table) {
+        this.table = table;
+    }
+    
+    /**
+     * @return the column
+     */
+    public String getColumn() {
+        return column;
+    }
+    
+    /**
+     * @param column the column to set
+     */
+    public void setColumn(String column) {
+        this.column = column;
+    }
+    
+    /**
+     * @return the value
+     */
+    public String getValue() {
+        return value;
+    }
+    
+    /**
+     * @param value the value to set
+     */
+    public void setValue(String value) {
+        this.value = value;
+    }
+    
+    /**
+     * @return the nullRate
+     */
+    public double getNullRate() {
+        return nullRate;
+    }
+    
+    /**
+     * @param nullRate the nullRate to set
+     */
+    public void setNullRate(double nullRate) {
+        this.nullRate = nullRate;
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.nesting.maven2.db;
+
+/**
+ * Class for storing the spec of a table filled with generated
+ * rows by the generate goal: its name, how many rows to generate
+ * and how to generate the value of each of its columns.
+ */
+public class GeneratedTable {
+
+    private String name;
+    private long rows;
+    private GeneratedColumn[] columns;
+    
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * @param name the name to set
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    /**
+     * @return the rows
+     */
+    public long getRows() {
+        return rows;
+    }
+    
+    /**
+     * @param rows the rows to set
+     */
+    public void setRows(long rows) {
+        this.rows = rows;
+    }
+    
+    /**
+     * @return the columns
+     */
+    public GeneratedColumn[] getColumns() {
+        return columns;
+    }
+    
+    /**
+     * @param columns the columns to set
+     */
+    public void setColumns(GeneratedColumn[] columns) {
+        this.columns = columns;
+    }
+
+}
@@ -0,0 +1,391 @@
+package com.nesting.maven2.db;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites consecutive single row INSERT statements into the
+ * same table, with the same column list, into one multi row
+ * INSERT using the syntax of the {@link SqlDialect}. Any other
+ * statement is passed through untouched and ends the current
+ * group, so the order of the statements doesn't change. Inserts
+ * using sequence values (NEXTVAL, CURRVAL) are never coalesced,
+ * as Oracle evaluates them once for all rows of an INSERT ALL,
+ * and neither is anything when the dialect has no multi row
+ * insert syntax.
+ */
+public class InsertCoalescer
+    implements SqlStatementSource {
+
+    private SqlStatementSource source;
+    private SqlDialect dialect;
+    private int maxRows;
+    private int maxLength;
+    private SqlStatement pendingStatement;
+    private Insert pendingInsert;
+    private boolean eof;
+
+    /**
+     * Creates the coalescer.
+     * @param source the statements to rewrite
+     * @param dialect the dialect
+     * @param maxRows the most rows in one insert
+     * @param maxLength the most characters of values in one insert
+     */
+    public InsertCoalescer(
+        SqlStatementSource source, SqlDialect dialect,
+        int maxRows, int maxLength) {
+        this.source = source;
+        this.dialect = dialect;
+        this.maxRows = dialect.getInsertSyntax()==SqlDialect.INSERT_SINGLE_ROW
+            ? 1 : Math.min(maxRows, dialect.getMaxInsertRows());
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public SqlStatement next()
+        throws IOException {
+
+        // the first statement of the group
+        SqlStatement first = pendingStatement;
+        Insert head = pendingInsert;
+        pendingStatement = null;
+        pendingInsert = null;
+        if (first==null) {
+            first = read();
+            head = Insert.parse(first);
+        }
+        if (head==null) {
+            return first;
+        }
+
+        // collect rows for as long as they fit
+        List rows = new ArrayList();
+        rows.add(head.getValues());
+        int length = head.getValues().length();
+        while (rows.size()<maxRows) {
+            SqlStatement statement = read();
+            Insert insert = Insert.parse(statement);
+            if (insert==null || !insert.getTarget().equals(head.getTarget())
+                || length+insert.getValues().length()>maxLength) {
+                pendingStatement = statement;
+                pendingInsert = insert;
+                break;
+            }
+            rows.add(insert.getValues());
+            length += insert.getValues().length();
+        }
+
+        if (rows.size()==1) {
+            return first;
+        }
+        return new SqlStatement(
+            build(head, rows), new ArrayList(), first.getLine());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close()
+        throws IOException {
+        if (pendingStatement!=null) {
+            pendingStatement.dispose();
+            pendingStatement = null;
+        }
+        source.close();
+    }
+
+    /**
+     * Reads the next statement of the source, which isn't
+     * asked again once it has ended.
+     * @return the statement, or null at the end of the source
+     * @throws IOException on error
+     */
+    private SqlStatement read()
+        throws IOException {
+        if (eof) {
+            return null;
+        }
+        SqlStatement ret = source.next();
+        eof = ret==null;
+        return ret;
+    }
+
+    /**
+     * Builds the multi row insert.
+     * @param head the first insert of the group
+     * @param rows the rows' value lists, with their parentheses
+     * @return the sql
+     */
+    private String build(Insert head, List rows) {
+        StringBuffer sql = new StringBuffer();
+        switch (dialect.getInsertSyntax()) {
+            case SqlDialect.INSERT_ALL:
+                sql.append("INSERT ALL");
+                for (int i=0; i<rows.size(); i++) {
+                    sql.append("\n INTO ").append(head.getTarget())
+                        .append(" VALUES ").append(rows.get(i));
+                }
+                sql.append("\nSELECT * FROM DUAL");
+                break;
+
+            default:
+                sql.append("INSERT INTO ").append(head.getTarget())
+                    .append(" VALUES ");
+                for (int i=0; i<rows.size(); i++) {
+                    if (i>0) {
+                        sql.append(",\n");
+                    }
+                    sql.append(rows.get(i));
+                }
+                break;
+        }
+        return sql.toString();
+    }
+
+    /**
+     * A parsed single row INSERT ... VALUES (...) statement.
+     */
+    static final class Insert {
+
+        private static final String[] SEQUENCE_KEYWORDS = {"NEXTVAL", "CURRVAL"};
+
+        private String target;
+        private String values;
+
+        /**
+         * Creates the insert.
+         * @param target the table and column list
+         * @param values the value list, with its parentheses
+         */
+        private Insert(String target, String values) {
+            this.target = target;
+            this.values = values;
+        }
+
+        /**
+         * @return the table and column list
+         */
+        String getTarget() {
+            return target;
+        }
+
+        /**
+         * @return the value list, with its parentheses
+         */
+        String getValues() {
+            return values;
+        }
+
+        /**
+         * Parses a single row insert.
+         * @param statement the statement
+         * @return the insert, or null if the statement isn't
+         *      a single row INSERT ... VALUES (...) statement
+         *      without sequence values
+         */
+        static Insert parse(SqlStatement statement) {
+            if (statement==null || statement.hasLobs()) {
+                return null;
+            }
+            String sql = statement.getSql();
+
+            // INSERT INTO
+            int i = skipSpace(sql, 0);
+            i = keyword(sql, i, "INSERT");
+            i = keyword(sql, skipSpace(sql, i), "INTO");
+            if (i==-1) {
+                return null;
+            }
+
+            // table name
+            i = skipSpace(sql, i);
+            int tableStart = i;
+            while (i<sql.length() && sql.charAt(i)!='('
+                && !Character.isWhitespace(sql.charAt(i))) {
+                char c = sql.charAt(i);
+                if (c=='"' || c=='`' || c=='[') {
+                    i = skipQuoted(sql, i, c=='[' ? ']' : c);
+                    if (i==-1) {
+                        return null;
+                    }
+                } else {
+                    i++;
+                }
+            }
+            String table = sql.substring(tableStart, i);
+            if (table.length()==0) {
+                return null;
+            }
+
+            // optional column list
+            i = skipSpace(sql, i);
+            String columns = "";
+            if (i<sql.length() && sql.charAt(i)=='(') {
+                int end = skipGroup(sql, i);
+                if (end==-1) {
+                    return null;
+                }
+                columns = " "+sql.substring(i, end);
+                i = skipSpace(sql, end);
+            }
+
+            // VALUES (...) and nothing after it
+            i = keyword(sql, i, "VALUES");
+            if (i==-1) {
+                return null;
+            }
+            i = skipSpace(sql, i);
+            if (i>=sql.length() || sql.charAt(i)!='(') {
+                return null;
+            }
+            int end = skipGroup(sql, i);
+            if (end==-1 || skipSpace(sql, end)!=sql.length()
+                || usesSequence(sql, i, end)) {
+                return null;
+            }
+            return new Insert(table+columns, sql.substring(i, end));
+        }
+
+        /**
+         * Checks whether the given part of the sql, outside of
+         * quoted strings and identifiers, uses a sequence value
+         * (seq.NEXTVAL, NEXTVAL('seq'), NEXTVAL FOR seq, ...).
+         * @param sql the sql
+         * @param i the start of the part
+         * @param end the end of the part
+         * @return true if it does
+         */
+        private static boolean usesSequence(String sql, int i, int end) {
+            while (i<end) {
+                char c = sql.charAt(i);
+                if (c=='\'' || c=='"' || c=='`') {
+                    i = skipQuoted(sql, i, c);
+                    if (i==-1) {
+                        return false;
+                    }
+                    continue;
+                }
+                if (i==0 || !isIdentifierChar(sql.charAt(i-1))) {
+                    for (int k=0; k<SEQUENCE_KEYWORDS.length; k++) {
+                        int after = keyword(sql, i, SEQUENCE_KEYWORDS[k]);
+                        if (after!=-1 && (after==sql.length()
+                            || !isIdentifierChar(sql.charAt(after)))) {
+                            return true;
+                        }
+                    }
+                }
+                i++;
+            }
+            return false;
+        }
+
+        /**
+         * @param c the character
+         * @return whether or not it can be part of an identifier
+         */
+        private static boolean isIdentifierChar(char c) {
+            return Character.isLetterOrDigit(c) || c=='_' || c=='$';
+        }
+
+        /**
+         * Matches a keyword.
+         * @param sql the sql
+         * @param i the position
+         * @param keyword the keyword
+         * @return the position after the keyword, or -1 if it
+         *      isn't there
+         */
+        private static int keyword(String sql, int i, String keyword) {
+            int end = i+keyword.length();
+            if (i==-1 || end>sql.length()
+                || !sql.regionMatches(true, i, keyword, 0, keyword.length())
+                || (end<sql.length()
+                    && Character.isLetterOrDigit(sql.charAt(end)))) {
+                return -1;
+            }
+            return end;
+        }
+
+        /**
+         * Skips whitespace and comments.
+         * @param sql the sql
+         * @param i the position
+         * @return the position of the next token
+         */
+        private static int skipSpace(String sql, int i) {
+            if (i==-1) {
+                return -1;
+            }
+            while (i<sql.length()) {
+                if (Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                } else if (sql.startsWith("--", i)) {
+                    int end = sql.indexOf('\n', i);
+                    i = end==-1 ? sql.length() : end;
+                } else if (sql.startsWith("/*", i)) {
+                    int end = sql.indexOf("*/", i+2);
+                    i = end==-1 ? sql.length() : end+2;
+                } else {
+                    break;
+                }
+            }
+            return i;
+        }
+
+        /**
+         * Skips a quoted string or identifier, doubled closing
+         * quotes being escapes.
+         * @param sql the sql
+         * @param i the position of the opening quote
+         * @param quote the closing quote
+         * @return the position after the closing quote, or -1
+         */
+        private static int skipQuoted(String sql, int i, char quote) {
+            i++;
+            while (i<sql.length()) {
+                if (sql.charAt(i)==quote) {
+                    if (i+1<sql.length() && sql.charAt(i+1)==quote) {
+                        i += 2;
+                        continue;
+                    }
+                    return i+1;
+                }
+                i++;
+            }
+            return -1;
+        }
+
+        /**
+         * Skips a parenthesized group, honouring nested groups,
+         * quoted strings and identifiers.
+         * @param sql the sql
+         * @param i the position of the opening parenthesis
+         * @return the position after the closing parenthesis, or -1
+         */
+        private static int skipGroup(String sql, int i) {
+            int depth = 0;
+            while (i<sql.length()) {
+                char c = sql.charAt(i);
+                if (c=='\'' || c=='"' || c=='`') {
+                    i = skipQuoted(sql, i, c);
+                    if (i==-1) {
+                        return -1;
+                    }
+                    continue;
+                } else if (c=='(') {
+                    depth++;
+                } else if (c==')' && --depth==0) {
+                    return i+1;
+                }
+                i++;
+            }
+            return -1;
+        }
+
+    }
+
+}
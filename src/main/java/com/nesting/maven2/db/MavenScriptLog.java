@@ -0,0 +1,70 @@
+package com.nesting.maven2.db;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * {@link ScriptLog} that logs to the Maven {@link Log}.
+ */
+public class MavenScriptLog
+    implements ScriptLog {
+
+    private Log log;
+
+    /**
+     * Creates the log.
+     * @param log the Maven log
+     */
+    public MavenScriptLog(Log log) {
+        this.log = log;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isDebugEnabled() {
+        return log.isDebugEnabled();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void debug(String message) {
+        log.debug(message);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void debug(String message, Throwable cause) {
+        log.debug(message, cause);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void info(String message) {
+        log.info(message);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void warn(String message) {
+        log.warn(message);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void error(String message) {
+        log.error(message);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void error(String message, Throwable cause) {
+        log.error(message, cause);
+    }
+
+}
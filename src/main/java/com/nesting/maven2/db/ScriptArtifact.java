@@ -0,0 +1,110 @@
+package com.nesting.maven2.db;
+
+/**
+ * Class for storing the coordinates of an artifact (jar/zip)
+ * that contains scripts, and the path within it where the
+ * scripts reside.
+ */
+public class ScriptArtifact {
+
+    private String groupId;
+    private String artifactId;
+    private String version;
+    private String type = "jar";
+    private String classifier;
+    private String path;
+    
+    /**
+     * @return the groupId
+     */
+    public String getGroupId() {
+        return groupId;
+    }
+    
+    /**
+     * @param groupId the groupId to set
+     */
+    public void setGroupId(String groupId) {
+        this.groupId = groupId;
+    }
+    
+    /**
+     * @return the artifactId
+     */
+    public String getArtifactId() {
+        return artifactId;
+    }
+    
+    /**
+     * @param artifactId the artifactId to set
+     */
+    public void setArtifactId(String artifactId) {
+        this.artifactId = artifactId;
+    }
+    
+    /**
+     * @return the version
+     */
+    public String getVersion() {
+        return version;
+    }
+    
+    /**
+     * @param version the version to set
+     */
+    public void setVersion(String version) {
+        this.version = version;
+    }
+    
+    /**
+     * @return the type
+     */
+    public String getType() {
+        return type;
+    }
+    
+    /**
+     * @param type the type to set
+     */
+    public void setType(String type) {
+        this.type = type;
+    }
+    
+    /**
+     * @return the classifier
+     */
+    public String getClassifier() {
+        return classifier;
+    }
+    
+    /**
+     * @param classifier the classifier to set
+     */
+    public void setClassifier(String classifier) {
+        this.classifier = classifier;
+    }
+    
+    /**
+     * @return the path within the artifact where the scripts reside
+     */
+    public String getPath() {
+        return path;
+    }
+    
+    /**
+     * @param path the path within the artifact where the scripts reside
+     */
+    public void setPath(String path) {
+        this.path = path;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public String toString() {
+        return groupId+":"+artifactId+":"+type
+            +(classifier!=null ? ":"+classifier : "")
+            +":"+version+"!/"+(path!=null ? path : "");
+    }
+    
+}
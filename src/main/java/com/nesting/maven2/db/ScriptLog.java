@@ -0,0 +1,53 @@
+package com.nesting.maven2.db;
+
+/**
+ * The log the {@link ScriptRunner} talks to, so that it doesn't
+ * depend on the log of whatever runs it (Maven, the command line
+ * or an application).
+ */
+public interface ScriptLog {
+
+    /**
+     * @return whether or not debug messages are logged
+     */
+    boolean isDebugEnabled();
+
+    /**
+     * Logs a debug message.
+     * @param message the message
+     */
+    void debug(String message);
+
+    /**
+     * Logs a debug message with the error that caused it.
+     * @param message the message
+     * @param cause the error
+     */
+    void debug(String message, Throwable cause);
+
+    /**
+     * Logs an info message.
+     * @param message the message
+     */
+    void info(String message);
+
+    /**
+     * Logs a warning.
+     * @param message the message
+     */
+    void warn(String message);
+
+    /**
+     * Logs an error.
+     * @param message the message
+     */
+    void error(String message);
+
+    /**
+     * Logs an error with the error that caused it.
+     * @param message the message
+     * @param cause the error
+     */
+    void error(String message, Throwable cause);
+
+}
@@ -0,0 +1,230 @@
+package com.nesting.maven2.db;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counters of the script being executed. They are written by
+ * the thread executing the script only, and read by the
+ * progress ticker and JMX. Each batch is also recorded as a
+ * {@link BatchEvent} when the vm has a flight recorder.
+ */
+public class ScriptProgress
+    implements ScriptProgressMBean {
+
+    private static final int MILLIS = 1000;
+    private static final int PERCENT = 100;
+    private static final int KB = 1024;
+    private static final boolean FLIGHT_RECORDER = hasFlightRecorder();
+
+    private volatile String scriptName;
+    private volatile long bytesTotal = -1;
+    private volatile long bytesRead;
+    private volatile long statements;
+    private volatile long rows;
+    private volatile long lastBatchMillis;
+    private volatile long startTime;
+    
+    /**
+     * Resets the counters for a new script.
+     * @param name the name of the script
+     * @param size the size of the script, -1 if unknown
+     */
+    public void startScript(String name, long size) {
+        scriptName = name;
+        bytesTotal = size;
+        bytesRead = 0;
+        statements = 0;
+        rows = 0;
+        lastBatchMillis = 0;
+        startTime = System.currentTimeMillis();
+    }
+    
+    /**
+     * Returns a stream that counts the bytes read from the
+     * given stream as the bytes read from the script.
+     * @param ips the (compressed) script stream
+     * @return the counting stream
+     */
+    public InputStream count(InputStream ips) {
+        return new FilterInputStream(ips) {
+            public int read() 
+                throws IOException {
+                int ret = super.read();
+                if (ret!=-1) {
+                    bytesRead++;
+                }
+                return ret;
+            }
+            public int read(byte[] b, int off, int len) 
+                throws IOException {
+                int ret = super.read(b, off, len);
+                if (ret>0) {
+                    bytesRead += ret;
+                }
+                return ret;
+            }
+            public long skip(long n) 
+                throws IOException {
+                long ret = super.skip(n);
+                bytesRead += ret;
+                return ret;
+            }
+        };
+    }
+    
+    /**
+     * Starts a batch or statement, to be passed to
+     * {@link #executed(Object, String, int, long, long)}.
+     * @return the batch, null if there's no flight recorder
+     */
+    public Object startBatch() {
+        return FLIGHT_RECORDER ? BatchEvent.begin(scriptName) : null;
+    }
+
+    /**
+     * Records an executed batch or statement.
+     * @param batch what {@link #startBatch()} returned
+     * @param location the script and line of the batch
+     * @param statementCount the number of statements
+     * @param rowCount the rows they updated
+     * @param millis how long it took
+     */
+    public void executed(
+        Object batch, String location, int statementCount, long rowCount, long millis) {
+        statements += statementCount;
+        rows += rowCount;
+        lastBatchMillis = millis;
+        if (batch!=null) {
+            BatchEvent.commit(batch, location, statementCount, rowCount);
+        }
+    }
+
+    /**
+     * @return whether or not the vm has a flight recorder
+     */
+    private static boolean hasFlightRecorder() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch(ClassNotFoundException cnfe) {
+            return false;
+        } catch(LinkageError le) {
+            return false;
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public String getScriptName() {
+        return scriptName;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public long getBytesTotal() {
+        return bytesTotal;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public double getPercentComplete() {
+        long total = bytesTotal;
+        return total>0 ? Math.min(PERCENT, bytesRead*(double)PERCENT/total) : -1;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public long getStatements() {
+        return statements;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public long getRows() {
+        return rows;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public double getStatementsPerSecond() {
+        return perSecond(statements);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public double getRowsPerSecond() {
+        return perSecond(rows);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public long getLastBatchMillis() {
+        return lastBatchMillis;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public long getEstimatedSecondsRemaining() {
+        long total = bytesTotal;
+        long read = bytesRead;
+        if (total<=0 || read<=0) {
+            return -1;
+        }
+        long elapsed = System.currentTimeMillis()-startTime;
+        return Math.max(0, (long)(elapsed*((double)(total-read)/read))/MILLIS);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public String toString() {
+        StringBuffer ret = new StringBuffer();
+        ret.append(scriptName).append(": ");
+        if (bytesTotal>0) {
+            ret.append((long)getPercentComplete()).append("% (")
+                .append(bytesRead/KB).append(" of ")
+                .append(bytesTotal/KB).append(" KB), ");
+        } else {
+            ret.append(bytesRead/KB).append(" KB, ");
+        }
+        ret.append(statements).append(" statements (")
+            .append((long)getStatementsPerSecond()).append("/s), ")
+            .append(rows).append(" rows (")
+            .append((long)getRowsPerSecond()).append("/s), last batch ")
+            .append(lastBatchMillis).append(" ms");
+        long eta = getEstimatedSecondsRemaining();
+        if (eta>=0) {
+            ret.append(", ETA ").append(eta/60).append("m")
+                .append(eta%60).append("s");
+        }
+        return ret.toString();
+    }
+    
+    /**
+     * @param count a counter
+     * @return the counter per second since the script started
+     */
+    private double perSecond(long count) {
+        long elapsed = System.currentTimeMillis()-startTime;
+        return elapsed>0 ? count*(double)MILLIS/elapsed : 0;
+    }
+    
+}
@@ -0,0 +1,58 @@
+package com.nesting.maven2.db;
+
+/**
+ * JMX view of the progress of the script being executed.
+ */
+public interface ScriptProgressMBean {
+
+    /**
+     * @return the name of the script being executed
+     */
+    String getScriptName();
+    
+    /**
+     * @return the bytes of the (compressed) script read so far
+     */
+    long getBytesRead();
+    
+    /**
+     * @return the size of the (compressed) script, -1 if unknown
+     */
+    long getBytesTotal();
+    
+    /**
+     * @return the percentage of the script read, -1 if unknown
+     */
+    double getPercentComplete();
+    
+    /**
+     * @return the statements executed from the script
+     */
+    long getStatements();
+    
+    /**
+     * @return the rows updated by the script
+     */
+    long getRows();
+    
+    /**
+     * @return the statements executed per second
+     */
+    double getStatementsPerSecond();
+    
+    /**
+     * @return the rows updated per second
+     */
+    double getRowsPerSecond();
+    
+    /**
+     * @return how long the last batch (or statement) took
+     */
+    long getLastBatchMillis();
+    
+    /**
+     * @return the estimated seconds until the script is done, -1 if unknown
+     */
+    long getEstimatedSecondsRemaining();
+    
+}
@@ -0,0 +1,1192 @@
+package com.nesting.maven2.db;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.nesting.maven2.db.compress.Decompressor;
+import com.nesting.maven2.db.compress.Decompressors;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Reads, splits and executes sql scripts on connections it is
+ * given. It doesn't depend on Maven, so that scripts can be
+ * applied from the mojos, the command line ({@link ScriptRunnerCli})
+ * or application startup code alike:
+ * <pre>
+ * ScriptRunner runner = new ScriptRunner(log);
+ * runner.setScriptEncoding("UTF-8");
+ * try {
+ *     runner.executeScriptsInDirectory(new File("updates"), con);
+ * } finally {
+ *     runner.close();
+ * }
+ * </pre>
+ */
+public class ScriptRunner {
+
+    private static final int BUFFER_SIZE = 65536;
+    private static final int MILLIS = 1000;
+
+    private ScriptLog log;
+    private int batchSize = 20;
+    private boolean useBatch = true;
+    private String sqlDelimiter = ";";
+    private String scriptEncoding;
+    private int lobThreshold = 1048576;
+    private boolean coalesceInserts;
+    private int coalesceMaxRows = 1000;
+    private int coalesceMaxLength = 1048576;
+    private SqlDialect sqlDialect;
+    private int decompressionThreads;
+    private int statementTimeout;
+    private int batchTimeout;
+    private int lockTimeout;
+    private int slowStatementWarning = 60;
+    private int progressInterval = 10;
+
+    private ScriptProgress progress = new ScriptProgress();
+    private StatementWatchdog watchdog;
+    private TableTracker tableTracker;
+
+    /**
+     * Creates the runner.
+     * @param log the log to talk to
+     */
+    public ScriptRunner(ScriptLog log) {
+        this.log = log;
+    }
+
+    /**
+     * Stops the runner's background threads.
+     */
+    public void close() {
+        if (watchdog!=null) {
+            watchdog.stop();
+            watchdog = null;
+        }
+    }
+
+    /**
+     * Executes all of the sql scripts in a given directory
+     * using the given database connection.
+     * @param directory the directory where the scripts reside
+     * @param con the database connection
+     * @throws SQLException on error
+     * @throws IOException on error
+     */
+    public void executeScriptsInDirectory(File directory, Connection con)
+        throws SQLException,
+        IOException {
+
+        // talk a bit :)
+        log.info("Executing scripts in: "+directory.getName());
+
+        // loop through all the files and execute them
+        File[] files = listScriptFiles(directory);
+        for (int i = 0; i<files.length; i++) {
+            executeScript(files[i].getName(),
+                new FileInputStream(files[i]), files[i].length(), con);
+        }
+
+    }
+
+    /**
+     * Lists the scripts in the given directory, sorted
+     * by name.
+     * @param directory the directory where the scripts reside
+     * @return the scripts
+     * @throws IOException if it's not a directory
+     */
+    public static File[] listScriptFiles(File directory)
+        throws IOException {
+
+        // make sure we can read it, and that it's
+        // a file and not a directory
+        if (!directory.isDirectory()) {
+            throw new IOException(directory.getName()+" is not a directory");
+        }
+
+        // get all files in directory
+        List files = new ArrayList();
+        File[] children = directory.listFiles();
+        for (int i = 0; i<children.length; i++) {
+            if (!children[i].isDirectory() && children[i].isFile()) {
+                files.add(children[i]);
+            }
+        }
+
+        // sort
+        Collections.sort(files, new Comparator() {
+            public int compare(Object arg0, Object arg1) {
+                return ((File)arg0).getName().compareTo(((File)arg1).getName());
+            } }
+        );
+        return (File[])files.toArray(new File[files.size()]);
+    }
+
+    /**
+     * Executes all of the sql scripts found under the given
+     * path of a jar/zip file, streaming them straight out of it.
+     * @param archive the jar/zip file
+     * @param path the path of the scripts in the file
+     * @param con the database connection
+     * @throws SQLException on error
+     * @throws IOException on error
+     */
+    public void executeScriptsInArchive(
+        File archive, String path, Connection con)
+        throws SQLException,
+        IOException {
+        String prefix = normalizeScriptPath(path);
+        ZipFile zip = new ZipFile(archive);
+        try {
+
+            // loop through all the entries and execute them
+            List entries = listScriptEntries(zip, prefix);
+            for (int i = 0; i<entries.size(); i++) {
+                ZipEntry entry = (ZipEntry)entries.get(i);
+                executeScript(entry.getName().substring(prefix.length()),
+                    zip.getInputStream(entry), entry.getSize(), con);
+            }
+
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * Normalizes the path of the scripts in a jar/zip file:
+     * no leading slash, trailing slash unless it's the root.
+     * @param path the path, may be null
+     * @return the path prefix of the scripts
+     */
+    public static String normalizeScriptPath(String path) {
+        String prefix = StringUtils.isEmpty(path)
+            ? "" : path.replace('\\', '/');
+        while (prefix.startsWith("/")) {
+            prefix = prefix.substring(1);
+        }
+        if (prefix.length()>0 && !prefix.endsWith("/")) {
+            prefix = prefix+"/";
+        }
+        return prefix;
+    }
+
+    /**
+     * Lists the entries directly under the given path of
+     * a jar/zip file, sorted by name.
+     * @param zip the jar/zip file
+     * @param prefix the normalized path of the scripts
+     * @return the {@link ZipEntry}s
+     */
+    public List listScriptEntries(ZipFile zip, String prefix) {
+
+        // get all files directly under the prefix
+        List entries = new ArrayList();
+        for (Enumeration e = zip.entries(); e.hasMoreElements();) {
+            ZipEntry entry = (ZipEntry)e.nextElement();
+            String name = entry.getName();
+            if (!entry.isDirectory()
+                && name.startsWith(prefix)
+                && name.indexOf('/', prefix.length())==-1) {
+                entries.add(entry);
+            }
+        }
+        if (entries.isEmpty()) {
+            log.warn(" no scripts found under: "+prefix);
+        }
+
+        // sort
+        Collections.sort(entries, new Comparator() {
+            public int compare(Object arg0, Object arg1) {
+                return ((ZipEntry)arg0).getName().compareTo(
+                    ((ZipEntry)arg1).getName());
+            } }
+        );
+        return entries;
+    }
+
+    /**
+     * Executes a script read from the given stream, reporting
+     * its progress every progressInterval seconds while doing so.
+     * @param name the name of the script
+     * @param ips the stream to read the script from
+     * @param size the size of the stream, -1 if unknown
+     * @param con the connection
+     * @throws SQLException on error
+     * @throws IOException on error
+     */
+    public void executeScript(
+        String name, InputStream ips, long size, Connection con)
+        throws SQLException,
+        IOException {
+
+        // start reporting progress
+        progress.startScript(name, size);
+        Timer ticker = null;
+        if (progressInterval>0) {
+            ticker = new Timer("db-progress", true);
+            ticker.schedule(new TimerTask() {
+                public void run() {
+                    log.info(" progress "+progress);
+                } },
+                progressInterval*(long)MILLIS, progressInterval*(long)MILLIS);
+        }
+
+        double startTime = System.currentTimeMillis();
+        try {
+            if (useBatch) {
+                batchExecuteSqlScript(name, progress.count(ips), con);
+            } else {
+                executeSqlScript(name, progress.count(ips), con);
+            }
+        } finally {
+            if (ticker!=null) {
+                ticker.cancel();
+            }
+        }
+        double endTime = System.currentTimeMillis();
+        double elapsed = ((endTime-startTime)/1000.0);
+        log.info(" script completed execution in "+elapsed+" second(s)");
+    }
+
+    /**
+     * Batch executes a script read from the given stream,
+     * the stream is closed when done.
+     * @param name the name of the script
+     * @param ips the stream to read the script from
+     * @param con the connection
+     * @throws SQLException on error
+     * @throws IOException on error
+     */
+    public void batchExecuteSqlScript(
+        String name, InputStream ips, Connection con)
+        throws SQLException,
+        IOException {
+
+        // talk a bit :)
+        log.info("batch executing script: "+name);
+
+        // the stream, and whatever is opened on top of it,
+        // is closed even if opening the rest fails
+        InputStream script = ips;
+        SqlStatementSource in = null;
+        Statement st = null;
+
+        // loop through the statements
+        int execCount = 0;
+        List sqlLines = new ArrayList();
+        String batchLocation = null;
+        SqlStatement sql;
+        try {
+            script = openDecompressingStream(ips);
+            in = openScript(script, con);
+            st = con.createStatement();
+            while ((sql = in.next()) != null) {
+                execCount++;
+                if (tableTracker!=null) {
+                    tableTracker.track(sql.getSql());
+                }
+
+                // statements with lobs can't be batched, so
+                // execute what we have and then the statement
+                if (sql.hasLobs()) {
+                    try {
+                        if (sqlLines.size()>0) {
+                            executeBatch(st, sqlLines, batchLocation);
+                            sqlLines.clear();
+                        }
+                        executeLobStatement(con, sql, name+":"+sql.getLine());
+                    } finally {
+                        sql.dispose();
+                    }
+                    continue;
+                }
+
+                if (sqlLines.isEmpty()) {
+                    batchLocation = name+":"+sql.getLine();
+                }
+                sqlLines.add(sql.getSql());
+                if (sqlLines.size()>=batchSize) {
+                    executeBatch(st, sqlLines, batchLocation);
+                    sqlLines.clear();
+                }
+            }
+
+            // execute last statements
+            if (sqlLines.size()>0) {
+                executeBatch(st, sqlLines, batchLocation);
+                sqlLines.clear();
+            }
+        } finally {
+            close(st, in, script);
+        }
+
+        log.info(" "+execCount+" statements batch executed from "+name);
+    }
+
+    /**
+     * Executes a script read from the given stream, using
+     * the given connection. The stream is closed when done.
+     * @param name the name of the script
+     * @param ips the stream to read the script from
+     * @param con the connection
+     * @throws SQLException on error
+     * @throws IOException on error
+     */
+    public void executeSqlScript(
+        String name, InputStream ips, Connection con)
+        throws SQLException,
+        IOException {
+
+        // talk a bit :)
+        log.info("executing script: "+name);
+
+        // the stream, and whatever is opened on top of it,
+        // is closed even if opening the rest fails
+        InputStream script = ips;
+        SqlStatementSource in = null;
+        Statement st = null;
+
+        // loop through the statements
+        int execCount = 0;
+        SqlStatement sql;
+        try {
+            script = openDecompressingStream(ips);
+            in = openScript(script, con);
+            st = con.createStatement();
+            while ((sql = in.next()) != null) {
+                if (tableTracker!=null) {
+                    tableTracker.track(sql.getSql());
+                }
+                if (sql.hasLobs()) {
+                    executeLobStatement(con, sql, name+":"+sql.getLine());
+                } else {
+                    executeStatement(
+                        st, sql.getSql(), name+":"+sql.getLine());
+                }
+                execCount++;
+            }
+        } finally {
+            close(st, in, script);
+        }
+
+        log.info(" "+execCount+" statements executed from "+name);
+    }
+
+    /**
+     * Prepares, without executing, every statement of a script
+     * read from the given stream, logging the ones the database
+     * can't prepare. The stream is closed when done.
+     * @param name the name of the script
+     * @param ips the stream to read the script from
+     * @param con the connection
+     * @return the number of statements that couldn't be prepared
+     * @throws SQLException on error
+     * @throws IOException on error
+     */
+    public int prepareSqlScript(
+        String name, InputStream ips, Connection con)
+        throws SQLException,
+        IOException {
+        InputStream script = ips;
+        SqlStatementSource in = null;
+        int failed = 0;
+        try {
+            script = openDecompressingStream(ips);
+            checkEncoding();
+            in = new SqlStatementReader(
+                new InputStreamReader(script, scriptEncoding),
+                sqlDelimiter, lobThreshold, getDialect(con));
+            SqlStatement sql;
+            while ((sql = in.next()) != null) {
+                try {
+                    con.prepareStatement(sql.getSql()).close();
+                } catch(SQLException sqle) {
+                    log.warn(" "+name+":"+sql.getLine()+": "+sqle.getMessage());
+                    failed++;
+                } finally {
+                    sql.dispose();
+                }
+            }
+        } finally {
+            close(in, script);
+        }
+        return failed;
+    }
+
+    /**
+     * Opens the stream of statements to execute from
+     * the given script.
+     * @param reader the script
+     * @param con the connection
+     * @return the statements
+     * @throws SQLException on error
+     */
+    protected SqlStatementSource openStatementSource(
+        Reader reader, Connection con)
+        throws SQLException {
+        SqlDialect dialect = getDialect(con);
+        SqlStatementSource ret = new SqlStatementReader(
+            reader, sqlDelimiter, lobThreshold, dialect);
+        if (coalesceInserts) {
+            if (dialect.getInsertSyntax()==SqlDialect.INSERT_SINGLE_ROW) {
+                log.warn("No multi row insert syntax for sql dialect: "
+                    +dialect+", inserts aren't coalesced");
+            } else {
+                ret = new InsertCoalescer(
+                    ret, dialect, coalesceMaxRows, coalesceMaxLength);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Opens the stream of statements to execute from the
+     * given (decompressed) script stream.
+     * @param ips the script stream
+     * @param con the connection
+     * @return the statements
+     * @throws SQLException on error
+     * @throws IOException on error
+     */
+    private SqlStatementSource openScript(InputStream ips, Connection con)
+        throws SQLException,
+        IOException {
+
+        // check encoding
+        checkEncoding();
+
+        // our file reader
+        Reader reader;
+        reader = new InputStreamReader(ips, scriptEncoding);
+
+        return openStatementSource(reader, con);
+    }
+
+    /**
+     * Closes what was opened for executing a script: the
+     * statement, and either the statement source or, if
+     * opening that failed, the script stream.
+     * @param st the statement, may be null
+     * @param in the statement source, may be null
+     * @param ips the script stream
+     * @throws SQLException on error
+     * @throws IOException on error
+     */
+    private static void close(
+        Statement st, SqlStatementSource in, InputStream ips)
+        throws SQLException,
+        IOException {
+        try {
+            if (st!=null) {
+                st.close();
+            }
+        } finally {
+            close(in, ips);
+        }
+    }
+
+    /**
+     * Closes the statement source or, if opening that
+     * failed, the script stream.
+     * @param in the statement source, may be null
+     * @param ips the script stream
+     * @throws IOException on error
+     */
+    private static void close(SqlStatementSource in, InputStream ips)
+        throws IOException {
+        if (in!=null) {
+            in.close();
+        } else {
+            ips.close();
+        }
+    }
+
+    /**
+     * Returns the configured {@link SqlDialect}, or the one
+     * of the database the given connection is connected to.
+     * @param con the connection
+     * @return the dialect
+     * @throws SQLException on error
+     */
+    public SqlDialect getDialect(Connection con)
+        throws SQLException {
+        return sqlDialect!=null ? sqlDialect : SqlDialect.forConnection(con);
+    }
+
+    /**
+     * Returns the configured {@link SqlDialect}, or the one
+     * of the database the given jdbc url points to.
+     * @param url the jdbc url
+     * @return the dialect
+     */
+    public SqlDialect getDialect(String url) {
+        return sqlDialect!=null ? sqlDialect : SqlDialect.forUrl(url);
+    }
+
+    /**
+     * Wraps the given stream in a decompressing stream
+     * if its magic bytes say it's compressed.
+     * @param ips the raw stream
+     * @return the stream to read the script from
+     * @throws IOException on error
+     */
+    protected InputStream openDecompressingStream(InputStream ips)
+        throws IOException {
+        InputStream in = new BufferedInputStream(ips, BUFFER_SIZE);
+        Decompressor decompressor = Decompressors.detect(in);
+        if (decompressor==null) {
+            return in;
+        }
+        int threads = decompressionThreads>0
+            ? decompressionThreads
+            : Runtime.getRuntime().availableProcessors();
+        log.info(" file is "+decompressor.getName()+" compressed, using "
+            +threads+" decompression thread(s)");
+        return Decompressors.open(in, decompressor, threads);
+    }
+
+    /**
+     * Executes a batch update.
+     * @param st the statement
+     * @param sqlLines the sql lines
+     * @param location the script and line the batch starts at
+     * @throws SQLException on error
+     */
+    protected void executeBatch(Statement st, List sqlLines, String location)
+        throws SQLException {
+
+        if (log.isDebugEnabled()) {
+            log.debug("Executing batch");
+        }
+
+        // add to batch
+        for (int i=0; i<sqlLines.size(); i++) {
+            st.addBatch((String)sqlLines.get(i));
+        }
+
+        Object batch = progress.startBatch();
+        long startTime = System.currentTimeMillis();
+        int[] ret;
+        watch(st, location, batchTimeout);
+        try {
+            ret  = st.executeBatch();
+        } catch(SQLException sqle) {
+            throw statementFailed(sqle, location, batchTimeout, null);
+        } finally {
+            unwatch();
+        }
+        long rows = 0;
+        for (int i=0; i<ret.length; i++) {
+            rows += Math.max(0, ret[i]);
+        }
+        progress.executed(batch, location,
+            sqlLines.size(), rows, System.currentTimeMillis()-startTime);
+        if (log.isDebugEnabled()) {
+            log.debug("    "+ret.length+" statement(s) executed");
+        }
+
+        for (int i=0; i<ret.length; i++) {
+            if (ret[i]==Statement.SUCCESS_NO_INFO
+                && log.isDebugEnabled()) {
+                log.debug("    statement "+i+" processed successfully "
+                    + "without return results");
+
+            } else if (ret[i]==Statement.EXECUTE_FAILED) {
+                log.error("    error durring batch execution of statement: "+sqlLines.get(i));
+                throw new SQLException("Error executing batch at "+location+": "+sqlLines.get(i));
+
+            } else if (ret[i]>=0 && log.isDebugEnabled()) {
+                log.debug("    statement "+i+" processed successfully "
+                    + " with "+ret[i]+" records effected");
+            }
+        }
+
+    }
+
+    /**
+     * Runs the given SQL statement.
+     *
+     * @param st
+     *            the statement to run it on
+     * @param sqlLine
+     *            the sql statement
+     * @param location
+     *            the script and line the statement is at
+     * @throws SQLException
+     *             on error
+     */
+    protected void executeStatement(
+        Statement st, String sqlLine, String location)
+        throws SQLException {
+        if (log.isDebugEnabled()) {
+            log.debug("    executing:\n"+sqlLine);
+        }
+        boolean execRet = false;
+        Object batch = progress.startBatch();
+        long startTime = System.currentTimeMillis();
+        long rows = 0;
+        watch(st, location, statementTimeout);
+        try {
+            execRet = st.execute(sqlLine);
+        } catch(SQLException sqle) {
+            throw statementFailed(sqle, location, statementTimeout, sqlLine);
+        } finally {
+            unwatch();
+        }
+        boolean loop = true;
+        while (loop) {
+            if (execRet) {
+                log.warn(" statement returned a resultset");
+            } else {
+                // Got an update count
+                int count = st.getUpdateCount();
+
+                if (count == -1) {
+                    // Nothing left
+                    loop = false;
+                } else {
+                    rows += count;
+                    if (log.isDebugEnabled()){
+                        // An update count was returned
+                        log.debug("    "+count+" row(s) updated");
+                    }
+                }
+            }
+            if (loop) {
+                execRet = st.getMoreResults();
+            }
+        }
+        progress.executed(
+            batch, location, 1, rows, System.currentTimeMillis()-startTime);
+    }
+
+    /**
+     * Runs the given SQL statement as a prepared statement,
+     * streaming its lobs to the database as parameters.
+     * @param con the connection
+     * @param sql the statement
+     * @param location the script and line the statement is at
+     * @throws SQLException on error
+     * @throws IOException on error
+     */
+    protected void executeLobStatement(
+        Connection con, SqlStatement sql, String location)
+        throws SQLException,
+        IOException {
+        if (log.isDebugEnabled()) {
+            log.debug("    executing with "+sql.getLobs().size()
+                +" streamed lob(s):\n"+sql.getSql());
+        }
+
+        PreparedStatement ps = con.prepareStatement(sql.getSql());
+        List streams = new ArrayList();
+        try {
+            for (int i=0; i<sql.getLobs().size(); i++) {
+                SqlLob lob = (SqlLob)sql.getLobs().get(i);
+                Object value = lob.isBinary()
+                    ? (Object)lob.openStream() : (Object)lob.openReader();
+                streams.add(value);
+                setLob(ps, i+1, lob, value);
+            }
+            Object batch = progress.startBatch();
+            long startTime = System.currentTimeMillis();
+            watch(ps, location, statementTimeout);
+            int count = ps.executeUpdate();
+            unwatch();
+            progress.executed(batch, location,
+                1, Math.max(0, count), System.currentTimeMillis()-startTime);
+            if (log.isDebugEnabled()) {
+                log.debug("    "+count+" row(s) updated");
+            }
+
+        } catch(SQLException sqle) {
+            throw statementFailed(sqle, location, statementTimeout, sql.getSql());
+
+        } finally {
+            unwatch();
+            ps.close();
+            for (int i=0; i<streams.size(); i++) {
+                Object value = streams.get(i);
+                if (value instanceof Reader) {
+                    IOUtils.closeQuietly((Reader)value);
+                } else {
+                    IOUtils.closeQuietly((InputStream)value);
+                }
+            }
+            sql.dispose();
+        }
+    }
+
+    /**
+     * Binds a lob as a stream parameter, with its length as a
+     * long, as lobs may be longer than 2GB.
+     * @param ps the statement
+     * @param index the index of the parameter
+     * @param lob the lob
+     * @param value the lob's InputStream or Reader
+     * @throws SQLException on error
+     */
+    private static void setLob(
+        PreparedStatement ps, int index, SqlLob lob, Object value)
+        throws SQLException {
+        long length = lob.getLength();
+        try {
+            if (lob.isBinary()) {
+                ps.setBinaryStream(index, (InputStream)value, length);
+            } else {
+                ps.setCharacterStream(index, (Reader)value, length);
+            }
+            return;
+        } catch(AbstractMethodError ame) {
+            // a jdbc 3 driver, which only takes int lengths
+        }
+        if (length>Integer.MAX_VALUE) {
+            throw new SQLException("The jdbc driver can't stream a lob of "
+                +length+(lob.isBinary() ? " bytes" : " characters")
+                +", it only takes lobs of up to "+Integer.MAX_VALUE);
+        }
+        if (lob.isBinary()) {
+            ps.setBinaryStream(index, (InputStream)value, (int)length);
+        } else {
+            ps.setCharacterStream(index, (Reader)value, (int)length);
+        }
+    }
+
+    /**
+     * Sets the timeout of the given statement and has the
+     * watchdog keep an eye on it.
+     * @param st the statement
+     * @param location the script and line of the statement
+     * @param timeout the timeout in seconds, 0 for none
+     * @throws SQLException on error
+     */
+    private void watch(Statement st, String location, int timeout)
+        throws SQLException {
+        st.setQueryTimeout(timeout);
+        if (slowStatementWarning>0 || timeout>0) {
+            if (watchdog==null) {
+                watchdog = new StatementWatchdog(log, slowStatementWarning);
+            }
+            watchdog.watch(st, location, timeout);
+        }
+    }
+
+    /**
+     * Has the watchdog stop watching the current statement.
+     * @return true if the watchdog cancelled it
+     */
+    private boolean unwatch() {
+        return watchdog!=null && watchdog.finish();
+    }
+
+    /**
+     * Creates the exception for a failed statement, saying
+     * where it came from and whether it timed out.
+     * @param sqle the exception thrown by the driver
+     * @param location the script and line of the statement
+     * @param timeout the statement's timeout
+     * @param sqlLine the sql, null to leave it out
+     * @return the exception
+     */
+    private SQLException statementFailed(
+        SQLException sqle, String location, int timeout, String sqlLine) {
+        boolean cancelled = unwatch();
+        String message;
+        if (timeout>0 && (cancelled || sqle instanceof SQLTimeoutException)) {
+            message = "Statement at "+location+" exceeded its timeout of "
+                +timeout+" second(s) and was cancelled";
+        } else {
+            message = sqle.getMessage()+"\n\nat: "+location;
+        }
+        if (sqlLine!=null) {
+            message += "\n\nSQL:\n"+sqlLine;
+        }
+        SQLException se = new SQLException(
+            message,
+            sqle.getSQLState(),
+            sqle.getErrorCode());
+        se.setNextException(sqle);
+        return se;
+    }
+
+    /**
+     * Applies the session settings of the runner (the lock
+     * timeout) to a newly opened connection.
+     * @param con the connection
+     * @throws SQLException on error
+     */
+    public void prepareConnection(Connection con)
+        throws SQLException {
+        if (lockTimeout<=0) {
+            return;
+        }
+        SqlDialect dialect = getDialect(con);
+        String sql = dialect.getLockTimeoutStatement(lockTimeout);
+        if (sql==null) {
+            log.warn("No lock timeout setting for sql dialect: "+dialect);
+            return;
+        }
+        Statement st = con.createStatement();
+        try {
+            st.execute(sql);
+        } finally {
+            st.close();
+        }
+    }
+
+    /**
+     * Refreshes the optimizer statistics of the tables written to
+     * so far, when tracking them, spreading them over the given
+     * connections. The connections are left open.
+     * @param connections the {@link Connection}s
+     * @throws SQLException on error
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void refreshStatistics(List connections)
+        throws SQLException,
+        InterruptedException {
+        List tables = getWrittenTables();
+        if (tables.isEmpty()) {
+            return;
+        }
+        final SqlDialect dialect = getDialect((Connection)connections.get(0));
+        if (dialect.getStatisticsStatement("t")==null) {
+            log.warn("No statistics command for sql dialect: "+dialect);
+            return;
+        }
+        int threads = Math.min(connections.size(), tables.size());
+        log.info("Refreshing statistics of "+tables.size()
+            +" table(s) using "+threads+" connection(s)");
+
+        // every connection takes tables off the queue
+        double startTime = System.currentTimeMillis();
+        final LinkedList queue = new LinkedList(tables);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i=0; i<threads; i++) {
+                final Connection con = (Connection)connections.get(i);
+                executor.execute(new Runnable() {
+                    public void run() {
+                        while (true) {
+                            String table;
+                            synchronized (queue) {
+                                if (queue.isEmpty()) {
+                                    return;
+                                }
+                                table = (String)queue.removeFirst();
+                            }
+                            refreshStatistics(con, dialect, table);
+                        }
+                    } }
+                );
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        double endTime = System.currentTimeMillis();
+        double elapsed = ((endTime-startTime)/1000.0);
+        log.info(" statistics refreshed in "+elapsed+" second(s)");
+    }
+
+    /**
+     * Refreshes the optimizer statistics of a table, failures
+     * are logged rather than thrown.
+     * @param con the connection
+     * @param dialect the dialect
+     * @param table the table
+     */
+    private void refreshStatistics(
+        Connection con, SqlDialect dialect, String table) {
+        String sql = dialect.getStatisticsStatement(table);
+        if (log.isDebugEnabled()) {
+            log.debug("    executing: "+sql);
+        }
+        try {
+            Statement st = con.createStatement();
+            try {
+                st.execute(sql);
+            } finally {
+                st.close();
+            }
+        } catch(SQLException sqle) {
+            log.warn(" unable to refresh statistics of "+table
+                +": "+sqle.getMessage());
+        }
+    }
+
+    /**
+     * Defaults the script encoding to the platform's.
+     */
+    private void checkEncoding() {
+        if (scriptEncoding == null) {
+            scriptEncoding = Charset.defaultCharset().name();
+            log.warn("Using platform encoding (" + scriptEncoding + ") for executing script, i.e. build is platform dependent!");
+        } else {
+            log.info(" setting encoding for executing script: " + scriptEncoding);
+        }
+    }
+
+    /**
+     * @return the tables written to so far, empty unless
+     *      trackTables is set
+     */
+    public List getWrittenTables() {
+        return tableTracker!=null ? tableTracker.getTables() : new ArrayList();
+    }
+
+    /**
+     * @return the progress of the script being executed
+     */
+    public ScriptProgress getProgress() {
+        return progress;
+    }
+
+    /**
+     * @param trackTables whether or not to track the tables
+     *      written to, for refreshing their statistics
+     */
+    public void setTrackTables(boolean trackTables) {
+        tableTracker = trackTables ? new TableTracker() : null;
+    }
+
+    /**
+     * @return the batchSize
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize the batchSize to set
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the useBatch
+     */
+    public boolean isUseBatch() {
+        return useBatch;
+    }
+
+    /**
+     * @param useBatch the useBatch to set
+     */
+    public void setUseBatch(boolean useBatch) {
+        this.useBatch = useBatch;
+    }
+
+    /**
+     * @return the sqlDelimiter
+     */
+    public String getSqlDelimiter() {
+        return sqlDelimiter;
+    }
+
+    /**
+     * @param sqlDelimiter the sqlDelimiter to set
+     */
+    public void setSqlDelimiter(String sqlDelimiter) {
+        this.sqlDelimiter = sqlDelimiter;
+    }
+
+    /**
+     * @return the scriptEncoding, null for the platform's
+     */
+    public String getScriptEncoding() {
+        return scriptEncoding;
+    }
+
+    /**
+     * @param scriptEncoding the scriptEncoding to set
+     */
+    public void setScriptEncoding(String scriptEncoding) {
+        this.scriptEncoding = scriptEncoding;
+    }
+
+    /**
+     * @return the lobThreshold
+     */
+    public int getLobThreshold() {
+        return lobThreshold;
+    }
+
+    /**
+     * @param lobThreshold the lobThreshold to set
+     */
+    public void setLobThreshold(int lobThreshold) {
+        this.lobThreshold = lobThreshold;
+    }
+
+    /**
+     * @return the coalesceInserts
+     */
+    public boolean isCoalesceInserts() {
+        return coalesceInserts;
+    }
+
+    /**
+     * @param coalesceInserts the coalesceInserts to set
+     */
+    public void setCoalesceInserts(boolean coalesceInserts) {
+        this.coalesceInserts = coalesceInserts;
+    }
+
+    /**
+     * @return the coalesceMaxRows
+     */
+    public int getCoalesceMaxRows() {
+        return coalesceMaxRows;
+    }
+
+    /**
+     * @param coalesceMaxRows the coalesceMaxRows to set
+     */
+    public void setCoalesceMaxRows(int coalesceMaxRows) {
+        this.coalesceMaxRows = coalesceMaxRows;
+    }
+
+    /**
+     * @return the coalesceMaxLength
+     */
+    public int getCoalesceMaxLength() {
+        return coalesceMaxLength;
+    }
+
+    /**
+     * @param coalesceMaxLength the coalesceMaxLength to set
+     */
+    public void setCoalesceMaxLength(int coalesceMaxLength) {
+        this.coalesceMaxLength = coalesceMaxLength;
+    }
+
+    /**
+     * @return the sqlDialect, null to detect it
+     */
+    public SqlDialect getSqlDialect() {
+        return sqlDialect;
+    }
+
+    /**
+     * @param sqlDialect the sqlDialect to set, null to detect it
+     */
+    public void setSqlDialect(SqlDialect sqlDialect) {
+        this.sqlDialect = sqlDialect;
+    }
+
+    /**
+     * @return the decompressionThreads
+     */
+    public int getDecompressionThreads() {
+        return decompressionThreads;
+    }
+
+    /**
+     * @param decompressionThreads the decompressionThreads to set
+     */
+    public void setDecompressionThreads(int decompressionThreads) {
+        this.decompressionThreads = decompressionThreads;
+    }
+
+    /**
+     * @return the statementTimeout
+     */
+    public int getStatementTimeout() {
+        return statementTimeout;
+    }
+
+    /**
+     * @param statementTimeout the statementTimeout to set
+     */
+    public void setStatementTimeout(int statementTimeout) {
+        this.statementTimeout = statementTimeout;
+    }
+
+    /**
+     * @return the batchTimeout
+     */
+    public int getBatchTimeout() {
+        return batchTimeout;
+    }
+
+    /**
+     * @param batchTimeout the batchTimeout to set
+     */
+    public void setBatchTimeout(int batchTimeout) {
+        this.batchTimeout = batchTimeout;
+    }
+
+    /**
+     * @return the lockTimeout
+     */
+    public int getLockTimeout() {
+        return lockTimeout;
+    }
+
+    /**
+     * @param lockTimeout the lockTimeout to set
+     */
+    public void setLockTimeout(int lockTimeout) {
+        this.lockTimeout = lockTimeout;
+    }
+
+    /**
+     * @return the slowStatementWarning
+     */
+    public int getSlowStatementWarning() {
+        return slowStatementWarning;
+    }
+
+    /**
+     * @param slowStatementWarning the slowStatementWarning to set
+     */
+    public void setSlowStatementWarning(int slowStatementWarning) {
+        this.slowStatementWarning = slowStatementWarning;
+    }
+
+    /**
+     * @return the progressInterval
+     */
+    public int getProgressInterval() {
+        return progressInterval;
+    }
+
+    /**
+     * @param progressInterval the progressInterval to set
+     */
+    public void setProgressInterval(int progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+
+}
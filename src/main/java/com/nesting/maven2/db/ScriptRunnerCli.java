@@ -0,0 +1,393 @@
+package com.nesting.maven2.db;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line runner for the {@link ScriptRunner}, for applying
+ * scripts where there's no Maven:
+ * <pre>
+ * java -cp maven-db-plugin.jar:driver.jar:... \
+ *     com.nesting.maven2.db.ScriptRunnerCli \
+ *     --url jdbc:... --user app --password secret \
+ *     src/main/sql/updates scripts.jar!/sql/data extra.sql.gz
+ * </pre>
+ * Every argument that isn't an option is a directory, a script or
+ * a jar/zip file (optionally followed by !/ and the path of the
+ * scripts in it), executed in the order given, or only validated
+ * with --validate-only, which needs no database. It only needs the
+ * jdbc driver and the plugin's non Maven dependencies (commons-io,
+ * commons-lang and commons-compress) on the class path. The appcds
+ * profile of the pom lays these out in target/cli, along with an
+ * AppCDS archive to start from.
+ */
+public final class ScriptRunnerCli {
+
+    private static final int EXIT_FAILURE = 1;
+    private static final int EXIT_USAGE = 2;
+    private static final String ARCHIVE_SEPARATOR = "!/";
+
+    private static final String USAGE =
+        "usage: ScriptRunnerCli --url <jdbc url> [options] <script|dir|jar[!/path]>...\n"
+        + "  --driver <class>               jdbc driver to load\n"
+        + "  --user <name>                  database user\n"
+        + "  --password <password>          database password\n"
+        + "  --delimiter <delimiter>        statement delimiter (;)\n"
+        + "  --encoding <charset>           script encoding (platform's)\n"
+        + "  --dialect <name>               sql dialect (detected)\n"
+        + "  --batch-size <n>               statements per batch (20)\n"
+        + "  --no-batch                     don't use batches\n"
+        + "  --lob-threshold <n>            literal length streamed as a parameter (1048576)\n"
+        + "  --coalesce-inserts             rewrite single row INSERTs into multi row ones\n"
+        + "  --decompression-threads <n>    threads decompressing a script (processors)\n"
+        + "  --statement-timeout <s>        statement timeout (none)\n"
+        + "  --batch-timeout <s>            batch timeout (none)\n"
+        + "  --lock-timeout <s>             lock timeout (database's)\n"
+        + "  --slow-statement-warning <s>   warn about statements running longer (60)\n"
+        + "  --progress-interval <s>        progress report interval (10)\n"
+        + "  --refresh-statistics <n>       refresh statistics on n connections when done\n"
+        + "  --validate                     validate the scripts before executing them\n"
+        + "  --validate-only                only validate the scripts, without --url\n"
+        + "  --debug                        log every statement";
+
+    /**
+     * Not instantiated.
+     */
+    private ScriptRunnerCli() {
+    }
+
+    /**
+     * Runs the scripts given on the command line.
+     * @param args the command line
+     */
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs the scripts given on the command line.
+     * @param args the command line
+     * @param out where info messages go
+     * @param err where warnings and errors go
+     * @return the exit code
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        String url = null;
+        String driver = null;
+        String user = null;
+        String password = null;
+        int statisticsConnections = 0;
+        boolean validate = false;
+        boolean validateOnly = false;
+        boolean debug = false;
+        List paths = new ArrayList();
+        ConsoleLog log = new ConsoleLog(out, err);
+        ScriptRunner runner = new ScriptRunner(log);
+
+        // parse the command line
+        try {
+            for (int i=0; i<args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    paths.add(arg);
+                } else if (arg.equals("--no-batch")) {
+                    runner.setUseBatch(false);
+                } else if (arg.equals("--coalesce-inserts")) {
+                    runner.setCoalesceInserts(true);
+                } else if (arg.equals("--validate")) {
+                    validate = true;
+                } else if (arg.equals("--validate-only")) {
+                    validate = true;
+                    validateOnly = true;
+                } else if (arg.equals("--debug")) {
+                    debug = true;
+                } else if (i+1>=args.length) {
+                    err.println("missing value of "+arg);
+                    err.println(USAGE);
+                    return EXIT_USAGE;
+                } else {
+                    String value = args[++i];
+                    if (arg.equals("--url")) {
+                        url = value;
+                    } else if (arg.equals("--driver")) {
+                        driver = value;
+                    } else if (arg.equals("--user")) {
+                        user = value;
+                    } else if (arg.equals("--password")) {
+                        password = value;
+                    } else if (arg.equals("--delimiter")) {
+                        runner.setSqlDelimiter(value);
+                    } else if (arg.equals("--encoding")) {
+                        runner.setScriptEncoding(value);
+                    } else if (arg.equals("--dialect")) {
+                        SqlDialect dialect = SqlDialect.forName(value);
+                        if (dialect==null) {
+                            err.println("unknown sql dialect: "+value);
+                            return EXIT_USAGE;
+                        }
+                        runner.setSqlDialect(dialect);
+                    } else if (arg.equals("--batch-size")) {
+                        runner.setBatchSize(Integer.parseInt(value));
+                    } else if (arg.equals("--lob-threshold")) {
+                        runner.setLobThreshold(Integer.parseInt(value));
+                    } else if (arg.equals("--decompression-threads")) {
+                        runner.setDecompressionThreads(Integer.parseInt(value));
+                    } else if (arg.equals("--statement-timeout")) {
+                        runner.setStatementTimeout(Integer.parseInt(value));
+                    } else if (arg.equals("--batch-timeout")) {
+                        runner.setBatchTimeout(Integer.parseInt(value));
+                    } else if (arg.equals("--lock-timeout")) {
+                        runner.setLockTimeout(Integer.parseInt(value));
+                    } else if (arg.equals("--slow-statement-warning")) {
+                        runner.setSlowStatementWarning(Integer.parseInt(value));
+                    } else if (arg.equals("--progress-interval")) {
+                        runner.setProgressInterval(Integer.parseInt(value));
+                    } else if (arg.equals("--refresh-statistics")) {
+                        statisticsConnections = Integer.parseInt(value);
+                    } else {
+                        err.println("unknown option: "+arg);
+                        err.println(USAGE);
+                        return EXIT_USAGE;
+                    }
+                }
+            }
+        } catch(NumberFormatException nfe) {
+            err.println("not a number: "+nfe.getMessage());
+            return EXIT_USAGE;
+        }
+        if ((url==null && !validateOnly) || paths.isEmpty()) {
+            err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        log.setDebugEnabled(debug);
+        runner.setTrackTables(statisticsConnections>0);
+
+        List connections = new ArrayList();
+        try {
+            if (driver!=null) {
+                Class.forName(driver);
+            }
+            if (validate && !validate(runner, paths, runner.getDialect(url), log)) {
+                return EXIT_FAILURE;
+            }
+            if (validateOnly) {
+                return 0;
+            }
+
+            // execute everything on one connection
+            Connection con = DriverManager.getConnection(url, user, password);
+            connections.add(con);
+            runner.prepareConnection(con);
+            for (int i=0; i<paths.size(); i++) {
+                execute(runner, (String)paths.get(i), con);
+            }
+
+            // refresh statistics, reusing the connection
+            if (statisticsConnections>0 && !runner.getWrittenTables().isEmpty()) {
+                for (int i=1; i<statisticsConnections; i++) {
+                    Connection extra = DriverManager.getConnection(url, user, password);
+                    connections.add(extra);
+                    runner.prepareConnection(extra);
+                }
+                runner.refreshStatistics(connections);
+            }
+            return 0;
+
+        } catch(ClassNotFoundException cnfe) {
+            log.error("jdbc driver not found: "+driver);
+        } catch(SQLException sqle) {
+            log.error("Error executing database scripts", sqle);
+        } catch(IOException ioe) {
+            log.error("Error executing database scripts", ioe);
+        } catch(InterruptedException ie) {
+            log.error("Interrupted while refreshing statistics");
+        } finally {
+            runner.close();
+            for (int i=0; i<connections.size(); i++) {
+                try {
+                    ((Connection)connections.get(i)).close();
+                } catch(SQLException sqle) {
+                    log.debug("Unable to close connection", sqle);
+                }
+            }
+        }
+        return EXIT_FAILURE;
+    }
+
+    /**
+     * Executes a directory, script or jar/zip file.
+     * @param runner the runner
+     * @param path the path from the command line
+     * @param con the connection
+     * @throws SQLException on error
+     * @throws IOException on error
+     */
+    private static void execute(ScriptRunner runner, String path, Connection con)
+        throws SQLException,
+        IOException {
+        int separator = path.indexOf(ARCHIVE_SEPARATOR);
+        File file = new File(separator==-1 ? path : path.substring(0, separator));
+        if (file.isDirectory()) {
+            runner.executeScriptsInDirectory(file, con);
+        } else if (separator!=-1 || isArchive(file)) {
+            runner.executeScriptsInArchive(file, separator==-1
+                ? null : path.substring(separator+ARCHIVE_SEPARATOR.length()), con);
+        } else if (file.isFile()) {
+            runner.executeScript(
+                file.getName(), new FileInputStream(file), file.length(), con);
+        } else {
+            throw new IOException(path+" is not a file or directory");
+        }
+    }
+
+    /**
+     * Validates the scripts of the given paths.
+     * @param runner the runner
+     * @param paths the paths from the command line
+     * @param dialect the dialect of the database
+     * @param log the log
+     * @return whether or not they're valid
+     * @throws IOException on error
+     */
+    private static boolean validate(
+        ScriptRunner runner, List paths, SqlDialect dialect, ScriptLog log)
+        throws IOException {
+        List scripts = new ArrayList();
+        for (int i=0; i<paths.size(); i++) {
+            String path = (String)paths.get(i);
+            File file = new File(path);
+            File[] files = file.isDirectory()
+                ? ScriptRunner.listScriptFiles(file) : new File[] {file};
+            for (int j=0; j<files.length; j++) {
+                final File script = files[j];
+                if (path.indexOf(ARCHIVE_SEPARATOR)!=-1 || isArchive(script)) {
+                    log.warn(" not validating the scripts in "+path);
+                    continue;
+                }
+                scripts.add(new ScriptValidator.Script() {
+                    public String getName() {
+                        return script.getName();
+                    }
+                    public InputStream open()
+                        throws IOException {
+                        return new FileInputStream(script);
+                    } }
+                );
+            }
+        }
+        String encoding = runner.getScriptEncoding()!=null
+            ? runner.getScriptEncoding()
+            : Charset.defaultCharset().name();
+        List problems = new ScriptValidator(
+            runner.getSqlDelimiter(), encoding, dialect).validate(scripts);
+        for (int i=0; i<problems.size(); i++) {
+            log.error(" "+problems.get(i));
+        }
+        return problems.isEmpty();
+    }
+
+    /**
+     * @param file the file
+     * @return whether or not the file is a jar/zip file
+     */
+    private static boolean isArchive(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".jar") || name.endsWith(".zip");
+    }
+
+    /**
+     * {@link ScriptLog} that prints to the console.
+     */
+    private static class ConsoleLog
+        implements ScriptLog {
+
+        private PrintStream out;
+        private PrintStream err;
+        private boolean debugEnabled;
+
+        /**
+         * Creates the log.
+         * @param out where info messages go
+         * @param err where warnings and errors go
+         */
+        ConsoleLog(PrintStream out, PrintStream err) {
+            this.out = out;
+            this.err = err;
+        }
+
+        /**
+         * @param debugEnabled whether or not to print debug messages
+         */
+        void setDebugEnabled(boolean debugEnabled) {
+            this.debugEnabled = debugEnabled;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public boolean isDebugEnabled() {
+            return debugEnabled;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void debug(String message) {
+            if (debugEnabled) {
+                out.println("[DEBUG] "+message);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void debug(String message, Throwable cause) {
+            if (debugEnabled) {
+                out.println("[DEBUG] "+message);
+                cause.printStackTrace(out);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void info(String message) {
+            out.println("[INFO] "+message);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void warn(String message) {
+            err.println("[WARNING] "+message);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void error(String message) {
+            err.println("[ERROR] "+message);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void error(String message, Throwable cause) {
+            err.println("[ERROR] "+message+": "+cause.getMessage());
+            if (debugEnabled) {
+                cause.printStackTrace(err);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,391 @@
+package com.nesting.maven2.db;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.nesting.maven2.db.compress.Decompressor;
+import com.nesting.maven2.db.compress.Decompressors;
+
+/**
+ * Tokenizes scripts without executing them, looking for the
+ * problems that would otherwise only show up once the scripts
+ * before them have been executed: unterminated strings, quoted
+ * identifiers and comments, empty statements, text that isn't
+ * valid in the script encoding and delimiters that don't end
+ * a statement because they're not at the end of their line.
+ * Scripts are tokenized by the {@link SqlLexer} that executing
+ * them uses, and validated in parallel on a fork-join pool.
+ */
+public class ScriptValidator {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final String SEMICOLON = ";";
+
+    private String delimiter;
+    private String encoding;
+    private SqlDialect dialect;
+
+    /**
+     * A script to validate.
+     */
+    public interface Script {
+
+        /**
+         * @return the name of the script
+         */
+        String getName();
+
+        /**
+         * @return a new stream of the (possibly compressed) script
+         * @throws IOException on error
+         */
+        InputStream open()
+            throws IOException;
+
+    }
+
+    /**
+     * Creates the validator.
+     * @param delimiter the statement delimiter
+     * @param encoding the script encoding
+     * @param dialect the dialect, for the escapes of literals
+     */
+    public ScriptValidator(String delimiter, String encoding, SqlDialect dialect) {
+        this.delimiter = delimiter;
+        this.encoding = encoding;
+        this.dialect = dialect;
+    }
+
+    /**
+     * Validates the given scripts in parallel.
+     * @param scripts the {@link Script}s
+     * @return the problems found, as "name:line: problem" in
+     *      script order
+     * @throws IOException on error
+     */
+    public List validate(List scripts)
+        throws IOException {
+        List[] problems = new List[scripts.size()];
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            pool.invoke(new ValidateTask(scripts, problems, 0, scripts.size()));
+        } catch(ValidationFailure vf) {
+            throw vf.getIOException();
+        } finally {
+            pool.shutdown();
+        }
+
+        List ret = new ArrayList();
+        for (int i=0; i<problems.length; i++) {
+            ret.addAll(problems[i]);
+        }
+        return ret;
+    }
+
+    /**
+     * Validates a single script.
+     * @param script the script
+     * @return the problems found, as "name:line: problem"
+     * @throws IOException on error
+     */
+    public List validate(Script script)
+        throws IOException {
+        InputStream ips = new BufferedInputStream(script.open(), BUFFER_SIZE);
+        try {
+            Decompressor decompressor = Decompressors.detect(ips);
+            if (decompressor!=null) {
+                ips = Decompressors.open(ips, decompressor, 1);
+            }
+            return new Scan(script.getName()).run(ips);
+        } finally {
+            ips.close();
+        }
+    }
+
+    /**
+     * Splits the scripts until there's one per task.
+     */
+    private class ValidateTask
+        extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private List scripts;
+        private List[] problems;
+        private int from;
+        private int to;
+
+        /**
+         * Creates the task.
+         * @param scripts all scripts
+         * @param problems the problems per script, filled in
+         * @param from the first script of this task
+         * @param to the script after the last one of this task
+         */
+        ValidateTask(List scripts, List[] problems, int from, int to) {
+            this.scripts = scripts;
+            this.problems = problems;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        protected void compute() {
+            if (to-from>1) {
+                int middle = (from+to)>>>1;
+                invokeAll(
+                    new ValidateTask(scripts, problems, from, middle),
+                    new ValidateTask(scripts, problems, middle, to));
+            } else if (to>from) {
+                try {
+                    problems[from] = validate((Script)scripts.get(from));
+                } catch(IOException ioe) {
+                    throw new ValidationFailure(ioe);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Carries an {@link IOException} out of the fork-join pool.
+     */
+    private static class ValidationFailure
+        extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates the failure.
+         * @param cause the cause
+         */
+        ValidationFailure(IOException cause) {
+            super(cause);
+        }
+
+        /**
+         * @return the cause
+         */
+        IOException getIOException() {
+            return (IOException)getCause();
+        }
+
+    }
+
+    /**
+     * The state of validating one script.
+     */
+    private class Scan {
+
+        private String name;
+        private SqlLexer lexer = new SqlLexer(delimiter, dialect);
+        private List problems = new ArrayList();
+        private int line = 1;
+        private int stateLine;
+        private int content;
+        private int prevContent;
+        private boolean delimiterPending;
+        private boolean prevDelimiterPending;
+        private char lastNonWhitespace;
+        private boolean inLine;
+        private int terminated;
+        private int semicolonLines;
+
+        /**
+         * Creates the scan.
+         * @param name the name of the script
+         */
+        Scan(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Scans the script, decoding it here rather than with
+         * a reader so that invalid text is reported on the
+         * right line.
+         * @param ips the script
+         * @return the problems found
+         * @throws IOException on error
+         */
+        List run(InputStream ips)
+            throws IOException {
+            CharsetDecoder decoder = Charset.forName(encoding).newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+            byte[] bytes = new byte[BUFFER_SIZE];
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            CharBuffer out = CharBuffer.allocate(BUFFER_SIZE);
+            boolean eof = false;
+            boolean cr = false;
+            while (!eof) {
+                int len = ips.read(bytes, in.position(), in.remaining());
+                eof = len==-1;
+                if (!eof) {
+                    in.position(in.position()+len);
+                }
+                in.flip();
+                CoderResult result = decoder.decode(in, out, eof);
+                if (eof && !result.isError()) {
+                    result = decoder.flush(out);
+                }
+                in.compact();
+
+                // handle what was decoded
+                out.flip();
+                while (out.hasRemaining()) {
+                    char c = out.get();
+                    if (c=='\n' && cr) {
+                        cr = false;
+                        continue;
+                    }
+                    cr = c=='\r';
+                    if (c=='\r' || c=='\n') {
+                        endLine();
+                    } else {
+                        inLine = true;
+                        process(c);
+                    }
+                }
+                out.clear();
+                if (result.isError()) {
+                    problem(line, "not valid "+encoding+" text");
+                    return problems;
+                }
+            }
+
+            // end of the script
+            if (inLine) {
+                endLine();
+            }
+            checkTerminated(false);
+            if (!delimiter.equals(SEMICOLON) && terminated==0
+                && semicolonLines>1) {
+                problem(1, "no line ends with the delimiter \""+delimiter
+                    +"\", but "+semicolonLines+" lines end with \""
+                    +SEMICOLON+"\"");
+            }
+            return problems;
+        }
+
+        /**
+         * Handles a character.
+         * @param c the character
+         */
+        private void process(char c) {
+            int hadContent = content;
+            boolean hadDelimiterPending = delimiterPending;
+            int before = lexer.getState();
+            int kind = lexer.next(c) & ~SqlLexer.LITERAL_ENDED;
+            boolean opens = kind==SqlLexer.STRING_START
+                || (kind==SqlLexer.IDENTIFIER && before!=SqlLexer.IDENTIFIER)
+                || (kind==SqlLexer.DOLLAR_QUOTE && before!=SqlLexer.DOLLAR_QUOTE);
+            if (kind==SqlLexer.LINE_COMMENT || kind==SqlLexer.BLOCK_COMMENT) {
+                if (before==SqlLexer.NORMAL && c!='#') {
+
+                    // the first character wasn't content after all
+                    stateLine = line;
+                    content = prevContent;
+                    delimiterPending = prevDelimiterPending;
+                }
+            } else if (kind==SqlLexer.NORMAL || opens) {
+                if (opens) {
+                    stateLine = line;
+                }
+                if (!Character.isWhitespace(c)) {
+                    content++;
+                    delimiterPending = false;
+                }
+            }
+
+            if (lexer.getState()==SqlLexer.NORMAL && lexer.endsWithDelimiter()) {
+                delimiterPending = true;
+            }
+            if (!Character.isWhitespace(c)) {
+                lastNonWhitespace = c;
+            }
+            prevContent = hadContent;
+            prevDelimiterPending = hadDelimiterPending;
+        }
+
+        /**
+         * Handles the end of a line.
+         */
+        private void endLine() {
+            boolean delimited = lexer.endsWithDelimiter();
+            lexer.endLine();
+            if (delimited) {
+                checkTerminated(true);
+                content = 0;
+                terminated++;
+            } else if (delimiterPending) {
+                problem(line, "the delimiter isn't at the end of the line, "
+                    +"the statement continues on the next line");
+            }
+            if (lastNonWhitespace==';') {
+                semicolonLines++;
+            }
+
+            delimiterPending = false;
+            prevDelimiterPending = false;
+            lastNonWhitespace = 0;
+            inLine = false;
+            line++;
+        }
+
+        /**
+         * Checks the statement that ends here.
+         * @param delimited whether or not it ends with the delimiter
+         */
+        private void checkTerminated(boolean delimited) {
+            switch (lexer.getState()) {
+                case SqlLexer.STRING:
+                case SqlLexer.STRING_ESCAPE:
+                    problem(stateLine, "unterminated string literal");
+                    break;
+                case SqlLexer.IDENTIFIER:
+                    problem(stateLine, "unterminated quoted identifier");
+                    break;
+                case SqlLexer.BLOCK_COMMENT:
+                    problem(stateLine, "unterminated comment");
+                    break;
+                case SqlLexer.DOLLAR_QUOTE:
+                    problem(stateLine, "unterminated dollar quoted string");
+                    break;
+                default:
+
+                    // the delimiter itself isn't content
+                    if (delimited && content<=(delimiterPending
+                        ? delimiter.trim().length() : 0)) {
+                        problem(line, "empty statement");
+                    }
+                    break;
+            }
+            lexer.endStatement();
+        }
+
+        /**
+         * Records a problem.
+         * @param problemLine the line
+         * @param message the problem
+         */
+        private void problem(int problemLine, String message) {
+            problems.add(name+":"+problemLine+": "+message);
+        }
+
+    }
+
+}
@@ -0,0 +1,294 @@
+package com.nesting.maven2.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The things that differ between databases, looked up
+ * by name or by the connection's database product name.
+ */
+public final class SqlDialect {
+    
+    /**
+     * INSERT INTO t (..) VALUES (..), (..)
+     */
+    public static final int INSERT_MULTI_ROW_VALUES = 0;
+    
+    /**
+     * INSERT ALL INTO t (..) VALUES (..) INTO t (..) VALUES (..)
+     * SELECT * FROM DUAL
+     */
+    public static final int INSERT_ALL = 1;
+    
+    /**
+     * No multi row insert syntax known, inserts aren't coalesced.
+     * A generic INSERT .. SELECT .. UNION ALL SELECT .. fails on
+     * the databases that need a dummy table to select from.
+     */
+    public static final int INSERT_SINGLE_ROW = 2;
+    
+    private static final int NO_LIMIT = Integer.MAX_VALUE;
+    
+    /**
+     * String literals take backslash escapes.
+     */
+    private static final int BACKSLASH_ESCAPES = 1;
+    
+    /**
+     * # starts a comment that runs to the end of the line.
+     */
+    private static final int HASH_COMMENTS = 2;
+    
+    /**
+     * Strings may be dollar quoted: $$...$$ or $tag$...$tag$.
+     */
+    private static final int DOLLAR_QUOTES = 4;
+    
+    /**
+     * Used when the database isn't known.
+     */
+    public static final SqlDialect GENERIC = new SqlDialect(
+        "generic", null, INSERT_SINGLE_ROW, 1,
+        null,
+        null,
+        0);
+    
+    private static final SqlDialect[] DIALECTS = {
+        new SqlDialect("mysql", "mysql", 
+            INSERT_MULTI_ROW_VALUES, NO_LIMIT,
+            "SET SESSION innodb_lock_wait_timeout = {seconds}",
+            "ANALYZE TABLE {table}",
+            BACKSLASH_ESCAPES | HASH_COMMENTS),
+        new SqlDialect("mariadb", "mariadb", 
+            INSERT_MULTI_ROW_VALUES, NO_LIMIT,
+            "SET SESSION innodb_lock_wait_timeout = {seconds}",
+            "ANALYZE TABLE {table}",
+            BACKSLASH_ESCAPES | HASH_COMMENTS),
+        new SqlDialect("postgresql", "postgresql", 
+            INSERT_MULTI_ROW_VALUES, NO_LIMIT,
+            "SET lock_timeout = {millis}",
+            "ANALYZE {table}",
+            DOLLAR_QUOTES),
+        new SqlDialect("sqlserver", "microsoft sql server", 
+            INSERT_MULTI_ROW_VALUES, 1000,
+            "SET LOCK_TIMEOUT {millis}",
+            "UPDATE STATISTICS {table}",
+            0),
+        new SqlDialect("oracle", "oracle", 
+            INSERT_ALL, NO_LIMIT,
+            "ALTER SESSION SET DDL_LOCK_TIMEOUT = {seconds}",
+            "BEGIN DBMS_STATS.GATHER_TABLE_STATS({owner}, '{name}'); END;",
+            0),
+        new SqlDialect("db2", "db2", 
+            INSERT_MULTI_ROW_VALUES, NO_LIMIT,
+            "SET CURRENT LOCK TIMEOUT {seconds}",
+            "CALL SYSPROC.ADMIN_CMD('RUNSTATS ON TABLE {table}')",
+            0),
+        new SqlDialect("h2", "h2", 
+            INSERT_MULTI_ROW_VALUES, NO_LIMIT,
+            "SET LOCK_TIMEOUT {millis}",
+            "ANALYZE TABLE {table}",
+            0),
+        new SqlDialect("hsqldb", "hsql", 
+            INSERT_MULTI_ROW_VALUES, NO_LIMIT,
+            null,
+            null,
+            0),
+        new SqlDialect("derby", "derby", 
+            INSERT_MULTI_ROW_VALUES, NO_LIMIT,
+            null,
+            null,
+            0),
+        new SqlDialect("sqlite", "sqlite", 
+            INSERT_MULTI_ROW_VALUES, 500,
+            "PRAGMA busy_timeout = {millis}",
+            "ANALYZE {table}",
+            0),
+        GENERIC
+    };
+    
+    private String name;
+    private String productName;
+    private int insertSyntax;
+    private int maxInsertRows;
+    private String lockTimeout;
+    private String statistics;
+    private int syntax;
+    
+    /**
+     * Creates the dialect.
+     * @param name the dialect's name
+     * @param productName what the database product name contains
+     * @param insertSyntax the multi row insert syntax
+     * @param maxInsertRows the most rows in one insert
+     * @param lockTimeout the statement setting the session's lock
+     *      timeout, with {seconds} or {millis} for the timeout
+     * @param statistics the statement refreshing a table's statistics,
+     *      with {table} for the table, or {owner} and {name} for
+     *      its schema (or USER) and name
+     * @param syntax the lexical syntax: {@link #BACKSLASH_ESCAPES},
+     *      {@link #HASH_COMMENTS} and {@link #DOLLAR_QUOTES} or'ed
+     */
+    private SqlDialect(
+        String name, String productName, int insertSyntax, 
+        int maxInsertRows, String lockTimeout, String statistics,
+        int syntax) {
+        this.name = name;
+        this.productName = productName;
+        this.insertSyntax = insertSyntax;
+        this.maxInsertRows = maxInsertRows;
+        this.lockTimeout = lockTimeout;
+        this.statistics = statistics;
+        this.syntax = syntax;
+    }
+    
+    /**
+     * Returns the dialect with the given name.
+     * @param name the name
+     * @return the dialect or null if there's none
+     */
+    public static SqlDialect forName(String name) {
+        for (int i=0; i<DIALECTS.length; i++) {
+            if (DIALECTS[i].name.equalsIgnoreCase(name)) {
+                return DIALECTS[i];
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Returns the dialect for the database the given
+     * connection is connected to.
+     * @param con the connection
+     * @return the dialect, {@link #GENERIC} if it's not known
+     * @throws SQLException on error
+     */
+    public static SqlDialect forConnection(Connection con) 
+        throws SQLException {
+        String product = con.getMetaData().getDatabaseProductName();
+        product = product!=null ? product.toLowerCase() : "";
+        for (int i=0; i<DIALECTS.length; i++) {
+            if (DIALECTS[i].productName!=null
+                && product.indexOf(DIALECTS[i].productName)!=-1) {
+                return DIALECTS[i];
+            }
+        }
+        return GENERIC;
+    }
+    
+    /**
+     * Returns the dialect of the database the given jdbc url
+     * points to, for when there's no connection to ask (yet).
+     * @param url the jdbc url, jdbc:&lt;dialect name&gt;:...
+     * @return the dialect, {@link #GENERIC} if it's not known
+     */
+    public static SqlDialect forUrl(String url) {
+        String[] parts = url!=null ? url.split(":", 3) : new String[0];
+        SqlDialect ret = parts.length>1 && parts[0].equalsIgnoreCase("jdbc")
+            ? forName(parts[1]) : null;
+        return ret!=null ? ret : GENERIC;
+    }
+    
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * @return the multi row insert syntax
+     */
+    public int getInsertSyntax() {
+        return insertSyntax;
+    }
+    
+    /**
+     * @return whether or not a backslash escapes the next
+     *      character of a string literal
+     */
+    public boolean hasBackslashEscapes() {
+        return (syntax & BACKSLASH_ESCAPES)!=0;
+    }
+    
+    /**
+     * @return whether or not # starts a comment that runs
+     *      to the end of the line
+     */
+    public boolean hasHashComments() {
+        return (syntax & HASH_COMMENTS)!=0;
+    }
+    
+    /**
+     * @return whether or not strings may be dollar quoted
+     */
+    public boolean hasDollarQuotes() {
+        return (syntax & DOLLAR_QUOTES)!=0;
+    }
+    
+    /**
+     * @return the most rows in one insert
+     */
+    public int getMaxInsertRows() {
+        return maxInsertRows;
+    }
+    
+    /**
+     * Returns the statement that sets the session's lock timeout.
+     * @param seconds the timeout
+     * @return the statement, or null if the dialect has none
+     */
+    public String getLockTimeoutStatement(int seconds) {
+        if (lockTimeout==null) {
+            return null;
+        }
+        String ret = StringUtils.replace(
+            lockTimeout, "{seconds}", String.valueOf(seconds));
+        return StringUtils.replace(
+            ret, "{millis}", String.valueOf(seconds*1000L));
+    }
+    
+    /**
+     * Returns the statement that refreshes the optimizer
+     * statistics of the given table.
+     * @param table the table, as written in the scripts
+     * @return the statement, or null if the dialect has none
+     */
+    public String getStatisticsStatement(String table) {
+        if (statistics==null) {
+            return null;
+        }
+        
+        // unquoted names are upper case in the data dictionary
+        int dot = table.lastIndexOf('.');
+        String owner = dot==-1 ? "USER"
+            : "'"+dictionaryName(table.substring(0, dot))+"'";
+        String name = dictionaryName(table.substring(dot+1));
+        
+        String ret = StringUtils.replace(statistics, "{table}", table);
+        ret = StringUtils.replace(ret, "{owner}", owner);
+        return StringUtils.replace(ret, "{name}", name);
+    }
+    
+    /**
+     * @param identifier a possibly quoted identifier
+     * @return the identifier as stored in the data dictionary
+     */
+    private static String dictionaryName(String identifier) {
+        if (identifier.startsWith("\"") && identifier.endsWith("\"")
+            && identifier.length()>1) {
+            return identifier.substring(1, identifier.length()-1);
+        }
+        return identifier.toUpperCase();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public String toString() {
+        return name;
+    }
+    
+}
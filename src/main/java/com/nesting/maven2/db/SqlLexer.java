@@ -0,0 +1,329 @@
+package com.nesting.maven2.db;
+
+/**
+ * Tells the code of a script apart from its string literals,
+ * quoted identifiers and comments, one character at a time,
+ * and keeps track of whether the line ends with the statement
+ * delimiter. {@link SqlStatementReader} and {@link ScriptValidator}
+ * share it, so that validating a script finds the statements
+ * that executing it would.
+ * <p>
+ * Quotes in string literals are escaped by doubling them, and
+ * with a backslash as well when the dialect takes backslash
+ * escapes or the literal is a (postgresql) E'...' string.
+ * Identifiers are quoted with double quotes or backticks.
+ * Depending on the dialect, # starts a line comment (mysql)
+ * and strings may be dollar quoted (postgresql): nothing in
+ * a dollar quoted string, not even the delimiter at the end
+ * of a line, means anything until its closing tag.
+ */
+public class SqlLexer {
+
+    /**
+     * Code, outside of any literal, identifier or comment.
+     */
+    public static final int NORMAL = 0;
+
+    /**
+     * The opening quote of a string literal.
+     */
+    public static final int STRING_START = 1;
+
+    /**
+     * A string literal.
+     */
+    public static final int STRING = 2;
+
+    /**
+     * A quote that ends the string literal, unless it's doubled.
+     */
+    public static final int STRING_QUOTE = 3;
+
+    /**
+     * The second quote of a doubled quote in a string literal.
+     */
+    public static final int DOUBLED_QUOTE = 4;
+
+    /**
+     * A backslash escape of a string literal.
+     */
+    public static final int STRING_ESCAPE = 5;
+
+    /**
+     * A quoted identifier.
+     */
+    public static final int IDENTIFIER = 6;
+
+    /**
+     * A -- (or #) comment.
+     */
+    public static final int LINE_COMMENT = 7;
+
+    /**
+     * A block comment.
+     */
+    public static final int BLOCK_COMMENT = 8;
+
+    /**
+     * A dollar quoted string, from the last $ of its opening
+     * tag to the last $ of its closing one.
+     */
+    public static final int DOLLAR_QUOTE = 9;
+
+    /**
+     * Flag added to what {@link #next(char)} returns when a string
+     * literal ended with the quote before the character.
+     */
+    public static final int LITERAL_ENDED = 0x100;
+
+    private char[] delimiter;
+    private boolean backslashEscapes;
+    private boolean hashComments;
+    private boolean dollarQuotes;
+
+    private int state = NORMAL;
+    private boolean escapes;
+    private char identifierQuote;
+    private char prev;
+    private char prevCode;
+    private char prevCode2;
+    private StringBuffer openingTag;
+    private String tag;
+    private int tagMatched;
+
+    private char[] tail;
+    private int tailPos;
+    private int lineLength;
+
+    /**
+     * Creates the lexer.
+     * @param delimiter the statement delimiter
+     * @param dialect the dialect, it says whether or not string
+     *      literals take backslash escapes, # starts a comment
+     *      and strings may be dollar quoted
+     */
+    public SqlLexer(String delimiter, SqlDialect dialect) {
+        this.delimiter = delimiter.toCharArray();
+        this.backslashEscapes = dialect.hasBackslashEscapes();
+        this.hashComments = dialect.hasHashComments();
+        this.dollarQuotes = dialect.hasDollarQuotes();
+        this.tail = new char[Math.max(1, delimiter.length())];
+    }
+
+    /**
+     * Handles the next character of the line.
+     * @param c the character
+     * @return what the character is part of: {@link #NORMAL},
+     *      {@link #STRING_START}, {@link #STRING},
+     *      {@link #STRING_QUOTE}, {@link #DOUBLED_QUOTE},
+     *      {@link #STRING_ESCAPE} (the backslash and the escaped
+     *      character), {@link #IDENTIFIER} (its quotes included),
+     *      {@link #LINE_COMMENT} or {@link #BLOCK_COMMENT}, the
+     *      latter two from the second character of the comment's
+     *      start on (from the # of a # comment), or
+     *      {@link #DOLLAR_QUOTE}; plus {@link #LITERAL_ENDED} when
+     *      a string literal ended right before the character
+     */
+    public int next(char c) {
+        tail[tailPos] = c;
+        tailPos = (tailPos+1) % tail.length;
+        if (lineLength<tail.length) {
+            lineLength++;
+        }
+
+        int ended = 0;
+        switch (state) {
+            case STRING:
+                if (c=='\'') {
+                    state = STRING_QUOTE;
+                } else if (c=='\\' && escapes) {
+                    state = STRING_ESCAPE;
+                }
+                return remember(c, state);
+
+            case STRING_ESCAPE:
+                state = STRING;
+                return remember(c, STRING_ESCAPE);
+
+            case STRING_QUOTE:
+                if (c=='\'') {
+                    state = STRING;
+                    return remember(c, DOUBLED_QUOTE);
+                }
+                state = NORMAL;
+                ended = LITERAL_ENDED;
+                break;
+
+            case IDENTIFIER:
+                if (c==identifierQuote) {
+                    state = NORMAL;
+                }
+                return remember(c, IDENTIFIER);
+
+            case LINE_COMMENT:
+                return remember(c, LINE_COMMENT);
+
+            case BLOCK_COMMENT:
+                if (c=='/' && prev=='*') {
+                    state = NORMAL;
+                }
+                return remember(c, BLOCK_COMMENT);
+
+            case DOLLAR_QUOTE:
+                closeTag(c);
+                return remember(c, DOLLAR_QUOTE);
+
+            default:
+                break;
+        }
+
+        // the opening tag of a dollar quote, unless
+        // it turns out not to be one, such as $1
+        if (openingTag!=null) {
+            if (c=='$') {
+                tag = openingTag.toString();
+                tagMatched = -1;
+                openingTag = null;
+                state = DOLLAR_QUOTE;
+                return remember(c, DOLLAR_QUOTE) | ended;
+            } else if (Character.isLetter(c) || c=='_'
+                || (Character.isDigit(c) && openingTag.length()>0)) {
+                openingTag.append(c);
+            } else {
+                openingTag = null;
+            }
+        } else if (c=='$' && dollarQuotes && !isIdentifierChar(prev)) {
+            openingTag = new StringBuffer();
+        }
+
+        // code
+        if (c=='\'') {
+            escapes = backslashEscapes || (Character.toUpperCase(prevCode)=='E'
+                && !isIdentifierChar(prevCode2));
+            state = STRING;
+            prevCode2 = prevCode;
+            prevCode = c;
+            return remember(c, STRING_START) | ended;
+        } else if (c=='"' || c=='`') {
+            identifierQuote = c;
+            state = IDENTIFIER;
+            return remember(c, IDENTIFIER) | ended;
+        } else if ((c=='-' && prev=='-') || (c=='#' && hashComments)) {
+            state = LINE_COMMENT;
+            return remember(c, LINE_COMMENT) | ended;
+        } else if (c=='*' && prev=='/') {
+
+            // the * doesn't also end the comment
+            state = BLOCK_COMMENT;
+            prev = 0;
+            return BLOCK_COMMENT;
+        }
+        prevCode2 = prevCode;
+        prevCode = c;
+        return remember(c, state) | ended;
+    }
+
+    /**
+     * Handles the end of a line.
+     * @return {@link #LITERAL_ENDED} if a string literal ended
+     *      with the last quote of the line, 0 otherwise
+     */
+    public int endLine() {
+        lineLength = 0;
+        tailPos = 0;
+        openingTag = null;
+        tagMatched = -1;
+        prev = '\n';
+        prevCode2 = prevCode;
+        prevCode = '\n';
+        if (state==LINE_COMMENT) {
+            state = NORMAL;
+        } else if (state==STRING_QUOTE) {
+            state = NORMAL;
+            return LITERAL_ENDED;
+        }
+        return 0;
+    }
+
+    /**
+     * Ends the statement where it is: whatever is still open
+     * (an unterminated literal, identifier or comment) is closed.
+     */
+    public void endStatement() {
+        state = NORMAL;
+        openingTag = null;
+    }
+
+    /**
+     * @return true if the characters of the line so far end
+     *      with the delimiter, outside of a dollar quote
+     */
+    public boolean endsWithDelimiter() {
+        if (lineLength<delimiter.length || state==DOLLAR_QUOTE) {
+            return false;
+        }
+        for (int i=0; i<delimiter.length; i++) {
+            if (tail[(tailPos+i) % tail.length]!=delimiter[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the state after the last character: {@link #NORMAL},
+     *      {@link #STRING}, {@link #STRING_QUOTE},
+     *      {@link #STRING_ESCAPE}, {@link #IDENTIFIER},
+     *      {@link #LINE_COMMENT}, {@link #BLOCK_COMMENT} or
+     *      {@link #DOLLAR_QUOTE}
+     */
+    public int getState() {
+        return state;
+    }
+
+    /**
+     * @return whether or not the current string literal takes
+     *      backslash escapes
+     */
+    public boolean hasEscapes() {
+        return escapes;
+    }
+
+    /**
+     * Matches a character of a dollar quote against its
+     * closing tag, ending the quote once it's all there.
+     * @param c the character
+     */
+    private void closeTag(char c) {
+        if (c=='$' && tagMatched==tag.length()) {
+            state = NORMAL;
+        } else if (c=='$') {
+            tagMatched = 0;
+        } else if (tagMatched>=0 && tagMatched<tag.length()
+            && c==tag.charAt(tagMatched)) {
+            tagMatched++;
+        } else {
+            tagMatched = -1;
+        }
+    }
+
+    /**
+     * Remembers the previous character.
+     * @param c the character
+     * @param kind what it is part of
+     * @return the kind
+     */
+    private int remember(char c, int kind) {
+        prev = c;
+        return kind;
+    }
+
+    /**
+     * @param c the character
+     * @return whether or not it can be part of an identifier
+     */
+    static boolean isIdentifierChar(char c) {
+        return Character.isLetterOrDigit(c) || c=='_' || c=='$';
+    }
+
+}
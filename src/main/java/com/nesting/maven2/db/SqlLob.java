@@ -0,0 +1,91 @@
+package com.nesting.maven2.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+/**
+ * A large literal that was cut out of a statement and
+ * spilled to a temporary file, to be streamed to the
+ * database as a parameter rather than as SQL text. The
+ * file is deleted once the statement has been executed,
+ * see {@link SqlStatement#dispose()}.
+ */
+public class SqlLob {
+    
+    /**
+     * The charset character literals are spilled in.
+     */
+    public static final String CHARSET = "UTF-8";
+
+    private File file;
+    private boolean binary;
+    private long length;
+    
+    /**
+     * Creates the lob.
+     * @param file the file holding the value
+     * @param binary whether it's binary (hex literal) or character data
+     * @param length the length in bytes (binary) or characters
+     */
+    public SqlLob(File file, boolean binary, long length) {
+        this.file = file;
+        this.binary = binary;
+        this.length = length;
+    }
+    
+    /**
+     * @return the file holding the value
+     */
+    public File getFile() {
+        return file;
+    }
+    
+    /**
+     * @return whether it's binary or character data
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+    
+    /**
+     * @return the length in bytes (binary) or characters
+     */
+    public long getLength() {
+        return length;
+    }
+    
+    /**
+     * Opens the binary value.
+     * @return the stream
+     * @throws IOException on error
+     */
+    public InputStream openStream() 
+        throws IOException {
+        return new BufferedInputStream(new FileInputStream(file));
+    }
+    
+    /**
+     * Opens the character value.
+     * @return the reader
+     * @throws IOException on error
+     */
+    public Reader openReader() 
+        throws IOException {
+        return new BufferedReader(new InputStreamReader(
+            new FileInputStream(file), CHARSET));
+    }
+    
+    /**
+     * Deletes the file holding the value.
+     */
+    public void delete() {
+        file.delete();
+    }
+    
+}
@@ -0,0 +1,71 @@
+package com.nesting.maven2.db;
+
+import java.util.List;
+
+/**
+ * A statement read from a script by a {@link SqlStatementReader}.
+ */
+public class SqlStatement {
+
+    private String sql;
+    private List lobs;
+    private int line;
+    
+    /**
+     * Creates the statement.
+     * @param sql the sql, with a ? for every lob
+     * @param lobs the {@link SqlLob}s, in parameter order
+     * @param line the line of the script the statement starts on
+     */
+    public SqlStatement(String sql, List lobs, int line) {
+        this.sql = sql;
+        this.lobs = lobs;
+        this.line = line;
+    }
+    
+    /**
+     * @return the sql, with a ? for every lob
+     */
+    public String getSql() {
+        return sql;
+    }
+    
+    /**
+     * @return the {@link SqlLob}s, in parameter order
+     */
+    public List getLobs() {
+        return lobs;
+    }
+    
+    /**
+     * @return the line of the script the statement starts on
+     */
+    public int getLine() {
+        return line;
+    }
+    
+    /**
+     * @return whether or not the statement has lobs
+     */
+    public boolean hasLobs() {
+        return !lobs.isEmpty();
+    }
+    
+    /**
+     * Deletes the files holding the statement's lobs, once
+     * it's been executed or when it won't be.
+     */
+    public void dispose() {
+        for (int i=0; i<lobs.size(); i++) {
+            ((SqlLob)lobs.get(i)).delete();
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public String toString() {
+        return sql;
+    }
+    
+}
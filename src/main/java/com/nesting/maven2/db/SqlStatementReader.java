@@ -0,0 +1,668 @@
+package com.nesting.maven2.db;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the statements of a script one at a time. A statement
+ * ends with the first line that ends with the delimiter, even
+ * one ending inside a string literal, or with the end of the
+ * script. Only a (postgresql) dollar quoted string, such as
+ * the body of a function, keeps its lines from ending it.
+ * Literals, quoted identifiers and comments are told apart
+ * by a {@link SqlLexer}.
+ * <p>
+ * String literals ('...', N'...', E'...' and X'...') of INSERT
+ * and UPDATE statements that are longer than the lob threshold
+ * are never held in memory, they are spilled to a temporary file
+ * while being read and replaced, prefix and all, by a ? in the
+ * statement, their doubled quotes and backslash escapes decoded
+ * on the way. The statement's {@link SqlLob}s then have to be
+ * bound as parameters, and disposed of once executed, which
+ * deletes their files.
+ */
+public class SqlStatementReader
+    implements SqlStatementSource {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final int NO_ESCAPES = 0;
+    private static final int MYSQL_ESCAPES = 1;
+    private static final int POSTGRESQL_ESCAPES = 2;
+    private static final String MYSQL_ESCAPED = "0bnrtZ";
+    private static final String MYSQL_ESCAPE_VALUES = "\0\b\n\r\t\032";
+    private static final String POSTGRESQL_ESCAPED = "bfnrt";
+    private static final String POSTGRESQL_ESCAPE_VALUES = "\b\f\n\r\t";
+
+    private static final String[] LOB_STATEMENTS = {"INSERT", "UPDATE"};
+
+    /**
+     * The prefixes of literals that may be spilled: national
+     * character, escape (postgresql) and hex literals.
+     */
+    private static final String SPILLABLE_PREFIXES = "NEX";
+
+    private Reader in;
+    private String delimiter;
+    private int lobThreshold;
+    private SqlDialect dialect;
+    private SqlLexer lexer;
+    private char[] buf = new char[BUFFER_SIZE];
+    private int pos;
+    private int len;
+    private int lineNumber;
+    private int startLine;
+
+    private StringBuffer sql = new StringBuffer();
+    private List lobs = new ArrayList();
+    private Boolean lobStatement;
+    private StringBuffer literal = new StringBuffer();
+    private boolean hexLiteral;
+    private int prefixLength;
+    private boolean spillable;
+    private int escapeRules;
+    private StringBuffer escape = new StringBuffer();
+    private boolean quoteSkipped = true;
+    private File spillFile;
+    private Writer spillWriter;
+    private OutputStream spillStream;
+    private long spillLength;
+    private int spillNibble = -1;
+
+    /**
+     * Creates the reader.
+     * @param in the script
+     * @param delimiter the statement delimiter
+     * @param lobThreshold the length above which literals are
+     *      spilled to disk, 0 to never spill them
+     */
+    public SqlStatementReader(Reader in, String delimiter, int lobThreshold) {
+        this(in, delimiter, lobThreshold, SqlDialect.GENERIC);
+    }
+
+    /**
+     * Creates the reader.
+     * @param in the script
+     * @param delimiter the statement delimiter
+     * @param lobThreshold the length above which literals are
+     *      spilled to disk, 0 to never spill them
+     * @param dialect the dialect, for the escapes of literals
+     */
+    public SqlStatementReader(
+        Reader in, String delimiter, int lobThreshold, SqlDialect dialect) {
+        this.in = in;
+        this.delimiter = delimiter;
+        this.lobThreshold = lobThreshold;
+        this.dialect = dialect;
+        this.lexer = new SqlLexer(delimiter, dialect);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public SqlStatement next()
+        throws IOException {
+
+        boolean inLine = false;
+        while (true) {
+            int c = read();
+
+            // end of the script
+            if (c==-1) {
+                if (inLine && endLine()) {
+                    return take(true);
+                }
+                if (isInLiteral()) {
+                    materializeLiteral();
+                }
+                lexer.endStatement();
+                if (sql.toString().trim().length()>0) {
+                    return take(false);
+                }
+                discard();
+                return null;
+            }
+
+            // a line starts
+            if (!inLine) {
+                lineNumber++;
+                process('\n');
+                inLine = true;
+            }
+
+            // a line ends (\n, \r or \r\n)
+            if (c=='\r' || c=='\n') {
+                if (c=='\r' && peek()=='\n') {
+                    read();
+                }
+                inLine = false;
+                if (endLine()) {
+                    return take(true);
+                }
+                continue;
+            }
+
+            process((char)c);
+        }
+    }
+
+    /**
+     * Closes the underlying reader and removes any
+     * partially spilled literal.
+     * @throws IOException on error
+     */
+    public void close()
+        throws IOException {
+        discard();
+        in.close();
+    }
+
+    /**
+     * Handles the end of a line.
+     * @return true if the statement ends with this line
+     * @throws IOException on error
+     */
+    private boolean endLine()
+        throws IOException {
+        boolean delimited = lexer.endsWithDelimiter();
+
+        // a line ending with the delimiter ends the statement
+        // no matter what, even in a literal, spilled or not
+        if (isInLiteral() && !delimited) {
+            lexer.endLine();
+            return false;
+        }
+        if (isInLiteral()) {
+            materializeLiteral();
+        }
+        if ((lexer.endLine() & SqlLexer.LITERAL_ENDED)!=0) {
+            closeLiteral();
+        }
+        if (delimited) {
+            lexer.endStatement();
+        }
+        return delimited;
+    }
+
+    /**
+     * @return whether or not the line ends in a string literal
+     */
+    private boolean isInLiteral() {
+        int state = lexer.getState();
+        return state==SqlLexer.STRING || state==SqlLexer.STRING_ESCAPE;
+    }
+
+    /**
+     * Handles a single character of the script.
+     * @param c the character
+     * @throws IOException on error
+     */
+    private void process(char c)
+        throws IOException {
+
+        if (startLine==0 && !Character.isWhitespace(c)) {
+            startLine = lineNumber;
+        }
+        int kind = lexer.next(c);
+        if ((kind & SqlLexer.LITERAL_ENDED)!=0) {
+            closeLiteral();
+        }
+        switch (kind & ~SqlLexer.LITERAL_ENDED) {
+            case SqlLexer.STRING_START:
+                openLiteral();
+                break;
+
+            case SqlLexer.STRING:
+            case SqlLexer.STRING_ESCAPE:
+                literalChar(c);
+                break;
+
+            case SqlLexer.STRING_QUOTE:
+
+                // the literal ends here, unless it's doubled
+                break;
+
+            case SqlLexer.DOUBLED_QUOTE:
+                literalChar(c);
+                literalChar(c);
+                break;
+
+            default:
+                sql.append(c);
+                break;
+        }
+    }
+
+    /**
+     * Starts a string literal, looking at its prefix. Only
+     * literals without one, or with one of the single letter
+     * prefixes known to be plain strings or hex, are spilled:
+     * Q'[...]', B'...' or charset introducers such as _utf8'...'
+     * are left alone.
+     */
+    private void openLiteral() {
+        int length = sql.length();
+        char before = length>0 ? sql.charAt(length-1) : 0;
+        char prefix = Character.toUpperCase(before);
+        if (!SqlLexer.isIdentifierChar(before)) {
+            prefixLength = 0;
+            spillable = true;
+        } else {
+            prefixLength = 1;
+            spillable = (length==1 || !SqlLexer.isIdentifierChar(sql.charAt(length-2)))
+                && SPILLABLE_PREFIXES.indexOf(prefix)!=-1;
+        }
+        hexLiteral = spillable && prefix=='X';
+        if (hexLiteral || !lexer.hasEscapes()) {
+            escapeRules = NO_ESCAPES;
+        } else {
+            escapeRules = dialect.hasBackslashEscapes()
+                ? MYSQL_ESCAPES : POSTGRESQL_ESCAPES;
+        }
+        literal.setLength(0);
+    }
+
+    /**
+     * Handles a character of a string literal, as written in
+     * the script, starting to spill it once it gets too long.
+     * @param c the character
+     * @throws IOException on error
+     */
+    private void literalChar(char c)
+        throws IOException {
+        if (spillFile!=null) {
+            unescape(c);
+            return;
+        }
+        literal.append(c);
+        if (lobThreshold>0 && literal.length()>lobThreshold
+            && spillable && isLobStatement()) {
+            spillFile = File.createTempFile("dbLob-", ".tmp");
+            spillLength = 0;
+            spillNibble = -1;
+            escape.setLength(0);
+            quoteSkipped = true;
+            if (hexLiteral) {
+                spillStream = new BufferedOutputStream(
+                    new FileOutputStream(spillFile), BUFFER_SIZE);
+            } else {
+                spillWriter = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(spillFile), SqlLob.CHARSET),
+                    BUFFER_SIZE);
+            }
+            for (int i=0; i<literal.length(); i++) {
+                unescape(literal.charAt(i));
+            }
+            literal.setLength(0);
+        }
+    }
+
+    /**
+     * Decodes a character of a spilled literal, as written in
+     * the script: the second quote of a doubled quote is dropped
+     * and backslash escapes are decoded.
+     * @param c the character
+     * @throws IOException on error
+     */
+    private void unescape(char c)
+        throws IOException {
+        if (escape.length()>0) {
+            if (escape.length()==1 || continuesEscape(c)) {
+                escape.append(c);
+                if (escape.length()==maxEscapeLength()) {
+                    flushEscape();
+                }
+                return;
+            }
+            flushEscape();
+        }
+        if (c=='\\' && escapeRules!=NO_ESCAPES) {
+            escape.append(c);
+            return;
+        }
+        if (c=='\'') {
+            quoteSkipped = !quoteSkipped;
+            if (quoteSkipped) {
+                return;
+            }
+        }
+        spill(c);
+    }
+
+    /**
+     * Checks whether or not the given character is a digit of
+     * the (postgresql octal, hex or unicode) escape being read.
+     * @param c the character
+     * @return true if it is
+     */
+    private boolean continuesEscape(char c) {
+        char type = escape.charAt(1);
+        return escape.length()<maxEscapeLength()
+            && Character.digit(c, type>='0' && type<='7' ? 8 : 16)!=-1;
+    }
+
+    /**
+     * @return the most characters the escape being read can
+     *      have, the backslash included
+     */
+    private int maxEscapeLength() {
+        char type = escape.length()>1 ? escape.charAt(1) : 0;
+        if (escapeRules!=POSTGRESQL_ESCAPES) {
+            return 2;
+        } else if ((type>='0' && type<='7') || type=='x') {
+            return 4;
+        } else if (type=='u') {
+            return 6;
+        } else if (type=='U') {
+            return 10;
+        }
+        return 2;
+    }
+
+    /**
+     * Spills the decoded value of the escape that was read.
+     * @throws IOException on error
+     */
+    private void flushEscape()
+        throws IOException {
+        char type = escape.charAt(1);
+        String digits = escape.substring(2);
+        String escaped = escapeRules==MYSQL_ESCAPES
+            ? MYSQL_ESCAPED : POSTGRESQL_ESCAPED;
+        String values = escapeRules==MYSQL_ESCAPES
+            ? MYSQL_ESCAPE_VALUES : POSTGRESQL_ESCAPE_VALUES;
+        String value;
+        if (escapeRules==MYSQL_ESCAPES && (type=='%' || type=='_')) {
+
+            // only escaped in LIKE patterns, the backslash stays
+            value = escape.toString();
+        } else if (escaped.indexOf(type)!=-1) {
+            value = String.valueOf(values.charAt(escaped.indexOf(type)));
+        } else if (escapeRules==MYSQL_ESCAPES) {
+            value = String.valueOf(type);
+        } else if (type>='0' && type<='7') {
+            value = String.valueOf((char)Integer.parseInt(escape.substring(1), 8));
+        } else if ((type=='x' && digits.length()>0)
+            || (type=='u' && digits.length()==4)
+            || (type=='U' && digits.length()==8)) {
+            int codePoint = Integer.parseInt(digits, 16);
+            if (!Character.isValidCodePoint(codePoint)) {
+                throw new IOException("Invalid unicode escape: "+escape);
+            }
+            value = new String(Character.toChars(codePoint));
+        } else {
+            value = type+digits;
+        }
+        escape.setLength(0);
+        for (int i=0; i<value.length(); i++) {
+            spill(value.charAt(i));
+        }
+    }
+
+    /**
+     * Writes a character of a literal to the spill file,
+     * decoding it if it's a hex literal.
+     * @param c the character
+     * @throws IOException on error
+     */
+    private void spill(char c)
+        throws IOException {
+        if (!hexLiteral) {
+            spillWriter.write(c);
+            spillLength++;
+            return;
+        }
+        int digit = Character.digit(c, 16);
+        if (digit==-1) {
+            throw new IOException("Invalid character in hex literal: "+c);
+        } else if (spillNibble==-1) {
+            spillNibble = digit;
+        } else {
+            spillStream.write((spillNibble<<4) | digit);
+            spillNibble = -1;
+            spillLength++;
+        }
+    }
+
+    /**
+     * Ends a string literal, either putting it back into the
+     * statement or replacing it with a parameter.
+     * @throws IOException on error
+     */
+    private void closeLiteral()
+        throws IOException {
+        if (spillFile==null) {
+            appendLiteral(literal);
+            return;
+        }
+        if (escape.length()>0) {
+            flushEscape();
+        }
+        closeSpill();
+        sql.setLength(sql.length()-prefixLength);
+        sql.append('?');
+        lobs.add(new SqlLob(spillFile, hexLiteral, spillLength));
+        spillFile = null;
+    }
+
+    /**
+     * Puts an unterminated literal back into the statement.
+     * @throws IOException on error
+     */
+    private void materializeLiteral()
+        throws IOException {
+        if (spillFile==null) {
+            appendLiteral(literal);
+            sql.setLength(sql.length()-1);
+            return;
+        }
+        if (escape.length()>0) {
+            flushEscape();
+        }
+        closeSpill();
+        SqlLob lob = new SqlLob(spillFile, hexLiteral, spillLength);
+        StringBuffer value = new StringBuffer();
+        if (hexLiteral) {
+            InputStream ips = lob.openStream();
+            for (int b = ips.read(); b!=-1; b = ips.read()) {
+                value.append(Character.forDigit(b>>>4, 16));
+                value.append(Character.forDigit(b & 0xf, 16));
+            }
+            ips.close();
+        } else {
+            Reader reader = lob.openReader();
+            for (int c = reader.read(); c!=-1; c = reader.read()) {
+                if (c=='\'' || (c=='\\' && escapeRules!=NO_ESCAPES)) {
+                    value.append((char)c);
+                }
+                value.append((char)c);
+            }
+            reader.close();
+        }
+        lob.delete();
+        spillFile = null;
+        appendLiteral(value);
+        sql.setLength(sql.length()-1);
+    }
+
+    /**
+     * Appends a quoted literal to the statement.
+     * @param value the value, as written in the script
+     */
+    private void appendLiteral(StringBuffer value) {
+        sql.append('\'').append(value).append('\'');
+    }
+
+    /**
+     * Closes the spill file.
+     * @throws IOException on error
+     */
+    private void closeSpill()
+        throws IOException {
+        if (spillWriter!=null) {
+            spillWriter.close();
+            spillWriter = null;
+        }
+        if (spillStream!=null) {
+            spillStream.close();
+            spillStream = null;
+        }
+    }
+
+    /**
+     * Checks whether or not the statement being read is
+     * one whose literals may be spilled.
+     * @return true if it is
+     */
+    private boolean isLobStatement() {
+        if (lobStatement==null) {
+            String keyword = firstKeyword(sql).toUpperCase();
+            lobStatement = Boolean.FALSE;
+            for (int i=0; i<LOB_STATEMENTS.length; i++) {
+                if (LOB_STATEMENTS[i].equals(keyword)) {
+                    lobStatement = Boolean.TRUE;
+                }
+            }
+        }
+        return lobStatement.booleanValue();
+    }
+
+    /**
+     * Returns the statement read so far and resets
+     * for the next one.
+     * @param stripDelimiter whether or not to remove the delimiter
+     * @return the statement
+     */
+    private SqlStatement take(boolean stripDelimiter) {
+        if (stripDelimiter) {
+            sql.setLength(sql.length()-delimiter.length());
+        }
+        SqlStatement ret = new SqlStatement(
+            sql.toString(), lobs, startLine>0 ? startLine : lineNumber);
+        sql.setLength(0);
+        startLine = 0;
+        lobs = new ArrayList();
+        lobStatement = null;
+        return ret;
+    }
+
+    /**
+     * Removes the spill files of the statement being read.
+     * @throws IOException on error
+     */
+    private void discard()
+        throws IOException {
+        if (spillFile!=null) {
+            closeSpill();
+            spillFile.delete();
+            spillFile = null;
+        }
+        for (int i=0; i<lobs.size(); i++) {
+            ((SqlLob)lobs.get(i)).delete();
+        }
+        lobs.clear();
+    }
+
+    /**
+     * Reads a character.
+     * @return the character or -1
+     * @throws IOException on error
+     */
+    private int read()
+        throws IOException {
+        if (pos==len && !fill()) {
+            return -1;
+        }
+        return buf[pos++];
+    }
+
+    /**
+     * Peeks at the next character.
+     * @return the character or -1
+     * @throws IOException on error
+     */
+    private int peek()
+        throws IOException {
+        if (pos==len && !fill()) {
+            return -1;
+        }
+        return buf[pos];
+    }
+
+    /**
+     * Fills the buffer.
+     * @return false at the end of the script
+     * @throws IOException on error
+     */
+    private boolean fill()
+        throws IOException {
+        int read = in.read(buf, 0, buf.length);
+        while (read==0) {
+            read = in.read(buf, 0, buf.length);
+        }
+        if (read==-1) {
+            return false;
+        }
+        pos = 0;
+        len = read;
+        return true;
+    }
+
+    /**
+     * Returns the first keyword of the given sql, skipping
+     * whitespace and comments.
+     * @param text the sql
+     * @return the keyword, or an empty string
+     */
+    public static String firstKeyword(CharSequence text) {
+        int start = skipComments(text, 0);
+        int i = start;
+        while (i<text.length() && SqlLexer.isIdentifierChar(text.charAt(i))) {
+            i++;
+        }
+        return text.subSequence(start, i).toString();
+    }
+
+    /**
+     * Skips the whitespace and comments at the given offset.
+     * @param text the sql
+     * @param offset where to start
+     * @return the offset of the first token after them, the
+     *      length of the sql if there's none
+     */
+    public static int skipComments(CharSequence text, int offset) {
+        int i = offset;
+        int length = text.length();
+        while (i<length) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c=='-' && i+1<length && text.charAt(i+1)=='-') {
+                while (i<length && text.charAt(i)!='\n') {
+                    i++;
+                }
+            } else if (c=='/' && i+1<length && text.charAt(i+1)=='*') {
+                i += 2;
+                while (i+1<length
+                    && !(text.charAt(i)=='*' && text.charAt(i+1)=='/')) {
+                    i++;
+                }
+                i = Math.min(length, i+2);
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+}
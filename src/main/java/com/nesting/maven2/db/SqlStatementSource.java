@@ -0,0 +1,26 @@
+package com.nesting.maven2.db;
+
+import java.io.IOException;
+
+/**
+ * A stream of statements, either read from a script
+ * or rewritten from another stream of statements.
+ */
+public interface SqlStatementSource {
+
+    /**
+     * Returns the next statement.
+     * @return the statement, or null at the end of the stream
+     * @throws IOException on error
+     */
+    SqlStatement next()
+        throws IOException;
+    
+    /**
+     * Closes the stream.
+     * @throws IOException on error
+     */
+    void close()
+        throws IOException;
+    
+}
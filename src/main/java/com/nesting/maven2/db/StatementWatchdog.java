@@ -0,0 +1,166 @@
+package com.nesting.maven2.db;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Background thread that keeps an eye on the statement (or
+ * batch) being executed. It warns about statements that run
+ * longer than the warning threshold, and cancels the ones
+ * that run past their timeout, for drivers that don't honour
+ * {@link Statement#setQueryTimeout(int)} on their own.
+ * Each watched execution gets a number of its own, a cancel
+ * is only ever issued for the execution it was decided for,
+ * and {@link #finish()} waits for a cancel that's under way,
+ * so that it can't hit the statement's next execution.
+ */
+public class StatementWatchdog
+    implements Runnable {
+
+    private static final long CHECK_INTERVAL = 1000;
+    private static final int MILLIS = 1000;
+
+    private ScriptLog log;
+    private long warnMillis;
+    private long checkInterval;
+    private Thread thread;
+    private boolean stopped;
+
+    private Statement statement;
+    private long execution;
+    private long cancelling = -1;
+    private String location;
+    private long timeoutMillis;
+    private long startTime;
+    private boolean warned;
+    private boolean cancelled;
+
+    /**
+     * Creates the watchdog.
+     * @param log the log to warn on
+     * @param warnSeconds the warning threshold, 0 for none
+     */
+    public StatementWatchdog(ScriptLog log, int warnSeconds) {
+        this(log, warnSeconds, CHECK_INTERVAL);
+    }
+
+    /**
+     * Creates the watchdog.
+     * @param log the log to warn on
+     * @param warnSeconds the warning threshold, 0 for none
+     * @param checkInterval how often to check, in milliseconds
+     */
+    StatementWatchdog(ScriptLog log, int warnSeconds, long checkInterval) {
+        this.log = log;
+        this.warnMillis = warnSeconds*(long)MILLIS;
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * Starts watching a statement, starting the watchdog's
+     * thread if it's not running yet.
+     * @param st the statement
+     * @param where the script and line the statement came from
+     * @param timeoutSeconds the timeout, 0 for none
+     */
+    public synchronized void watch(
+        Statement st, String where, int timeoutSeconds) {
+        if (thread==null) {
+            thread = new Thread(this, "db-statement-watchdog");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        statement = st;
+        execution++;
+        location = where;
+        timeoutMillis = timeoutSeconds*(long)MILLIS;
+        startTime = System.currentTimeMillis();
+        warned = false;
+        cancelled = false;
+    }
+
+    /**
+     * Stops watching the current statement, waiting for the
+     * watchdog to be done cancelling it if it's doing so.
+     * @return true if the statement was cancelled
+     */
+    public synchronized boolean finish() {
+        boolean interrupted = false;
+        while (statement!=null && cancelling==execution) {
+            try {
+                wait();
+            } catch(InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        boolean ret = cancelled;
+        statement = null;
+        cancelled = false;
+        return ret;
+    }
+
+    /**
+     * Stops the watchdog's thread.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        notifyAll();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void run() {
+        while (true) {
+            Statement toCancel = null;
+            String where = null;
+            synchronized (this) {
+                try {
+                    wait(checkInterval);
+                } catch(InterruptedException ie) {
+                    stopped = true;
+                }
+                if (stopped) {
+                    return;
+                }
+                if (statement==null) {
+                    continue;
+                }
+
+                long elapsed = System.currentTimeMillis()-startTime;
+                if (!warned && warnMillis>0 && elapsed>=warnMillis) {
+                    log.warn(" statement at "+location+" has been running for "
+                        +(elapsed/MILLIS)+" second(s)");
+                    warned = true;
+                }
+                if (!cancelled && timeoutMillis>0 && elapsed>=timeoutMillis) {
+                    log.error(" statement at "+location+" exceeded its timeout of "
+                        +(timeoutMillis/MILLIS)+" second(s), cancelling it");
+                    cancelled = true;
+                    cancelling = execution;
+                    toCancel = statement;
+                    where = location;
+                }
+            }
+
+            // cancel outside of the lock, it may block, finish()
+            // keeps the statement from being reused meanwhile
+            if (toCancel!=null) {
+                try {
+                    toCancel.cancel();
+                } catch(SQLException sqle) {
+                    log.error(" unable to cancel statement at "+where, sqle);
+                } finally {
+                    synchronized (this) {
+                        cancelling = -1;
+                        notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.nesting.maven2.db;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps track of the tables written to by INSERT, UPDATE,
+ * DELETE, MERGE and REPLACE statements.
+ */
+public class TableTracker {
+    
+    private static final String[] MODIFIERS = {
+        "LOW_PRIORITY", "HIGH_PRIORITY", "DELAYED", "QUICK", 
+        "IGNORE", "ALL", "FIRST", "ONLY"
+    };
+    
+    private Set tables = new LinkedHashSet();
+    
+    /**
+     * Records the table the given statement writes to, if any.
+     * @param sql the statement
+     */
+    public synchronized void track(String sql) {
+        String verb = SqlStatementReader.firstKeyword(sql).toUpperCase();
+        if (!verb.equals("INSERT") && !verb.equals("UPDATE")
+            && !verb.equals("DELETE") && !verb.equals("MERGE")
+            && !verb.equals("REPLACE")) {
+            return;
+        }
+        
+        // the words after the verb, skipping modifiers and INTO/FROM
+        int[] pos = {SqlStatementReader.skipComments(sql, 0)+verb.length()};
+        String word = nextWord(sql, pos);
+        while (isModifier(word)) {
+            word = nextWord(sql, pos);
+        }
+        if (word.equalsIgnoreCase("INTO") || word.equalsIgnoreCase("FROM")) {
+            word = nextWord(sql, pos);
+        }
+        if (word.length()>0) {
+            tables.add(word);
+        }
+    }
+    
+    /**
+     * @return the tables written to, in the order they were first seen
+     */
+    public synchronized List getTables() {
+        return new ArrayList(tables);
+    }
+    
+    /**
+     * @param word a word
+     * @return whether it's a modifier that may follow the verb
+     */
+    private static boolean isModifier(String word) {
+        for (int i=0; i<MODIFIERS.length; i++) {
+            if (MODIFIERS[i].equalsIgnoreCase(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Reads the next (possibly qualified and quoted) name,
+     * skipping whitespace and comments.
+     * @param sql the statement
+     * @param pos the position, updated
+     * @return the name, or an empty string
+     */
+    private static String nextWord(String sql, int[] pos) {
+        int i = pos[0];
+        while (i<sql.length()) {
+            if (Character.isWhitespace(sql.charAt(i))) {
+                i++;
+            } else if (sql.startsWith("--", i)) {
+                int end = sql.indexOf('\n', i);
+                i = end==-1 ? sql.length() : end;
+            } else if (sql.startsWith("/*", i)) {
+                int end = sql.indexOf("*/", i+2);
+                i = end==-1 ? sql.length() : end+2;
+            } else {
+                break;
+            }
+        }
+        int start = i;
+        while (i<sql.length()) {
+            char c = sql.charAt(i);
+            if (c=='"' || c=='`' || c=='[') {
+                int end = sql.indexOf(c=='[' ? ']' : c, i+1);
+                i = end==-1 ? sql.length() : end+1;
+            } else if (Character.isLetterOrDigit(c) 
+                || c=='_' || c=='$' || c=='.') {
+                i++;
+            } else {
+                break;
+            }
+        }
+        pos[0] = i;
+        return sql.substring(start, i);
+    }
+    
+}
@@ -0,0 +1,153 @@
+package com.nesting.maven2.db.compress;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Base class for {@link BlockSplitter}s of formats whose
+ * block boundaries can be found by parsing their headers.
+ * Every byte read through this class is appended to the
+ * current block.
+ */
+public abstract class AbstractBlockSplitter
+    implements BlockSplitter {
+    
+    private InputStream in;
+    private int maxBlockSize;
+    private ByteArrayOutputStream block = new ByteArrayOutputStream();
+    private byte[] skipBuffer = new byte[8192];
+    
+    /**
+     * Creates the splitter.
+     * @param in the compressed stream
+     * @param maxBlockSize the maximum size of a block
+     */
+    protected AbstractBlockSplitter(InputStream in, int maxBlockSize) {
+        this.in = in;
+        this.maxBlockSize = maxBlockSize;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public byte[] nextBlock() 
+        throws UnsplittableBlockException,
+        IOException {
+        block.reset();
+        if (!readBlock()) {
+            return null;
+        }
+        return block.toByteArray();
+    }
+    
+    /**
+     * Reads the next block.
+     * @return false if the stream ended before the block started
+     * @throws IOException on error
+     */
+    protected abstract boolean readBlock() 
+        throws IOException;
+    
+    /**
+     * Discards whatever has been read for the current block,
+     * used to drop blocks that have no content.
+     */
+    protected void discardBlock() {
+        block.reset();
+    }
+    
+    /**
+     * Reads exactly len bytes into the given buffer.
+     * @param buf the buffer
+     * @param len the number of bytes to read
+     * @param eofAllowed whether or not the stream may end
+     *      before the first byte
+     * @return false if the stream ended before the first byte
+     * @throws IOException on error
+     */
+    protected boolean readFully(byte[] buf, int len, boolean eofAllowed) 
+        throws IOException {
+        int off = 0;
+        while (off<len) {
+            int read = in.read(buf, off, len-off);
+            if (read==-1) {
+                if (off==0 && eofAllowed) {
+                    return false;
+                }
+                throw new EOFException("Unexpected end of compressed stream");
+            }
+            off += read;
+        }
+        append(buf, len);
+        return true;
+    }
+    
+    /**
+     * Reads a single byte.
+     * @return the byte
+     * @throws IOException on error
+     */
+    protected int readByte() 
+        throws IOException {
+        byte[] buf = new byte[1];
+        readFully(buf, 1, false);
+        return buf[0] & 0xff;
+    }
+    
+    /**
+     * Reads the given number of bytes into the block
+     * without looking at them.
+     * @param count the number of bytes
+     * @throws IOException on error
+     */
+    protected void skip(long count) 
+        throws IOException {
+        while (count>0) {
+            int len = (int)Math.min(count, skipBuffer.length);
+            readFully(skipBuffer, len, false);
+            count -= len;
+        }
+    }
+    
+    /**
+     * Creates an {@link UnsplittableBlockException} carrying the
+     * bytes read so far for the current block.
+     * @param message the message
+     * @return the exception
+     */
+    protected UnsplittableBlockException unsplittable(String message) {
+        return new UnsplittableBlockException(message, block.toByteArray());
+    }
+    
+    /**
+     * Returns a little endian unsigned integer.
+     * @param buf the buffer
+     * @param off the offset of the integer
+     * @param len the size of the integer in bytes
+     * @return the integer
+     */
+    protected static long littleEndian(byte[] buf, int off, int len) {
+        long ret = 0;
+        for (int i=len-1; i>=0; i--) {
+            ret = (ret<<8) | (buf[off+i] & 0xff);
+        }
+        return ret;
+    }
+    
+    /**
+     * Appends to the current block.
+     * @param buf the bytes
+     * @param len the number of bytes
+     * @throws UnsplittableBlockException if the block gets too big
+     */
+    private void append(byte[] buf, int len) 
+        throws UnsplittableBlockException {
+        block.write(buf, 0, len);
+        if (block.size()>maxBlockSize) {
+            throw unsplittable("Block exceeds "+maxBlockSize+" bytes");
+        }
+    }
+    
+}
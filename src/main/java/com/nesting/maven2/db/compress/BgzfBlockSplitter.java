@@ -0,0 +1,65 @@
+package com.nesting.maven2.db.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Splits a BGZF stream (gzip members carrying their own
+ * size in a "BC" extra field, as written by bgzip) into
+ * its members.
+ */
+public class BgzfBlockSplitter
+    extends AbstractBlockSplitter {
+    
+    private static final int HEADER_SIZE = 12;
+    private static final int FLAG_EXTRA = 4;
+    
+    /**
+     * Creates the splitter.
+     * @param in the compressed stream
+     * @param maxBlockSize the maximum size of a block
+     */
+    public BgzfBlockSplitter(InputStream in, int maxBlockSize) {
+        super(in, maxBlockSize);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean readBlock() 
+        throws IOException {
+        
+        // fixed header
+        byte[] header = new byte[HEADER_SIZE];
+        if (!readFully(header, HEADER_SIZE, true)) {
+            return false;
+        }
+        if ((header[0] & 0xff)!=0x1f || (header[1] & 0xff)!=0x8b
+            || header[2]!=8 || (header[3] & FLAG_EXTRA)==0) {
+            throw unsplittable("Not a BGZF block");
+        }
+        
+        // look for the BC sub field in the extra field
+        int xlen = (int)littleEndian(header, 10, 2);
+        byte[] extra = new byte[xlen];
+        readFully(extra, xlen, false);
+        int blockSize = -1;
+        for (int i=0; i+4<=xlen;) {
+            int subLength = (int)littleEndian(extra, i+2, 2);
+            if (extra[i]=='B' && extra[i+1]=='C' 
+                && subLength==2 && i+6<=xlen) {
+                blockSize = (int)littleEndian(extra, i+4, 2)+1;
+                break;
+            }
+            i += 4+subLength;
+        }
+        if (blockSize<0) {
+            throw unsplittable("Not a BGZF block");
+        }
+        
+        // the rest of the member
+        skip(blockSize-HEADER_SIZE-xlen);
+        return true;
+    }
+    
+}
@@ -0,0 +1,154 @@
+package com.nesting.maven2.db.compress;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses into BGZF members (gzip members carrying their own
+ * size in a "BC" extra field), as bgzip does, so that what it
+ * writes is read back by {@link BgzfBlockSplitter} in parallel.
+ * Closing the stream writes what's left as a last member, but
+ * not the empty {@link #EOF} member that ends a BGZF file: the
+ * members of several streams can then be concatenated.
+ */
+public class BgzfOutputStream
+    extends FilterOutputStream {
+
+    /**
+     * The empty member that bgzip ends its files with.
+     */
+    public static final byte[] EOF = {
+        0x1f, (byte)0x8b, 8, 4, 0, 0, 0, 0, 0, (byte)0xff, 6, 0, 'B', 'C', 2, 0,
+        0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+    /**
+     * The most data in a member, the same as bgzip's, so
+     * that it still fits a member if it can't be compressed.
+     */
+    private static final int MAX_DATA = 0xff00;
+
+    private static final int MAX_MEMBER = 0x10000;
+    private static final int HEADER_SIZE = 18;
+    private static final int TRAILER_SIZE = 8;
+
+    private Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private CRC32 crc = new CRC32();
+    private byte[] data = new byte[MAX_DATA];
+    private byte[] member = new byte[MAX_MEMBER];
+    private int length;
+
+    /**
+     * Creates the stream.
+     * @param out where the members go
+     */
+    public BgzfOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write(int b)
+        throws IOException {
+        data[length++] = (byte)b;
+        if (length==MAX_DATA) {
+            writeMember();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write(byte[] b, int off, int len)
+        throws IOException {
+        while (len>0) {
+            int chunk = Math.min(len, MAX_DATA-length);
+            System.arraycopy(b, off, data, length, chunk);
+            length += chunk;
+            off += chunk;
+            len -= chunk;
+            if (length==MAX_DATA) {
+                writeMember();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close()
+        throws IOException {
+        try {
+            if (length>0) {
+                writeMember();
+            }
+        } finally {
+            deflater.end();
+            super.close();
+        }
+    }
+
+    /**
+     * Compresses the data so far into a member, stored as is
+     * if compressing it doesn't make it fit.
+     * @throws IOException on error
+     */
+    private void writeMember()
+        throws IOException {
+        int size = deflate(Deflater.DEFAULT_COMPRESSION);
+        if (size<0) {
+            size = deflate(Deflater.NO_COMPRESSION);
+        }
+        crc.reset();
+        crc.update(data, 0, length);
+
+        // header, with the size of the member less one in BC
+        int total = HEADER_SIZE+size+TRAILER_SIZE;
+        byte[] header = {
+            0x1f, (byte)0x8b, 8, 4, 0, 0, 0, 0, 0, (byte)0xff, 6, 0, 'B', 'C', 2, 0,
+            (byte)(total-1), (byte)((total-1)>>>8)};
+        out.write(header);
+        out.write(member, 0, size);
+
+        // trailer
+        byte[] trailer = new byte[TRAILER_SIZE];
+        littleEndian(trailer, 0, crc.getValue());
+        littleEndian(trailer, 4, length);
+        out.write(trailer);
+        length = 0;
+    }
+
+    /**
+     * Deflates the data so far.
+     * @param level the compression level
+     * @return the size of the deflated data, -1 if it doesn't fit
+     */
+    private int deflate(int level) {
+        int room = MAX_MEMBER-HEADER_SIZE-TRAILER_SIZE;
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        int size = 0;
+        while (!deflater.finished() && size<room) {
+            size += deflater.deflate(member, size, room-size);
+        }
+        return deflater.finished() ? size : -1;
+    }
+
+    /**
+     * Writes a 4 byte little endian integer.
+     * @param b where to write it
+     * @param off where it starts
+     * @param value the value
+     */
+    private static void littleEndian(byte[] b, int off, long value) {
+        for (int i=0; i<4; i++) {
+            b[off+i] = (byte)(value>>>(8*i));
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.nesting.maven2.db.compress;
+
+import java.io.IOException;
+
+/**
+ * Cuts a compressed stream into blocks that can be
+ * decompressed independently of each other, in order
+ * to decompress them in parallel.
+ */
+public interface BlockSplitter {
+
+    /**
+     * Returns the next compressed block.
+     * @return the block, or null when the stream is exhausted
+     * @throws UnsplittableBlockException when the rest of the
+     *      stream can't be split (ie: the block is too big or
+     *      doesn't carry the required framing)
+     * @throws IOException on error
+     */
+    byte[] nextBlock()
+        throws UnsplittableBlockException,
+        IOException;
+    
+}
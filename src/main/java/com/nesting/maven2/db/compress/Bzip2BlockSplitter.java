@@ -0,0 +1,128 @@
+package com.nesting.maven2.db.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Splits a stream of concatenated bzip2 streams (as written
+ * by pbzip2) into those streams by scanning for the stream
+ * header followed by the first block's magic number.
+ */
+public class Bzip2BlockSplitter
+    implements BlockSplitter {
+    
+    private static final int SIGNATURE_LENGTH = 10;
+    private static final int[] BLOCK_MAGIC = {0x31, 0x41, 0x59, 0x26, 0x53, 0x59};
+    
+    private InputStream in;
+    private int maxBlockSize;
+    private byte[] buf = new byte[65536];
+    private int len;
+    private boolean eof;
+    private boolean started;
+    
+    /**
+     * Creates the splitter.
+     * @param in the compressed stream
+     * @param maxBlockSize the maximum size of a block
+     */
+    public Bzip2BlockSplitter(InputStream in, int maxBlockSize) {
+        this.in = in;
+        this.maxBlockSize = maxBlockSize;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public byte[] nextBlock() 
+        throws UnsplittableBlockException,
+        IOException {
+        
+        // the stream has to start with a signature
+        if (!started) {
+            while (!eof && len<SIGNATURE_LENGTH) {
+                fill();
+            }
+            if (len==0) {
+                return null;
+            } else if (len<SIGNATURE_LENGTH || !isSignature(0)) {
+                throw new UnsplittableBlockException(
+                    "Not a splittable bzip2 stream", take(len));
+            }
+            started = true;
+        }
+        if (len==0 && eof) {
+            return null;
+        }
+        
+        // look for the next signature
+        int search = 1;
+        while (true) {
+            for (int i=search; i+SIGNATURE_LENGTH<=len; i++) {
+                if (buf[i]=='B' && isSignature(i)) {
+                    return take(i);
+                }
+            }
+            if (eof) {
+                return take(len);
+            } else if (len>=maxBlockSize) {
+                throw new UnsplittableBlockException(
+                    "Block exceeds "+maxBlockSize+" bytes", take(len));
+            }
+            search = Math.max(1, len-SIGNATURE_LENGTH+1);
+            fill();
+        }
+    }
+    
+    /**
+     * Reads more data into the buffer, growing it if it's full.
+     * @throws IOException on error
+     */
+    private void fill() 
+        throws IOException {
+        if (len==buf.length) {
+            byte[] grown = new byte[buf.length*2];
+            System.arraycopy(buf, 0, grown, 0, len);
+            buf = grown;
+        }
+        int read = in.read(buf, len, buf.length-len);
+        if (read==-1) {
+            eof = true;
+        } else {
+            len += read;
+        }
+    }
+    
+    /**
+     * Removes the given number of bytes from the front of
+     * the buffer and returns them.
+     * @param count the number of bytes
+     * @return the bytes
+     */
+    private byte[] take(int count) {
+        byte[] ret = new byte[count];
+        System.arraycopy(buf, 0, ret, 0, count);
+        System.arraycopy(buf, count, buf, 0, len-count);
+        len -= count;
+        return ret;
+    }
+    
+    /**
+     * Checks for a stream signature at the given offset.
+     * @param off the offset
+     * @return true if there's one
+     */
+    private boolean isSignature(int off) {
+        if (buf[off]!='B' || buf[off+1]!='Z' || buf[off+2]!='h'
+            || buf[off+3]<'1' || buf[off+3]>'9') {
+            return false;
+        }
+        for (int i=0; i<BLOCK_MAGIC.length; i++) {
+            if ((buf[off+4+i] & 0xff)!=BLOCK_MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+}
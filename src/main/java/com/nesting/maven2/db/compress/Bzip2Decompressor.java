@@ -0,0 +1,45 @@
+package com.nesting.maven2.db.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+/**
+ * bzip2, pbzip2 files are decompressed in parallel.
+ */
+public class Bzip2Decompressor
+    implements Decompressor {
+    
+    /**
+     * {@inheritDoc}
+     */
+    public String getName() {
+        return "bzip2";
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public boolean matches(byte[] header, int length) {
+        return length>=4 
+            && header[0]=='B' && header[1]=='Z' && header[2]=='h'
+            && header[3]>='1' && header[3]<='9';
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public InputStream decompress(InputStream in) 
+        throws IOException {
+        return new BZip2CompressorInputStream(in, true);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public BlockSplitter createSplitter(InputStream in) {
+        return new Bzip2BlockSplitter(in, Decompressors.MAX_BLOCK_SIZE);
+    }
+    
+}
@@ -0,0 +1,46 @@
+package com.nesting.maven2.db.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A compression format that scripts can be stored in.
+ * Formats are detected by the magic bytes at the start
+ * of a stream rather than by file name.
+ */
+public interface Decompressor {
+
+    /**
+     * @return the name of the format
+     */
+    String getName();
+    
+    /**
+     * Checks whether or not the given leading bytes of
+     * a stream are this format's magic bytes.
+     * @param header the leading bytes
+     * @param length the number of valid bytes in the header
+     * @return true if the stream is in this format
+     */
+    boolean matches(byte[] header, int length);
+    
+    /**
+     * Returns a stream that sequentially decompresses the given
+     * stream, including any concatenated members/frames/streams.
+     * @param in the compressed stream
+     * @return the decompressed stream
+     * @throws IOException on error
+     */
+    InputStream decompress(InputStream in)
+        throws IOException;
+    
+    /**
+     * Returns a {@link BlockSplitter} that cuts the given stream
+     * into independently decompressable blocks, or null if the
+     * format can't be decompressed in parallel.
+     * @param in the compressed stream
+     * @return the splitter or null
+     */
+    BlockSplitter createSplitter(InputStream in);
+    
+}
@@ -0,0 +1,101 @@
+package com.nesting.maven2.db.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registry of the known {@link Decompressor}s.
+ */
+public final class Decompressors {
+    
+    /**
+     * The number of leading bytes looked at to detect the format.
+     */
+    public static final int HEADER_SIZE = 16;
+    
+    /**
+     * The biggest compressed block that is decompressed in
+     * parallel, anything bigger is decompressed sequentially.
+     */
+    public static final int MAX_BLOCK_SIZE = 8*1024*1024;
+    
+    private static final List DECOMPRESSORS = new ArrayList();
+    static {
+        register(new GzipDecompressor());
+        register(new Bzip2Decompressor());
+        register(new XzDecompressor());
+        register(new Lz4Decompressor());
+        register(new ZstdDecompressor());
+    }
+    
+    /**
+     * Not instantiable.
+     */
+    private Decompressors() {
+    }
+    
+    /**
+     * Registers a {@link Decompressor}, it takes precedence
+     * over the ones registered before it.
+     * @param decompressor the decompressor
+     */
+    public static synchronized void register(Decompressor decompressor) {
+        DECOMPRESSORS.add(0, decompressor);
+    }
+    
+    /**
+     * Detects the compression format of the given stream by
+     * its magic bytes. The stream must support mark/reset and
+     * is reset to where it was.
+     * @param in the stream
+     * @return the decompressor or null if the stream isn't compressed
+     * @throws IOException on error
+     */
+    public static synchronized Decompressor detect(InputStream in) 
+        throws IOException {
+        
+        // peek at the header
+        byte[] header = new byte[HEADER_SIZE];
+        int length = 0;
+        in.mark(HEADER_SIZE);
+        while (length<HEADER_SIZE) {
+            int read = in.read(header, length, HEADER_SIZE-length);
+            if (read==-1) {
+                break;
+            }
+            length += read;
+        }
+        in.reset();
+        
+        for (int i=0; i<DECOMPRESSORS.size(); i++) {
+            Decompressor decompressor = (Decompressor)DECOMPRESSORS.get(i);
+            if (decompressor.matches(header, length)) {
+                return decompressor;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Opens a decompressing stream.
+     * @param in the compressed stream
+     * @param decompressor the decompressor for the stream's format
+     * @param threads the number of threads to decompress with
+     * @return the decompressed stream
+     * @throws IOException on error
+     */
+    public static InputStream open(
+        InputStream in, Decompressor decompressor, int threads) 
+        throws IOException {
+        BlockSplitter splitter = threads>1 
+            ? decompressor.createSplitter(in) : null;
+        if (splitter==null) {
+            return decompressor.decompress(in);
+        }
+        return new ParallelBlockInputStream(
+            decompressor, splitter, in, threads);
+    }
+    
+}
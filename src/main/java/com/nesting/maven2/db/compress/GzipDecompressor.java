@@ -0,0 +1,46 @@
+package com.nesting.maven2.db.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * gzip, BGZF files are decompressed in parallel.
+ */
+public class GzipDecompressor
+    implements Decompressor {
+    
+    private static final int BUFFER_SIZE = 65536;
+    
+    /**
+     * {@inheritDoc}
+     */
+    public String getName() {
+        return "gzip";
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public boolean matches(byte[] header, int length) {
+        return length>=2 
+            && (header[0] & 0xff)==0x1f 
+            && (header[1] & 0xff)==0x8b;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public InputStream decompress(InputStream in) 
+        throws IOException {
+        return new GZIPInputStream(in, BUFFER_SIZE);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public BlockSplitter createSplitter(InputStream in) {
+        return new BgzfBlockSplitter(in, Decompressors.MAX_BLOCK_SIZE);
+    }
+    
+}
@@ -0,0 +1,45 @@
+package com.nesting.maven2.db.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+
+/**
+ * lz4 frame format, always decompressed sequentially.
+ */
+public class Lz4Decompressor
+    implements Decompressor {
+    
+    /**
+     * {@inheritDoc}
+     */
+    public String getName() {
+        return "lz4";
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public boolean matches(byte[] header, int length) {
+        return length>=4 
+            && (header[0] & 0xff)==0x04 && (header[1] & 0xff)==0x22
+            && (header[2] & 0xff)==0x4d && (header[3] & 0xff)==0x18;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public InputStream decompress(InputStream in) 
+        throws IOException {
+        return new FramedLZ4CompressorInputStream(in, true);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public BlockSplitter createSplitter(InputStream in) {
+        return null;
+    }
+    
+}
@@ -0,0 +1,179 @@
+package com.nesting.maven2.db.compress;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * {@link InputStream} that decompresses the blocks produced
+ * by a {@link BlockSplitter} on a number of threads, while
+ * still returning the decompressed data in order. Only a
+ * few blocks per thread are read ahead. If the splitter gives
+ * up on the stream the remainder is decompressed sequentially.
+ * <p>
+ * The threads are daemon threads that also stop once they've
+ * been idle for a while, so a stream that is never closed
+ * (ie: when its reader fails) doesn't keep them around.
+ */
+public class ParallelBlockInputStream
+    extends InputStream {
+    
+    private static final int BLOCKS_PER_THREAD = 2;
+    private static final long IDLE_SECONDS = 10;
+    
+    private Decompressor decompressor;
+    private BlockSplitter splitter;
+    private InputStream raw;
+    private ExecutorService executor;
+    private int maxPending;
+    private LinkedList pending = new LinkedList();
+    private InputStream tail;
+    private boolean eof;
+    private byte[] buffer = new byte[0];
+    private int pos;
+    
+    /**
+     * Creates the stream.
+     * @param decompressor the decompressor for single blocks
+     * @param splitter the splitter reading from the raw stream
+     * @param raw the raw compressed stream
+     * @param threads the number of threads
+     */
+    public ParallelBlockInputStream(
+        Decompressor decompressor, BlockSplitter splitter, 
+        InputStream raw, int threads) {
+        this.decompressor = decompressor;
+        this.splitter = splitter;
+        this.raw = raw;
+        this.maxPending = threads*BLOCKS_PER_THREAD;
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+            threads, threads, IDLE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue(),
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "db-decompressor");
+                    t.setDaemon(true);
+                    return t;
+                } }
+        );
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public int read() 
+        throws IOException {
+        byte[] b = new byte[1];
+        int read = read(b, 0, 1);
+        return read==-1 ? -1 : b[0] & 0xff;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public int read(byte[] b, int off, int len) 
+        throws IOException {
+        if (len==0) {
+            return 0;
+        }
+        while (true) {
+            if (pos<buffer.length) {
+                int count = Math.min(len, buffer.length-pos);
+                System.arraycopy(buffer, pos, b, off, count);
+                pos += count;
+                return count;
+            }
+            submitBlocks();
+            if (!pending.isEmpty()) {
+                buffer = takeBlock((Future)pending.removeFirst());
+                pos = 0;
+            } else if (tail!=null) {
+                return tail.read(b, off, len);
+            } else {
+                return -1;
+            }
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public void close() 
+        throws IOException {
+        executor.shutdownNow();
+        pending.clear();
+        if (tail!=null) {
+            tail.close();
+        }
+        raw.close();
+    }
+    
+    /**
+     * Reads blocks from the splitter and hands them to the
+     * executor until enough are pending.
+     * @throws IOException on error
+     */
+    private void submitBlocks() 
+        throws IOException {
+        while (!eof && tail==null && pending.size()<maxPending) {
+            try {
+                final byte[] block = splitter.nextBlock();
+                if (block==null) {
+                    eof = true;
+                } else {
+                    pending.add(executor.submit(new Callable() {
+                        public Object call() 
+                            throws Exception {
+                            return IOUtils.toByteArray(
+                                decompressor.decompress(
+                                    new ByteArrayInputStream(block)));
+                        } }
+                    ));
+                }
+            } catch(UnsplittableBlockException ube) {
+                tail = decompressor.decompress(new SequenceInputStream(
+                    new ByteArrayInputStream(ube.getConsumed()), raw));
+            }
+        }
+    }
+    
+    /**
+     * Waits for a block to be decompressed.
+     * @param future the block's future
+     * @return the decompressed block
+     * @throws IOException on error
+     */
+    private byte[] takeBlock(Future future) 
+        throws IOException {
+        try {
+            return (byte[])future.get();
+        } catch(InterruptedException ie) {
+            throw new InterruptedIOException(
+                "Interrupted while decompressing");
+        } catch(ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException)ee.getCause();
+            }
+            IOException ioe = new IOException(
+                "Error decompressing block: "+ee.getCause());
+            ioe.initCause(ee.getCause());
+            throw ioe;
+        }
+    }
+    
+}
@@ -0,0 +1,35 @@
+package com.nesting.maven2.db.compress;
+
+import java.io.IOException;
+
+/**
+ * Thrown by a {@link BlockSplitter} when the remainder of a
+ * stream can't be split into blocks. It carries the bytes the
+ * splitter already consumed so that the rest of the stream
+ * can still be decompressed sequentially.
+ */
+public class UnsplittableBlockException 
+    extends IOException {
+    
+    private static final long serialVersionUID = 1L;
+
+    private byte[] consumed;
+    
+    /**
+     * Creates the exception.
+     * @param message the message
+     * @param consumed the bytes consumed from the stream
+     */
+    public UnsplittableBlockException(String message, byte[] consumed) {
+        super(message);
+        this.consumed = consumed;
+    }
+    
+    /**
+     * @return the bytes consumed from the stream
+     */
+    public byte[] getConsumed() {
+        return consumed;
+    }
+    
+}
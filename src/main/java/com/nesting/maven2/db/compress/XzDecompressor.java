@@ -0,0 +1,53 @@
+package com.nesting.maven2.db.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+
+/**
+ * xz, always decompressed sequentially.
+ */
+public class XzDecompressor
+    implements Decompressor {
+    
+    private static final int[] MAGIC = {0xfd, '7', 'z', 'X', 'Z', 0x00};
+    
+    /**
+     * {@inheritDoc}
+     */
+    public String getName() {
+        return "xz";
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public boolean matches(byte[] header, int length) {
+        if (length<MAGIC.length) {
+            return false;
+        }
+        for (int i=0; i<MAGIC.length; i++) {
+            if ((header[i] & 0xff)!=MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public InputStream decompress(InputStream in) 
+        throws IOException {
+        return new XZCompressorInputStream(in, true);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public BlockSplitter createSplitter(InputStream in) {
+        return null;
+    }
+    
+}
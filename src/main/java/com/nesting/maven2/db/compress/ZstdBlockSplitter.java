@@ -0,0 +1,88 @@
+package com.nesting.maven2.db.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Splits a zstd stream into its frames by walking the
+ * frame and block headers. Skippable frames are dropped.
+ */
+public class ZstdBlockSplitter
+    extends AbstractBlockSplitter {
+    
+    private static final int FRAME_MAGIC = 0xFD2FB528;
+    private static final int SKIPPABLE_MAGIC = 0x184D2A50;
+    private static final int SKIPPABLE_MASK = 0xFFFFFFF0;
+    private static final int[] DICTIONARY_ID_SIZES = {0, 1, 2, 4};
+    private static final int BLOCK_TYPE_RLE = 1;
+    private static final int BLOCK_TYPE_RESERVED = 3;
+    
+    /**
+     * Creates the splitter.
+     * @param in the compressed stream
+     * @param maxBlockSize the maximum size of a block
+     */
+    public ZstdBlockSplitter(InputStream in, int maxBlockSize) {
+        super(in, maxBlockSize);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean readBlock() 
+        throws IOException {
+        
+        byte[] buf = new byte[4];
+        while (true) {
+            if (!readFully(buf, 4, true)) {
+                return false;
+            }
+            int magic = (int)littleEndian(buf, 0, 4);
+            
+            // drop skippable frames
+            if ((magic & SKIPPABLE_MASK)==SKIPPABLE_MAGIC) {
+                readFully(buf, 4, false);
+                skip(littleEndian(buf, 0, 4));
+                discardBlock();
+                continue;
+                
+            } else if (magic!=FRAME_MAGIC) {
+                throw unsplittable("Not a zstd frame");
+            }
+            break;
+        }
+        
+        // frame header
+        int descriptor = readByte();
+        int contentSizeFlag = descriptor>>>6;
+        boolean singleSegment = (descriptor & 0x20)!=0;
+        boolean checksum = (descriptor & 0x04)!=0;
+        int contentSizeBytes = contentSizeFlag==0
+            ? (singleSegment ? 1 : 0)
+            : 1<<contentSizeFlag;
+        skip((singleSegment ? 0 : 1)
+            + DICTIONARY_ID_SIZES[descriptor & 0x03]
+            + contentSizeBytes);
+        
+        // blocks
+        byte[] blockHeader = new byte[3];
+        boolean last = false;
+        while (!last) {
+            readFully(blockHeader, 3, false);
+            int value = (int)littleEndian(blockHeader, 0, 3);
+            last = (value & 1)!=0;
+            int type = (value>>>1) & 3;
+            if (type==BLOCK_TYPE_RESERVED) {
+                throw new IOException("Corrupt zstd frame: reserved block type");
+            }
+            skip(type==BLOCK_TYPE_RLE ? 1 : value>>>3);
+        }
+        
+        // content checksum
+        if (checksum) {
+            skip(4);
+        }
+        return true;
+    }
+    
+}
@@ -0,0 +1,45 @@
+package com.nesting.maven2.db.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+
+/**
+ * zstd, files with several frames are decompressed in parallel.
+ */
+public class ZstdDecompressor
+    implements Decompressor {
+    
+    /**
+     * {@inheritDoc}
+     */
+    public String getName() {
+        return "zstd";
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public boolean matches(byte[] header, int length) {
+        return length>=4 
+            && (header[0] & 0xff)==0x28 && (header[1] & 0xff)==0xb5
+            && (header[2] & 0xff)==0x2f && (header[3] & 0xff)==0xfd;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public InputStream decompress(InputStream in) 
+        throws IOException {
+        return new ZstdCompressorInputStream(in);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public BlockSplitter createSplitter(InputStream in) {
+        return new ZstdBlockSplitter(in, Decompressors.MAX_BLOCK_SIZE);
+    }
+    
+}
@@ -0,0 +1,169 @@
+package com.nesting.maven2.db;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Tests that the scripts are executed through the mojo's
+ * protected script methods.
+ */
+public class AbstractDBMojoTest
+    extends TestCase {
+
+    private File directory;
+    private FakeConnection con;
+    private List locations;
+
+    /**
+     * Executes the scripts of the directory, recording
+     * the statements it executes.
+     */
+    private class RecordingMojo
+        extends AbstractDBMojo {
+
+        /**
+         * {@inheritDoc}
+         */
+        public void executeInternal()
+            throws MojoExecutionException,
+            MojoFailureException {
+            try {
+                executeScriptsInDirectory(directory, openApplicationDbConnection());
+            } catch(SQLException sqle) {
+                throw new MojoExecutionException(sqle.getMessage(), sqle);
+            } catch(IOException ioe) {
+                throw new MojoExecutionException(ioe.getMessage(), ioe);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        protected Connection openApplicationDbConnection() {
+            return con.getConnection();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        protected void executeStatement(
+            Statement st, String sqlLine, String location)
+            throws SQLException {
+            locations.add(location);
+            super.executeStatement(st, sqlLine, location);
+        }
+
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void setUp()
+        throws Exception {
+        directory = File.createTempFile("mojo-", "");
+        directory.delete();
+        directory.mkdir();
+        OutputStream ops = new FileOutputStream(new File(directory, "001-a.sql"));
+        try {
+            ops.write("DELETE FROM t;\nINSERT INTO t VALUES (1);\n".getBytes("UTF-8"));
+        } finally {
+            ops.close();
+        }
+        con = new FakeConnection();
+        locations = new ArrayList();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void tearDown()
+        throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    /**
+     * Sets up the parameters maven would inject.
+     * @param mojo the mojo
+     * @throws Exception on error
+     */
+    private static void configure(AbstractDBMojo mojo)
+        throws Exception {
+        DatabaseConnectionSettings settings = new DatabaseConnectionSettings();
+        settings.setUserName("sa");
+        settings.setJdbcUrl("jdbc:fake:mojo");
+        settings.setJdbcDriver("java.lang.Object");
+        set(mojo, "appDbConnectionSettings", settings);
+        set(mojo, "adminDbConnectionSettings", settings);
+        set(mojo, "useBatch", Boolean.FALSE);
+        set(mojo, "sqlDelimiter", ";");
+        set(mojo, "scriptEncoding", "UTF-8");
+        set(mojo, "lobThreshold", Integer.valueOf(1048576));
+    }
+
+    /**
+     * Sets a parameter of the mojo.
+     * @param mojo the mojo
+     * @param name the parameter
+     * @param value its value
+     * @throws Exception on error
+     */
+    private static void set(AbstractDBMojo mojo, String name, Object value)
+        throws Exception {
+        Field field = AbstractDBMojo.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(mojo, value);
+    }
+
+    /**
+     * Tests that an overridden executeStatement is the one
+     * the scripts are executed with.
+     * @throws Exception on error
+     */
+    public void testOverriddenStatementExecution()
+        throws Exception {
+        AbstractDBMojo mojo = new RecordingMojo();
+        configure(mojo);
+        mojo.execute();
+        assertEquals(Arrays.asList(new String[] {"001-a.sql:1", "001-a.sql:2"}),
+            locations);
+        assertEquals(2, con.getExecuted().size());
+    }
+
+    /**
+     * Tests that a mojo exception thrown by an overridden
+     * method reaches the caller as is.
+     * @throws Exception on error
+     */
+    public void testOverrideThrowingMojoException()
+        throws Exception {
+        AbstractDBMojo mojo = new RecordingMojo() {
+            protected SqlDialect getDialect(Connection c)
+                throws MojoFailureException {
+                throw new MojoFailureException("no dialect");
+            } };
+        configure(mojo);
+        try {
+            mojo.execute();
+            fail("the exception was lost");
+        } catch(MojoFailureException mfe) {
+            assertEquals("no dialect", mfe.getMessage());
+        }
+        assertTrue(con.getExecuted().isEmpty());
+    }
+
+}
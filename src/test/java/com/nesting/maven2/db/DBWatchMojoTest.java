@@ -0,0 +1,223 @@
+package com.nesting.maven2.db;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests watching script directories.
+ */
+public class DBWatchMojoTest
+    extends TestCase {
+
+    private File directory;
+    private File script;
+    private FakeConnection con;
+    private ScriptRunner runner;
+    private CountDownLatch opened;
+    private volatile boolean editWhileExecuting;
+
+    /**
+     * The mojo, with its directories, connection and runner
+     * set up by the test.
+     */
+    private class WatchMojo
+        extends DBWatchMojo {
+
+        /**
+         * {@inheritDoc}
+         */
+        protected File[] getScriptDirectories() {
+            return new File[] {directory};
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        protected Connection openApplicationDbConnection() {
+            opened.countDown();
+            return con.getConnection();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        protected ScriptRunner getRunner() {
+            return runner;
+        }
+
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void setUp()
+        throws Exception {
+        directory = File.createTempFile("watch-", "");
+        directory.delete();
+        directory.mkdir();
+        script = new File(directory, "update.sql");
+        con = new FakeConnection();
+        opened = new CountDownLatch(1);
+        runner = new ScriptRunner(new RecordingLog()) {
+            public void executeScript(
+                String name, InputStream ips, long size, Connection c)
+                throws SQLException,
+                IOException {
+                super.executeScript(name, ips, size, c);
+                if (editWhileExecuting) {
+                    editWhileExecuting = false;
+                    write("INSERT INTO t VALUES (1);\nINSERT INTO t VALUES (2);\n");
+                }
+            } };
+        runner.setProgressInterval(0);
+        runner.setSlowStatementWarning(0);
+        runner.setScriptEncoding("UTF-8");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void tearDown()
+        throws Exception {
+        runner.close();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    /**
+     * Writes the script.
+     * @param sql its content
+     * @throws IOException on error
+     */
+    private void write(String sql)
+        throws IOException {
+        OutputStream ops = new FileOutputStream(script);
+        try {
+            ops.write(sql.getBytes("UTF-8"));
+        } finally {
+            ops.close();
+        }
+    }
+
+    /**
+     * Counts the executions of a statement.
+     * @param sql the statement
+     * @return the number of times it was executed
+     */
+    private int executions(String sql) {
+        List executed = con.getExecuted();
+        int ret = 0;
+        for (int i=0; i<executed.size(); i++) {
+            if (sql.equals(((String)executed.get(i)).trim())) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Starts watching on a thread of its own.
+     * @param mojo the mojo
+     * @param failure where what the mojo throws goes
+     * @return the thread
+     * @throws InterruptedException if interrupted
+     */
+    private Thread watch(final DBWatchMojo mojo, final Exception[] failure)
+        throws InterruptedException {
+        Thread ret = new Thread() {
+            public void run() {
+                try {
+                    mojo.executeInternal();
+                } catch(Exception e) {
+                    failure[0] = e;
+                }
+            } };
+        ret.start();
+        assertTrue(opened.await(5, TimeUnit.SECONDS));
+        return ret;
+    }
+
+    /**
+     * Waits for a statement to be executed.
+     * @param sql the statement
+     * @throws InterruptedException if interrupted
+     */
+    private void waitFor(String sql)
+        throws InterruptedException {
+        long deadline = System.currentTimeMillis()+10000;
+        while (executions(sql)==0 && System.currentTimeMillis()<deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * Tests that a script edited while it's being executed is
+     * executed again, and that closing the watch service, as
+     * the shutdown hook does, stops watching and closes the
+     * connection.
+     * @throws Exception on error
+     */
+    public void testEditWhileExecutingAndStop()
+        throws Exception {
+        write("SELECT 0;\n");
+        DBWatchMojo mojo = new WatchMojo();
+        Exception[] failure = new Exception[1];
+        Thread watching = watch(mojo, failure);
+
+        editWhileExecuting = true;
+        write("INSERT INTO t VALUES (1);\n");
+        waitFor("INSERT INTO t VALUES (2)");
+        assertEquals(2, executions("INSERT INTO t VALUES (1)"));
+        assertEquals(1, executions("INSERT INTO t VALUES (2)"));
+        assertEquals(0, executions("SELECT 0"));
+
+        mojo.stopWatching();
+        watching.join(5000);
+        assertFalse("still watching", watching.isAlive());
+        assertNull(failure[0]);
+        assertTrue(con.isClosed());
+    }
+
+    /**
+     * Tests that an edit keeping the length and, as the file
+     * system's time granularity may, the modification time of
+     * the script is executed too.
+     * @throws Exception on error
+     */
+    public void testSameLengthEdit()
+        throws Exception {
+        write("INSERT INTO t VALUES (1);\n");
+        long modified = script.lastModified();
+        DBWatchMojo mojo = new WatchMojo();
+
+        // both changes are seen as one
+        Field debounce = DBWatchMojo.class.getDeclaredField("watchDebounce");
+        debounce.setAccessible(true);
+        debounce.setInt(mojo, 1000);
+        Exception[] failure = new Exception[1];
+        Thread watching = watch(mojo, failure);
+
+        write("INSERT INTO t VALUES (3);\n");
+        assertTrue(script.setLastModified(modified));
+        waitFor("INSERT INTO t VALUES (3)");
+        assertEquals(1, executions("INSERT INTO t VALUES (3)"));
+        assertEquals(0, executions("INSERT INTO t VALUES (1)"));
+
+        mojo.stopWatching();
+        watching.join(5000);
+        assertNull(failure[0]);
+    }
+
+}
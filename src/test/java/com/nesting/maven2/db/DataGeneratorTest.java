@@ -0,0 +1,348 @@
+package com.nesting.maven2.db;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+
+import com.nesting.maven2.db.compress.BgzfBlockSplitter;
+import com.nesting.maven2.db.compress.BlockSplitter;
+import com.nesting.maven2.db.compress.Decompressors;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Tests generating rows into the database and into scripts.
+ */
+public class DataGeneratorTest
+    extends TestCase {
+
+    private RecordingLog log;
+    private File directory;
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void setUp()
+        throws Exception {
+        log = new RecordingLog();
+        directory = File.createTempFile("generated-", "");
+        directory.delete();
+        directory.mkdir();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void tearDown()
+        throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    /**
+     * Creates a column spec.
+     * @param name the name
+     * @param generator the generator
+     * @return the column
+     */
+    private static GeneratedColumn column(String name, String generator) {
+        GeneratedColumn ret = new GeneratedColumn();
+        ret.setName(name);
+        ret.setGenerator(generator);
+        return ret;
+    }
+
+    /**
+     * Creates a table spec.
+     * @param name the name
+     * @param rows the number of rows
+     * @param columns the columns
+     * @return the table
+     */
+    private static GeneratedTable table(
+        String name, long rows, GeneratedColumn[] columns) {
+        GeneratedTable ret = new GeneratedTable();
+        ret.setName(name);
+        ret.setRows(rows);
+        ret.setColumns(columns);
+        return ret;
+    }
+
+    /**
+     * @param customers the number of customers
+     * @param orders the number of orders
+     * @return customers and their orders
+     */
+    private static GeneratedTable[] tables(long customers, long orders) {
+        GeneratedColumn id = column("id", "sequence");
+        id.setStart(100);
+        id.setStep(10);
+        GeneratedColumn name = column("name", "string");
+        name.setMinLength(3);
+        name.setMaxLength(12);
+        name.setNullRate(0.1);
+
+        GeneratedColumn customer = column("customer_id", "reference");
+        customer.setTable("customers");
+        customer.setColumn("id");
+        GeneratedColumn amount = column("amount", "uniform");
+        amount.setMin("1");
+        amount.setMax("500");
+        amount.setScale(2);
+        GeneratedColumn status = column("status", "choice");
+        status.setValues("new, paid, shipped");
+        status.setWeights("1, 2, 7");
+        GeneratedColumn placed = column("placed", "timestamp");
+        placed.setMin("2020-01-01");
+        placed.setMax("2021-01-01");
+
+        return new GeneratedTable[] {
+            table("customers", customers, new GeneratedColumn[] {id, name}),
+            table("orders", orders, new GeneratedColumn[] {
+                column("id", "sequence"), customer, amount, status, placed}),
+        };
+    }
+
+    /**
+     * Generates the tables into scripts and reads them back.
+     * @param tables the tables
+     * @param seed the seed
+     * @param threads the threads
+     * @return the decompressed scripts, one per table
+     * @throws Exception on error
+     */
+    private String[] generate(GeneratedTable[] tables, long seed, int threads)
+        throws Exception {
+        FileUtils.cleanDirectory(directory);
+        DataGenerator generator = new DataGenerator(log);
+        generator.setSeed(seed);
+        generator.setThreads(threads);
+        generator.generate(tables, directory);
+        String[] names = directory.list();
+        Arrays.sort(names);
+        String[] ret = new String[names.length];
+        for (int i=0; i<names.length; i++) {
+            InputStream ips = new GZIPInputStream(
+                new FileInputStream(new File(directory, names[i])));
+            try {
+                ret[i] = IOUtils.toString(ips, "UTF-8");
+            } finally {
+                ips.close();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Tests that the same seed gives the same rows whatever
+     * the number of threads, and that the scripts are named
+     * in the order of the tables.
+     * @throws Exception on error
+     */
+    public void testSameRowsWhateverTheThreads()
+        throws Exception {
+        GeneratedTable[] tables = tables(100, 2*DataGenerator.BLOCK_ROWS+500);
+        String[] one = generate(tables, 42, 1);
+        assertEquals(Arrays.asList(new String[] {
+            "001-customers.sql.gz", "002-orders.sql.gz"}),
+            sorted(directory.list()));
+        String[] four = generate(tables, 42, 4);
+        assertEquals(2, one.length);
+        assertEquals(one[0], four[0]);
+        assertEquals(one[1], four[1]);
+        assertEquals(2*DataGenerator.BLOCK_ROWS+500,
+            one[1].split("\n").length);
+        assertTrue(one[1].startsWith("INSERT INTO orders "
+            +"(id, customer_id, amount, status, placed) VALUES (1, "));
+
+        String[] other = generate(tables, 43, 4);
+        assertFalse(one[1].equals(other[1]));
+    }
+
+    /**
+     * Tests that the scripts are BGZF files, which the data
+     * goal decompresses in parallel.
+     * @throws Exception on error
+     */
+    public void testScriptsSplit()
+        throws Exception {
+        String[] scripts = generate(tables(10, 3*DataGenerator.BLOCK_ROWS), 5, 3);
+        File file = new File(directory, "002-orders.sql.gz");
+        InputStream ips = new FileInputStream(file);
+        try {
+            BlockSplitter splitter = new BgzfBlockSplitter(
+                ips, Decompressors.MAX_BLOCK_SIZE);
+            int members = 0;
+            while (splitter.nextBlock()!=null) {
+                members++;
+            }
+            assertTrue(members>3);
+        } finally {
+            ips.close();
+        }
+        ips = new FileInputStream(file);
+        try {
+            InputStream in = new BufferedInputStream(ips);
+            InputStream decompressed = Decompressors.open(
+                in, Decompressors.detect(in), 4);
+            assertEquals(scripts[1], IOUtils.toString(decompressed, "UTF-8"));
+        } finally {
+            ips.close();
+        }
+    }
+
+    /**
+     * @param names file names
+     * @return the names, sorted
+     */
+    private static List sorted(String[] names) {
+        Arrays.sort(names);
+        return Arrays.asList(names);
+    }
+
+    /**
+     * Tests the generated values: sequences, references to the
+     * rows of the parent table, ranges and scales.
+     * @throws Exception on error
+     */
+    public void testValues()
+        throws Exception {
+        FakeConnection con = new FakeConnection();
+        DataGenerator generator = new DataGenerator(log);
+        generator.setBatchSize(100);
+        generator.generate(tables(50, 1000), Arrays.asList(
+            new Object[] {con.getConnection()}));
+
+        List rows = con.getRows();
+        assertEquals(1050, rows.size());
+        int nulls = 0;
+        for (int i=0; i<50; i++) {
+            Object[] row = (Object[])rows.get(i);
+            assertEquals(Long.valueOf(100+i*10), row[0]);
+            if (row[1]==null) {
+                nulls++;
+            } else {
+                int length = ((String)row[1]).length();
+                assertTrue(length>=3 && length<=12);
+            }
+        }
+        assertTrue(nulls<50);
+        for (int i=50; i<rows.size(); i++) {
+            Object[] row = (Object[])rows.get(i);
+            assertEquals(Long.valueOf(i-49), row[0]);
+            long customer = ((Long)row[1]).longValue();
+            assertTrue("unknown customer "+customer,
+                customer>=100 && customer<=590 && customer%10==0);
+            BigDecimal amount = (BigDecimal)row[2];
+            assertEquals(2, amount.scale());
+            assertTrue(amount.doubleValue()>=1 && amount.doubleValue()<=500);
+            assertTrue(Arrays.asList(new String[] {"new", "paid", "shipped"})
+                .contains(row[3]));
+        }
+        assertEquals(2, con.getCommits());
+        assertTrue(con.isAutoCommit());
+    }
+
+    /**
+     * Tests that the timestamps are in UTC whatever the time
+     * zone of the machine, in the scripts and in the database.
+     * @throws Exception on error
+     */
+    public void testTimestampsInUtc()
+        throws Exception {
+        TimeZone zone = TimeZone.getDefault();
+        String[] west;
+        String[] east;
+        List rows;
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+            west = generate(tables(10, 1000), 7, 2);
+            TimeZone.setDefault(TimeZone.getTimeZone("Pacific/Kiritimati"));
+            east = generate(tables(10, 1000), 7, 2);
+            FakeConnection con = new FakeConnection();
+            new DataGenerator(log).generate(tables(10, 1000), Arrays.asList(
+                new Object[] {con.getConnection()}));
+            rows = con.getRows();
+        } finally {
+            TimeZone.setDefault(zone);
+        }
+        assertEquals(west[1], east[1]);
+
+        // 2020-01-01 and 2021-01-01 UTC
+        long min = 1577836800000L;
+        long max = 1609459200000L;
+        String[] inserts = west[1].split("\n");
+        for (int i=0; i<inserts.length; i++) {
+            String placed = inserts[i].substring(
+                inserts[i].lastIndexOf(", '")+3, inserts[i].lastIndexOf("'"));
+            assertTrue(placed, placed.compareTo("2020-01-01 00:00:00")>=0
+                && placed.compareTo("2021-01-01 00:00:00")<0);
+        }
+        for (int i=10; i<rows.size(); i++) {
+            long placed = ((Timestamp)((Object[])rows.get(i))[4]).getTime();
+            assertTrue(placed>=min && placed<max);
+        }
+    }
+
+    /**
+     * Tests that a failed block is rolled back before auto
+     * commit is restored, and that the blocks before it stay
+     * committed.
+     * @throws Exception on error
+     */
+    public void testFailedBlockRolledBack()
+        throws Exception {
+        FakeConnection con = new FakeConnection();
+        con.setFailOn("INSERT INTO orders", DataGenerator.BLOCK_ROWS+500);
+        DataGenerator generator = new DataGenerator(log);
+        try {
+            generator.generate(tables(10, 3*DataGenerator.BLOCK_ROWS), Arrays.asList(
+                new Object[] {con.getConnection()}));
+            fail("the block didn't fail");
+        } catch(SQLException sqle) {
+            assertTrue(sqle.getMessage().startsWith("failed: INSERT INTO orders"));
+        }
+
+        // customers and the first block of orders
+        assertEquals(2, con.getCommits());
+        assertEquals(1, con.getRollbacks());
+        assertTrue(con.isAutoCommit());
+    }
+
+    /**
+     * Tests that specs that can't be generated are rejected.
+     * @throws Exception on error
+     */
+    public void testInvalidSpecs()
+        throws Exception {
+        GeneratedColumn orphan = column("customer_id", "reference");
+        orphan.setTable("customers");
+        orphan.setColumn("id");
+        try {
+            generate(new GeneratedTable[] {
+                table("orders", 1, new GeneratedColumn[] {orphan})}, 1, 1);
+            fail("referenced a table generated after it");
+        } catch(IllegalArgumentException iae) {
+            assertTrue(iae.getMessage().startsWith("orders.customer_id: references"));
+        }
+        try {
+            generate(new GeneratedTable[] {
+                table("t", 1, new GeneratedColumn[] {column("a", "bogus")})}, 1, 1);
+            fail("unknown generator");
+        } catch(IllegalArgumentException iae) {
+            assertEquals("t.a: unknown generator: bogus", iae.getMessage());
+        }
+    }
+
+}
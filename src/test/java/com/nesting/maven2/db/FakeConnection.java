@@ -0,0 +1,355 @@
+package com.nesting.maven2.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A jdbc {@link Connection} that doesn't talk to a database,
+ * built out of dynamic proxies, that records the statements
+ * executed on it. Every statement updates one row, statements
+ * containing the failure text fail.
+ */
+public class FakeConnection {
+
+    private String productName = "Fake";
+    private String failOn;
+    private int failAfter;
+    private boolean autoCommit = true;
+    private int commits;
+    private int rollbacks;
+    private boolean closed;
+    private List executed = Collections.synchronizedList(new ArrayList());
+    private List batches = Collections.synchronizedList(new ArrayList());
+    private List parameters = Collections.synchronizedList(new ArrayList());
+    private List rows = Collections.synchronizedList(new ArrayList());
+    private Map updated = Collections.synchronizedMap(new HashMap());
+    private Connection connection;
+
+    /**
+     * Creates the connection.
+     */
+    public FakeConnection() {
+        connection = (Connection)proxy(Connection.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args)
+                throws Throwable {
+                return connectionCall(method, args);
+            } }
+        );
+    }
+
+    /**
+     * @return the {@link Connection}
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * @param productName the database product name to report
+     */
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    /**
+     * Has statements containing the given text fail.
+     * @param text the text, null for no failures
+     * @param after the number of matching statements that succeed first
+     */
+    public synchronized void setFailOn(String text, int after) {
+        this.failOn = text;
+        this.failAfter = after;
+    }
+
+    /**
+     * @return the sql executed, batched statements one by one
+     */
+    public List getExecuted() {
+        return new ArrayList(executed);
+    }
+
+    /**
+     * @return the number of statements in every batch executed
+     */
+    public List getBatches() {
+        return new ArrayList(batches);
+    }
+
+    /**
+     * @return the parameters of every prepared statement executed,
+     *      streams read into Strings (characters) or byte[]s
+     */
+    public List getParameters() {
+        return new ArrayList(parameters);
+    }
+
+    /**
+     * @return the parameter rows of every prepared statement batch
+     *      executed, as Object[]s
+     */
+    public List getRows() {
+        return new ArrayList(rows);
+    }
+
+    /**
+     * @return the number of commits
+     */
+    public synchronized int getCommits() {
+        return commits;
+    }
+
+    /**
+     * @return the number of rollbacks
+     */
+    public synchronized int getRollbacks() {
+        return rollbacks;
+    }
+
+    /**
+     * @return whether or not it's in auto commit mode
+     */
+    public synchronized boolean isAutoCommit() {
+        return autoCommit;
+    }
+
+    /**
+     * @return whether or not it was closed
+     */
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Handles a call on the connection.
+     * @param method the method
+     * @param args the arguments
+     * @return the result
+     * @throws Throwable on error
+     */
+    private synchronized Object connectionCall(Method method, Object[] args)
+        throws Throwable {
+        String name = method.getName();
+        if (name.equals("createStatement")) {
+            return statement(Statement.class, null);
+        } else if (name.equals("prepareStatement")) {
+            return statement(PreparedStatement.class, (String)args[0]);
+        } else if (name.equals("getMetaData")) {
+            final String product = productName;
+            return proxy(DatabaseMetaData.class, new InvocationHandler() {
+                public Object invoke(Object proxy, Method m, Object[] a) {
+                    return m.getName().equals("getDatabaseProductName")
+                        ? product : defaultValue(m);
+                } }
+            );
+        } else if (name.equals("getAutoCommit")) {
+            return Boolean.valueOf(autoCommit);
+        } else if (name.equals("setAutoCommit")) {
+            autoCommit = ((Boolean)args[0]).booleanValue();
+        } else if (name.equals("commit")) {
+            commits++;
+        } else if (name.equals("rollback")) {
+            rollbacks++;
+        } else if (name.equals("close")) {
+            closed = true;
+        } else if (name.equals("isClosed")) {
+            return Boolean.valueOf(closed);
+        }
+        return defaultValue(method);
+    }
+
+    /**
+     * Creates a statement.
+     * @param type the statement interface
+     * @param sql the sql of a prepared statement, null otherwise
+     * @return the statement
+     */
+    private Object statement(Class type, final String sql) {
+        return proxy(type, new InvocationHandler() {
+            private List batch = new ArrayList();
+            private Map values = new HashMap();
+            public Object invoke(Object proxy, Method method, Object[] args)
+                throws Throwable {
+                return statementCall(sql, batch, values, this, method, args);
+            } }
+        );
+    }
+
+    /**
+     * Handles a call on a statement.
+     * @param sql the sql of a prepared statement, null otherwise
+     * @param batch the statement's batch
+     * @param values the prepared statement's parameters by index
+     * @param state the statement's handler
+     * @param method the method
+     * @param args the arguments
+     * @return the result
+     * @throws Throwable on error
+     */
+    private Object statementCall(
+        String sql, List batch, Map values, Object state,
+        Method method, Object[] args)
+        throws Throwable {
+        String name = method.getName();
+        if (name.equals("execute") || name.equals("executeUpdate")) {
+            String text = sql!=null ? sql : (String)args[0];
+            run(text);
+            if (sql!=null) {
+                parameters.add(parameterList(values));
+            }
+            updated.put(state, Boolean.TRUE);
+            return name.equals("execute")
+                ? (Object)Boolean.FALSE : (Object)Integer.valueOf(1);
+        } else if (name.equals("getUpdateCount")) {
+            return Integer.valueOf(updated.remove(state)!=null ? 1 : -1);
+        } else if (name.equals("getMoreResults")) {
+            return Boolean.FALSE;
+        } else if (name.equals("addBatch")) {
+            if (sql!=null) {
+                batch.add(parameterList(values).toArray());
+            } else {
+                batch.add(args[0]);
+            }
+        } else if (name.equals("executeBatch")) {
+            int[] ret = new int[batch.size()];
+            for (int i=0; i<batch.size(); i++) {
+                run(sql!=null ? sql : (String)batch.get(i));
+                if (sql!=null) {
+                    rows.add(batch.get(i));
+                }
+                ret[i] = 1;
+            }
+            batches.add(Integer.valueOf(batch.size()));
+            batch.clear();
+            return ret;
+        } else if (name.equals("executeQuery")) {
+            return resultSet();
+        } else if (name.startsWith("set") && args!=null && args.length>=2
+            && args[0] instanceof Integer) {
+            values.put(args[0], parameterValue(name, args[1]));
+        }
+        return defaultValue(method);
+    }
+
+    /**
+     * Records a statement, failing it if asked to.
+     * @param sql the sql
+     * @throws SQLException if it fails
+     */
+    private void run(String sql)
+        throws SQLException {
+        synchronized (this) {
+            if (failOn!=null && sql.indexOf(failOn)!=-1 && failAfter--<=0) {
+                throw new SQLException("failed: "+sql, "42000", 1);
+            }
+        }
+        executed.add(sql);
+    }
+
+    /**
+     * Reads a parameter value, streams are read right away.
+     * @param setter the setter called
+     * @param value the value
+     * @return the value to record
+     * @throws IOException on error
+     */
+    private static Object parameterValue(String setter, Object value)
+        throws IOException {
+        if (value instanceof Reader) {
+            StringBuffer ret = new StringBuffer();
+            Reader reader = (Reader)value;
+            for (int c = reader.read(); c!=-1; c = reader.read()) {
+                ret.append((char)c);
+            }
+            return ret.toString();
+        } else if (value instanceof InputStream) {
+            ByteArrayOutputStream ret = new ByteArrayOutputStream();
+            InputStream ips = (InputStream)value;
+            for (int b = ips.read(); b!=-1; b = ips.read()) {
+                ret.write(b);
+            }
+            return ret.toByteArray();
+        } else if (setter.equals("setNull")) {
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * @param values the parameters by index
+     * @return the parameters in order
+     */
+    private static List parameterList(Map values) {
+        List ret = new ArrayList();
+        for (int i=1; i<=values.size(); i++) {
+            ret.add(values.get(Integer.valueOf(i)));
+        }
+        return ret;
+    }
+
+    /**
+     * @return an empty result set whose columns are all VARCHARs
+     */
+    private static ResultSet resultSet() {
+        final ResultSetMetaData meta = (ResultSetMetaData)proxy(
+            ResultSetMetaData.class, new InvocationHandler() {
+                public Object invoke(Object proxy, Method m, Object[] a) {
+                    return m.getName().equals("getColumnType")
+                        ? Integer.valueOf(Types.VARCHAR) : defaultValue(m);
+                } }
+            );
+        return (ResultSet)proxy(ResultSet.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method m, Object[] a) {
+                return m.getName().equals("getMetaData")
+                    ? meta : defaultValue(m);
+            } }
+        );
+    }
+
+    /**
+     * Creates a proxy.
+     * @param type the interface
+     * @param handler the handler
+     * @return the proxy
+     */
+    static Object proxy(Class type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(
+            FakeConnection.class.getClassLoader(), new Class[] {type}, handler);
+    }
+
+    /**
+     * @param method a method
+     * @return the value a method that does nothing returns
+     */
+    static Object defaultValue(Method method) {
+        Class type = method.getReturnType();
+        if (type==Boolean.TYPE) {
+            return Boolean.FALSE;
+        } else if (type==Integer.TYPE) {
+            return Integer.valueOf(0);
+        } else if (type==Long.TYPE) {
+            return Long.valueOf(0);
+        } else if (method.getName().equals("toString")) {
+            return "fake";
+        }
+        return null;
+    }
+
+}
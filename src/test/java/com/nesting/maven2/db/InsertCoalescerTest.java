@@ -0,0 +1,227 @@
+package com.nesting.maven2.db;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests rewriting single row INSERTs into multi row ones.
+ */
+public class InsertCoalescerTest
+    extends TestCase {
+
+    /**
+     * Statement source over a list of sql strings, that fails
+     * if it's read from again once it has ended.
+     */
+    private static class ListSource
+        implements SqlStatementSource {
+
+        private List statements;
+        private int next;
+        private boolean ended;
+        private boolean closed;
+
+        /**
+         * Creates the source.
+         * @param sql the sql of the statements
+         */
+        ListSource(String[] sql) {
+            statements = new ArrayList();
+            for (int i=0; i<sql.length; i++) {
+                statements.add(new SqlStatement(sql[i], new ArrayList(), i+1));
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public SqlStatement next() {
+            if (ended) {
+                fail("read after the end");
+            }
+            if (next==statements.size()) {
+                ended = true;
+                return null;
+            }
+            return (SqlStatement)statements.get(next++);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void close() {
+            closed = true;
+        }
+
+    }
+
+    /**
+     * Coalesces the given statements.
+     * @param dialect the dialect
+     * @param maxRows the most rows
+     * @param maxLength the most characters of values
+     * @param sql the statements
+     * @return the sql of the coalesced statements
+     * @throws IOException on error
+     */
+    private static List coalesce(
+        String dialect, int maxRows, int maxLength, String[] sql)
+        throws IOException {
+        ListSource source = new ListSource(sql);
+        SqlStatementSource in = new InsertCoalescer(
+            source, SqlDialect.forName(dialect), maxRows, maxLength);
+        List ret = new ArrayList();
+        SqlStatement statement;
+        while ((statement = in.next())!=null) {
+            ret.add(statement.getSql());
+        }
+        assertNull("not latched at the end", in.next());
+        in.close();
+        assertTrue(source.closed);
+        return ret;
+    }
+
+    /**
+     * Tests multi row VALUES.
+     * @throws IOException on error
+     */
+    public void testMultiRowValues()
+        throws IOException {
+        List sql = coalesce("mysql", 1000, 1000, new String[] {
+            "INSERT INTO t (a, b) VALUES (1, 'x')",
+            "insert into t (a, b) values (2, 'it''s (y)')",
+            "INSERT INTO t (a, b) VALUES (3, 'z')",
+            "UPDATE t SET b = NULL",
+            "INSERT INTO t (a, b) VALUES (4, 'w')",
+        });
+        assertEquals(Arrays.asList(new String[] {
+            "INSERT INTO t (a, b) VALUES (1, 'x'),\n(2, 'it''s (y)'),\n(3, 'z')",
+            "UPDATE t SET b = NULL",
+            "INSERT INTO t (a, b) VALUES (4, 'w')",
+        }), sql);
+    }
+
+    /**
+     * Tests Oracle's INSERT ALL.
+     * @throws IOException on error
+     */
+    public void testInsertAll()
+        throws IOException {
+        List sql = coalesce("oracle", 1000, 1000, new String[] {
+            "INSERT INTO t VALUES (1)",
+            "INSERT INTO t VALUES (2)",
+        });
+        assertEquals(Arrays.asList(new String[] {
+            "INSERT ALL\n INTO t VALUES (1)\n INTO t VALUES (2)\nSELECT * FROM DUAL",
+        }), sql);
+    }
+
+    /**
+     * Tests that inserts using sequence values aren't coalesced,
+     * INSERT ALL evaluating them only once.
+     * @throws IOException on error
+     */
+    public void testSequencesNotCoalesced()
+        throws IOException {
+        List sql = coalesce("oracle", 1000, 1000, new String[] {
+            "INSERT INTO t VALUES (seq.NEXTVAL, 1)",
+            "INSERT INTO t VALUES (seq.nextval, 2)",
+            "INSERT INTO t VALUES (seq.CURRVAL, 3)",
+            "INSERT INTO t VALUES (1, 'NEXTVAL')",
+            "INSERT INTO t VALUES (2, nextval_flag)",
+        });
+        assertEquals(Arrays.asList(new String[] {
+            "INSERT INTO t VALUES (seq.NEXTVAL, 1)",
+            "INSERT INTO t VALUES (seq.nextval, 2)",
+            "INSERT INTO t VALUES (seq.CURRVAL, 3)",
+            "INSERT ALL\n INTO t VALUES (1, 'NEXTVAL')\n INTO t VALUES (2, nextval_flag)"
+                +"\nSELECT * FROM DUAL",
+        }), sql);
+
+        sql = coalesce("postgresql", 1000, 1000, new String[] {
+            "INSERT INTO t VALUES (NEXTVAL('seq'), 1)",
+            "INSERT INTO t VALUES (nextval('seq'), 2)",
+        });
+        assertEquals(2, sql.size());
+    }
+
+    /**
+     * Tests that nothing is coalesced for an unknown database.
+     * @throws IOException on error
+     */
+    public void testGenericNotCoalesced()
+        throws IOException {
+        String[] statements = {
+            "INSERT INTO t VALUES (1)",
+            "INSERT INTO t VALUES (2)",
+        };
+        assertEquals(Arrays.asList(statements),
+            coalesce("generic", 1000, 1000, statements));
+    }
+
+    /**
+     * Tests the limits and what ends a group.
+     * @throws IOException on error
+     */
+    public void testGroups()
+        throws IOException {
+        List sql = coalesce("mysql", 2, 1000, new String[] {
+            "INSERT INTO t VALUES (1)",
+            "INSERT INTO t VALUES (2)",
+            "INSERT INTO t VALUES (3)",
+            "INSERT INTO u VALUES (4)",
+            "INSERT INTO u (a) VALUES (5)",
+            "INSERT INTO u (a) SELECT 6",
+            "INSERT INTO u (a) VALUES (7) ON DUPLICATE KEY UPDATE a = 7",
+        });
+        assertEquals(Arrays.asList(new String[] {
+            "INSERT INTO t VALUES (1),\n(2)",
+            "INSERT INTO t VALUES (3)",
+            "INSERT INTO u VALUES (4)",
+            "INSERT INTO u (a) VALUES (5)",
+            "INSERT INTO u (a) SELECT 6",
+            "INSERT INTO u (a) VALUES (7) ON DUPLICATE KEY UPDATE a = 7",
+        }), sql);
+
+        sql = coalesce("mysql", 1000, 12, new String[] {
+            "INSERT INTO t VALUES ('aa')",
+            "INSERT INTO t VALUES ('bb')",
+            "INSERT INTO t VALUES ('cc')",
+        });
+        assertEquals(2, sql.size());
+
+        sql = coalesce("sqlserver", 5000, 1000000, new String[0]);
+        assertTrue(sql.isEmpty());
+    }
+
+    /**
+     * Tests that the coalescer passes statements with lobs through.
+     * @throws IOException on error
+     */
+    public void testLobsPassedThrough()
+        throws IOException {
+        List statements = SqlStatementReaderTest.read(
+            "INSERT INTO t VALUES (1, 'a long value');\n"
+            + "INSERT INTO t VALUES (2, 'another long value');\n", ";", 5);
+        final List queue = new ArrayList(statements);
+        SqlStatementSource in = new InsertCoalescer(new SqlStatementSource() {
+                public SqlStatement next() {
+                    return queue.isEmpty() ? null : (SqlStatement)queue.remove(0);
+                }
+                public void close() {
+                } },
+            SqlDialect.forName("mysql"), 1000, 1000);
+        assertSame(statements.get(0), in.next());
+        assertSame(statements.get(1), in.next());
+        assertNull(in.next());
+        in.close();
+        for (int i=0; i<statements.size(); i++) {
+            ((SqlStatement)statements.get(i)).dispose();
+        }
+    }
+
+}
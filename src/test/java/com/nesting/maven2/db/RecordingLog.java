@@ -0,0 +1,90 @@
+package com.nesting.maven2.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link ScriptLog} that keeps the messages logged, prefixed
+ * with their level, for tests to look at.
+ */
+public class RecordingLog
+    implements ScriptLog {
+
+    private List messages = Collections.synchronizedList(new ArrayList());
+
+    /**
+     * @return the messages, as "LEVEL message"
+     */
+    public List getMessages() {
+        return new ArrayList(messages);
+    }
+
+    /**
+     * Checks whether a message containing the given text was
+     * logged at the given level.
+     * @param level the level (DEBUG, INFO, WARN or ERROR)
+     * @param text the text
+     * @return true if it was
+     */
+    public boolean contains(String level, String text) {
+        List copy = getMessages();
+        for (int i=0; i<copy.size(); i++) {
+            String message = (String)copy.get(i);
+            if (message.startsWith(level+" ") && message.indexOf(text)!=-1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isDebugEnabled() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void debug(String message) {
+        messages.add("DEBUG "+message);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void debug(String message, Throwable cause) {
+        messages.add("DEBUG "+message+": "+cause);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void info(String message) {
+        messages.add("INFO "+message);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void warn(String message) {
+        messages.add("WARN "+message);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void error(String message) {
+        messages.add("ERROR "+message);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void error(String message, Throwable cause) {
+        messages.add("ERROR "+message+": "+cause);
+    }
+
+}
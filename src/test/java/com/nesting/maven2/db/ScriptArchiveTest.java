@@ -0,0 +1,133 @@
+package com.nesting.maven2.db;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests executing scripts straight out of jar/zip files.
+ */
+public class ScriptArchiveTest
+    extends TestCase {
+
+    private File archive;
+    private RecordingLog log;
+    private ScriptRunner runner;
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void setUp()
+        throws Exception {
+        archive = File.createTempFile("scripts-", ".jar");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            add(out, "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n");
+            add(out, "sql/", null);
+            add(out, "sql/02-data.sql", "INSERT INTO t VALUES (2);\n");
+            add(out, "sql/01-schema.sql", "CREATE TABLE t (id INT);\n");
+            add(out, "sql/nested/03-ignored.sql", "DROP TABLE t;\n");
+        } finally {
+            out.close();
+        }
+        log = new RecordingLog();
+        runner = new ScriptRunner(log);
+        runner.setProgressInterval(0);
+        runner.setSlowStatementWarning(0);
+        runner.setScriptEncoding("UTF-8");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void tearDown() {
+        runner.close();
+        archive.delete();
+    }
+
+    /**
+     * Adds an entry to the archive.
+     * @param out the archive
+     * @param name the entry's name
+     * @param content the entry's content, null for a directory
+     * @throws IOException on error
+     */
+    private static void add(ZipOutputStream out, String name, String content)
+        throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        if (content!=null) {
+            out.write(content.getBytes("UTF-8"));
+        }
+        out.closeEntry();
+    }
+
+    /**
+     * Tests normalizing the path of the scripts.
+     */
+    public void testNormalizeScriptPath() {
+        assertEquals("", ScriptRunner.normalizeScriptPath(null));
+        assertEquals("", ScriptRunner.normalizeScriptPath(""));
+        assertEquals("", ScriptRunner.normalizeScriptPath("/"));
+        assertEquals("sql/", ScriptRunner.normalizeScriptPath("sql"));
+        assertEquals("sql/", ScriptRunner.normalizeScriptPath("//sql/"));
+        assertEquals("db/sql/", ScriptRunner.normalizeScriptPath("\\db\\sql"));
+    }
+
+    /**
+     * Tests that only the entries directly under the path are
+     * listed, sorted by name.
+     * @throws IOException on error
+     */
+    public void testListScriptEntries()
+        throws IOException {
+        ZipFile zip = new ZipFile(archive);
+        try {
+            List entries = runner.listScriptEntries(zip, "sql/");
+            assertEquals(2, entries.size());
+            assertEquals("sql/01-schema.sql", ((ZipEntry)entries.get(0)).getName());
+            assertEquals("sql/02-data.sql", ((ZipEntry)entries.get(1)).getName());
+
+            assertTrue(runner.listScriptEntries(zip, "missing/").isEmpty());
+            assertTrue(log.contains("WARN", "no scripts found under: missing/"));
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * Tests executing the scripts of an archive in order.
+     * @throws Exception on error
+     */
+    public void testExecuteScriptsInArchive()
+        throws Exception {
+        FakeConnection con = new FakeConnection();
+        runner.executeScriptsInArchive(archive, "/sql", con.getConnection());
+        List executed = con.getExecuted();
+        assertEquals(2, executed.size());
+        assertEquals("CREATE TABLE t (id INT)", ((String)executed.get(0)).trim());
+        assertEquals("INSERT INTO t VALUES (2)", ((String)executed.get(1)).trim());
+        assertTrue(log.contains("INFO", "batch executing script: 01-schema.sql"));
+    }
+
+    /**
+     * Tests how script artifacts are shown.
+     */
+    public void testScriptArtifactToString() {
+        ScriptArtifact artifact = new ScriptArtifact();
+        artifact.setGroupId("com.example");
+        artifact.setArtifactId("schema");
+        artifact.setVersion("1.0");
+        assertEquals("com.example:schema:jar:1.0!/", artifact.toString());
+        artifact.setClassifier("sql");
+        artifact.setType("zip");
+        artifact.setPath("db/sql");
+        assertEquals("com.example:schema:zip:sql:1.0!/db/sql", artifact.toString());
+    }
+
+}
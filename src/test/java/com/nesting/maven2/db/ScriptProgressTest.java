@@ -0,0 +1,89 @@
+package com.nesting.maven2.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Tests the progress counters and the flight recorder events
+ * of executed batches.
+ */
+public class ScriptProgressTest
+    extends TestCase {
+
+    /**
+     * Tests counting the bytes read and the executed batches.
+     * @throws Exception on error
+     */
+    public void testCounters()
+        throws Exception {
+        ScriptProgress progress = new ScriptProgress();
+        progress.startScript("test.sql", 2048);
+        InputStream ips = progress.count(new ByteArrayInputStream(new byte[1024]));
+        IOUtils.toByteArray(ips);
+        assertEquals(1024, progress.getBytesRead());
+        assertEquals(50, (long)progress.getPercentComplete());
+
+        progress.executed(progress.startBatch(), "test.sql:1", 10, 8, 15);
+        progress.executed(progress.startBatch(), "test.sql:11", 1, 1, 5);
+        assertEquals(11, progress.getStatements());
+        assertEquals(9, progress.getRows());
+        assertEquals(5, progress.getLastBatchMillis());
+        assertTrue(progress.getEstimatedSecondsRemaining()>=0);
+        assertTrue(progress.toString().startsWith("test.sql: 50% (1 of 2 KB), 11 statements"));
+
+        progress.startScript("other.sql", -1);
+        assertEquals(0, progress.getStatements());
+        assertEquals(-1, (long)progress.getPercentComplete());
+        assertEquals(-1, progress.getEstimatedSecondsRemaining());
+    }
+
+    /**
+     * Tests that the runner's batches are recorded as flight
+     * recorder events.
+     * @throws Exception on error
+     */
+    public void testBatchEvents()
+        throws Exception {
+        RecordingLog log = new RecordingLog();
+        ScriptRunner runner = new ScriptRunner(log);
+        runner.setProgressInterval(0);
+        runner.setSlowStatementWarning(0);
+        runner.setScriptEncoding("UTF-8");
+        FakeConnection con = new FakeConnection();
+        byte[] script = "INSERT INTO t VALUES (1);\nINSERT INTO t VALUES (2);\n"
+            .getBytes("UTF-8");
+
+        File file = File.createTempFile("batches-", ".jfr");
+        Recording recording = new Recording();
+        try {
+            recording.enable("com.nesting.maven2.db.Batch");
+            recording.start();
+            runner.executeScript("test.sql", new ByteArrayInputStream(script),
+                script.length, con.getConnection());
+            recording.stop();
+            recording.dump(file.toPath());
+
+            List events = RecordingFile.readAllEvents(file.toPath());
+            assertEquals(1, events.size());
+            RecordedEvent event = (RecordedEvent)events.get(0);
+            assertEquals("test.sql", event.getString("script"));
+            assertEquals("test.sql:1", event.getString("location"));
+            assertEquals(2, event.getInt("statements"));
+            assertEquals(2, event.getLong("rows"));
+        } finally {
+            recording.close();
+            runner.close();
+            file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.nesting.maven2.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the exit codes of the command line runner.
+ */
+public class ScriptRunnerCliTest
+    extends TestCase {
+
+    private static final String URL = "jdbc:fake:cli";
+
+    private FakeConnection con;
+    private Driver driver;
+    private File script;
+    private ByteArrayOutputStream out;
+    private ByteArrayOutputStream err;
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void setUp()
+        throws Exception {
+        con = new FakeConnection();
+        driver = (Driver)FakeConnection.proxy(Driver.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("acceptsURL")) {
+                    return Boolean.valueOf(URL.equals(args[0]));
+                } else if (method.getName().equals("connect")) {
+                    return URL.equals(args[0]) ? con.getConnection() : null;
+                }
+                return FakeConnection.defaultValue(method);
+            } });
+        DriverManager.registerDriver(driver);
+        script = File.createTempFile("cli-", ".sql");
+        out = new ByteArrayOutputStream();
+        err = new ByteArrayOutputStream();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void tearDown()
+        throws Exception {
+        DriverManager.deregisterDriver(driver);
+        script.delete();
+    }
+
+    /**
+     * Writes the script.
+     * @param sql its content
+     * @throws IOException on error
+     */
+    private void write(String sql)
+        throws IOException {
+        OutputStream ops = new FileOutputStream(script);
+        try {
+            ops.write(sql.getBytes("UTF-8"));
+        } finally {
+            ops.close();
+        }
+    }
+
+    /**
+     * Runs the command line runner.
+     * @param args the command line
+     * @return the exit code
+     */
+    private int run(String[] args) {
+        return ScriptRunnerCli.run(
+            args, new PrintStream(out, true), new PrintStream(err, true));
+    }
+
+    /**
+     * Tests that the scripts are executed on the database.
+     * @throws Exception on error
+     */
+    public void testExecutes()
+        throws Exception {
+        write("INSERT INTO t VALUES (1);\nINSERT INTO t VALUES (2);\n");
+        assertEquals(0, run(new String[] {
+            "--url", URL, "--encoding", "UTF-8", "--progress-interval", "0",
+            "--validate", script.getPath()}));
+        assertEquals(Arrays.asList(new Integer[] {Integer.valueOf(2)}),
+            con.getBatches());
+        assertTrue(con.isClosed());
+    }
+
+    /**
+     * Tests that validating only needs no database, and exits
+     * with the failure code only if the scripts are invalid.
+     * @throws Exception on error
+     */
+    public void testValidateOnly()
+        throws Exception {
+        write("INSERT INTO t VALUES ('a;b');\n");
+        assertEquals(0, run(new String[] {
+            "--encoding", "UTF-8", "--validate-only", script.getPath()}));
+        write("INSERT INTO t VALUES ('a);\n");
+        assertEquals(1, run(new String[] {
+            "--encoding", "UTF-8", "--validate-only", script.getPath()}));
+        assertTrue(err.toString().indexOf("unterminated string literal")!=-1);
+        assertTrue(con.getExecuted().isEmpty());
+        assertFalse(con.isClosed());
+    }
+
+    /**
+     * Tests that bad command lines exit with the usage code.
+     */
+    public void testUsage() {
+        assertEquals(2, run(new String[0]));
+        assertEquals(2, run(new String[] {"--url", URL}));
+        assertEquals(2, run(new String[] {"--url", URL, "--bogus", "1", "a.sql"}));
+        assertEquals(2, run(new String[] {"--url", URL, "--batch-size", "x", "a.sql"}));
+        assertEquals(2, run(new String[] {"--url", URL, "--dialect", "bogus", "a.sql"}));
+        assertEquals(2, run(new String[] {"--url"}));
+        assertEquals(2, run(new String[] {"--validate", "a.sql"}));
+        assertEquals(2, run(new String[] {"--validate-only"}));
+        assertTrue(err.toString().indexOf("usage: ScriptRunnerCli")!=-1);
+        assertTrue(con.getExecuted().isEmpty());
+    }
+
+    /**
+     * Tests that invalid scripts, missing drivers and failing
+     * statements exit with the failure code.
+     * @throws Exception on error
+     */
+    public void testFailures()
+        throws Exception {
+        write("SELECT 1;\n;\n");
+        assertEquals(1, run(new String[] {
+            "--url", URL, "--encoding", "UTF-8", "--validate", script.getPath()}));
+        assertTrue(con.getExecuted().isEmpty());
+        assertTrue(con.getBatches().isEmpty());
+
+        assertEquals(1, run(new String[] {
+            "--url", URL, "--driver", "com.example.NoSuchDriver", script.getPath()}));
+        assertTrue(err.toString().indexOf("jdbc driver not found")!=-1);
+
+        write("DELETE FROM t;\n");
+        con.setFailOn("DELETE", 0);
+        assertEquals(1, run(new String[] {
+            "--url", URL, "--encoding", "UTF-8", "--progress-interval", "0",
+            "--no-batch", script.getPath()}));
+        assertTrue(err.toString().indexOf(".sql:1")!=-1);
+    }
+
+}
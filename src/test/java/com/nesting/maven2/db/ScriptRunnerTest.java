@@ -0,0 +1,171 @@
+package com.nesting.maven2.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests executing scripts with the {@link ScriptRunner}.
+ */
+public class ScriptRunnerTest
+    extends TestCase {
+
+    private RecordingLog log;
+    private ScriptRunner runner;
+    private FakeConnection con;
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void setUp() {
+        log = new RecordingLog();
+        runner = new ScriptRunner(log);
+        runner.setProgressInterval(0);
+        runner.setSlowStatementWarning(0);
+        runner.setScriptEncoding("UTF-8");
+        con = new FakeConnection();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void tearDown() {
+        runner.close();
+    }
+
+    /**
+     * Executes a script.
+     * @param script the script
+     * @throws SQLException on error
+     * @throws IOException on error
+     */
+    private void execute(String script)
+        throws SQLException,
+        IOException {
+        byte[] bytes = script.getBytes("UTF-8");
+        runner.executeScript("test.sql", new ByteArrayInputStream(bytes),
+            bytes.length, con.getConnection());
+    }
+
+    /**
+     * Tests that long literals are bound as parameters, and
+     * that their files are gone once the script is executed.
+     * @throws Exception on error
+     */
+    public void testLobsAreStreamedAndDeleted()
+        throws Exception {
+        File tmp = new File(System.getProperty("java.io.tmpdir"));
+        int before = SqlStatementReaderTest.countLobFiles(tmp);
+        runner.setLobThreshold(5);
+        execute("INSERT INTO t VALUES (1);\n"
+            + "INSERT INTO t VALUES (N'a long value');\n"
+            + "INSERT INTO t VALUES (3);\n");
+        List executed = con.getExecuted();
+        assertEquals(3, executed.size());
+        assertEquals("INSERT INTO t VALUES (?)", ((String)executed.get(1)).trim());
+        List parameters = (List)con.getParameters().get(0);
+        assertEquals("a long value", parameters.get(0));
+        assertEquals(before, SqlStatementReaderTest.countLobFiles(tmp));
+    }
+
+    /**
+     * Tests that the files of a lob statement are deleted when
+     * the batch executed before it fails.
+     * @throws Exception on error
+     */
+    public void testLobsDeletedWhenBatchFails()
+        throws Exception {
+        File tmp = new File(System.getProperty("java.io.tmpdir"));
+        int before = SqlStatementReaderTest.countLobFiles(tmp);
+        runner.setLobThreshold(5);
+        con.setFailOn("VALUES (1)", 0);
+        try {
+            execute("INSERT INTO t VALUES (1);\n"
+                + "INSERT INTO t VALUES ('a long value');\n");
+            fail("failing batch ignored");
+        } catch(SQLException sqle) {
+            assertTrue(sqle.getMessage().indexOf("test.sql:1")!=-1);
+        }
+        assertEquals(before, SqlStatementReaderTest.countLobFiles(tmp));
+    }
+
+    /**
+     * Executes a statement with a lob claiming to be longer than
+     * 2GB on a connection whose statements record the lengths
+     * the lobs are bound with.
+     * @param jdbc3 whether or not the statements only take int
+     *      lengths, like those of jdbc 3 drivers
+     * @param lengths where the lengths go
+     * @throws Exception on error
+     */
+    private void executeHugeLob(final boolean jdbc3, final List lengths)
+        throws Exception {
+        final PreparedStatement ps = (PreparedStatement)FakeConnection.proxy(
+            PreparedStatement.class, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    Class[] types = method.getParameterTypes();
+                    if (method.getName().equals("setBinaryStream")) {
+                        if (jdbc3 && types[2]==Long.TYPE) {
+                            throw new AbstractMethodError(method.getName());
+                        }
+                        lengths.add(args[2]);
+                    }
+                    return FakeConnection.defaultValue(method);
+                } });
+        Connection con = (Connection)FakeConnection.proxy(
+            Connection.class, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    return method.getName().equals("prepareStatement")
+                        ? ps : FakeConnection.defaultValue(method);
+                } });
+        File file = File.createTempFile("dbLob-", ".tmp");
+        new FileOutputStream(file).close();
+        SqlLob lob = new SqlLob(file, true, 3L*Integer.MAX_VALUE/2);
+        runner.executeLobStatement(con, new SqlStatement(
+            "INSERT INTO t VALUES (?)", new ArrayList(Arrays.asList(new Object[] {lob})), 1),
+            "test.sql:1");
+    }
+
+    /**
+     * Tests that lobs longer than 2GB are bound with their
+     * length as a long.
+     * @throws Exception on error
+     */
+    public void testHugeLobLength()
+        throws Exception {
+        List lengths = new ArrayList();
+        executeHugeLob(false, lengths);
+        assertEquals(Arrays.asList(new Object[] {Long.valueOf(3L*Integer.MAX_VALUE/2)}),
+            lengths);
+    }
+
+    /**
+     * Tests that lobs longer than 2GB are rejected, rather than
+     * truncated, by drivers that only take int lengths.
+     * @throws Exception on error
+     */
+    public void testHugeLobOnJdbc3Driver()
+        throws Exception {
+        List lengths = new ArrayList();
+        try {
+            executeHugeLob(true, lengths);
+            fail("huge lob bound with an int length");
+        } catch(SQLException sqle) {
+            assertTrue(sqle.getMessage(),
+                sqle.getMessage().indexOf("can't stream a lob of 3221225470 bytes")!=-1);
+        }
+        assertTrue(lengths.isEmpty());
+    }
+
+}
@@ -0,0 +1,200 @@
+package com.nesting.maven2.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests finding the problems of scripts without executing them.
+ */
+public class ScriptValidatorTest
+    extends TestCase {
+
+    /**
+     * A script held in memory.
+     */
+    private static class MemoryScript
+        implements ScriptValidator.Script {
+
+        private String name;
+        private byte[] bytes;
+
+        /**
+         * Creates the script.
+         * @param name the name
+         * @param bytes the content
+         */
+        MemoryScript(String name, byte[] bytes) {
+            this.name = name;
+            this.bytes = bytes;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public InputStream open() {
+            return new ByteArrayInputStream(bytes);
+        }
+
+    }
+
+    /**
+     * Validates a script.
+     * @param script the script
+     * @param delimiter the delimiter
+     * @param dialect the name of the dialect
+     * @return the problems
+     * @throws IOException on error
+     */
+    private static List validate(String script, String delimiter, String dialect)
+        throws IOException {
+        return new ScriptValidator(delimiter, "UTF-8", SqlDialect.forName(dialect))
+            .validate(new MemoryScript("test.sql", script.getBytes("UTF-8")));
+    }
+
+    /**
+     * Tests that a valid script has no problems.
+     * @throws IOException on error
+     */
+    public void testValidScript()
+        throws IOException {
+        assertEquals(Collections.EMPTY_LIST, validate(
+            "-- create; the table\n"
+            + "CREATE TABLE t (a VARCHAR(10), \"b;\" INT);\n"
+            + "/* a block\n   comment; */\n"
+            + "INSERT INTO t VALUES ('it''s\n; multi; line', 1);\r\n"
+            + "/*/ still a comment */ INSERT INTO t VALUES (E'it\\'s', 2);\n"
+            + "DELETE FROM t", ";", "postgresql"));
+    }
+
+    /**
+     * Tests backslash escaped quotes, which only some databases
+     * take in plain string literals.
+     * @throws IOException on error
+     */
+    public void testBackslashEscapes()
+        throws IOException {
+        String script = "INSERT INTO t VALUES ('O\\'Brien');\n"
+            + "INSERT INTO t VALUES ('C:\\\\');\n";
+        assertEquals(Collections.EMPTY_LIST, validate(script, ";", "mysql"));
+        assertEquals(Arrays.asList(new String[] {
+            "test.sql:1: unterminated string literal",
+        }), validate(script, ";", "generic"));
+    }
+
+    /**
+     * Tests unterminated literals, identifiers and comments.
+     * @throws IOException on error
+     */
+    public void testUnterminated()
+        throws IOException {
+        assertEquals(Arrays.asList(new String[] {
+            "test.sql:1: unterminated string literal",
+            "test.sql:3: unterminated quoted identifier",
+            "test.sql:4: unterminated comment",
+        }), validate(
+            "INSERT INTO t VALUES ('abc);\n"
+            + "SELECT 1;\n"
+            + "SELECT \"a FROM t;\n"
+            + "SELECT 2 /* FROM t;\n", ";", "generic"));
+    }
+
+    /**
+     * Tests that the quotes in mysql # comments and in postgresql
+     * dollar quoted strings don't start string literals, and that
+     * the delimiter doesn't end a statement in a dollar quote.
+     * @throws IOException on error
+     */
+    public void testDialectSyntax()
+        throws IOException {
+        assertEquals(Collections.EMPTY_LIST, validate(
+            "# don't\nINSERT INTO t VALUES (1);\n", ";", "mysql"));
+        String function = "CREATE FUNCTION f() RETURNS text AS $body$\n"
+            + "BEGIN\n"
+            + "    RETURN 'it''s ' || $$don't$$;\n"
+            + "END;\n"
+            + "$body$ LANGUAGE plpgsql;\n"
+            + "SELECT f();\n";
+        assertEquals(Collections.EMPTY_LIST, validate(function, ";", "postgresql"));
+        assertEquals(Arrays.asList(new String[] {
+            "test.sql:1: unterminated dollar quoted string",
+        }), validate("SELECT $$don't;\nSELECT 1;\n", ";", "postgresql"));
+        assertEquals(Arrays.asList(new String[] {
+            "test.sql:1: unterminated string literal",
+        }), validate("# don't\nINSERT INTO t VALUES (1);\n", ";", "postgresql"));
+    }
+
+    /**
+     * Tests empty statements and delimiters that aren't at the
+     * end of their line.
+     * @throws IOException on error
+     */
+    public void testDelimiters()
+        throws IOException {
+        assertEquals(Arrays.asList(new String[] {
+            "test.sql:1: the delimiter isn't at the end of the line, "
+                + "the statement continues on the next line",
+            "test.sql:3: empty statement",
+        }), validate(
+            "SELECT 1; \n"
+            + "SELECT 2;\n"
+            + "  ;\n", ";", "generic"));
+
+        assertEquals(Arrays.asList(new String[] {
+            "test.sql:1: no line ends with the delimiter \"GO\", but 2 lines end with \";\"",
+        }), validate("SELECT 1;\nSELECT 2;\n", "GO", "sqlserver"));
+        assertEquals(Collections.EMPTY_LIST, validate(
+            "SELECT 1;\nSELECT 2;\nGO\nSELECT 'GO'\nGO", "GO", "sqlserver"));
+    }
+
+    /**
+     * Tests text that isn't valid in the script encoding.
+     * @throws IOException on error
+     */
+    public void testInvalidEncoding()
+        throws IOException {
+        byte[] bytes = {'S', 'E', 'L', 'E', 'C', 'T', ' ', '1', ';', '\n',
+            'S', 'E', 'L', 'E', 'C', 'T', ' ', '\'', (byte)0xff, '\'', ';', '\n'};
+        assertEquals(Arrays.asList(new String[] {
+            "test.sql:2: not valid UTF-8 text",
+        }), new ScriptValidator(";", "UTF-8", SqlDialect.GENERIC)
+            .validate(new MemoryScript("test.sql", bytes)));
+    }
+
+    /**
+     * Tests that the problems of scripts validated in parallel
+     * come out in script order.
+     * @throws IOException on error
+     */
+    public void testParallelOrder()
+        throws IOException {
+        List scripts = new ArrayList();
+        for (int i=0; i<10; i++) {
+            scripts.add(new MemoryScript(
+                i+".sql", (i%2==0 ? "SELECT 1;\n" : ";\n").getBytes("UTF-8")));
+        }
+        List problems = new ScriptValidator(";", "UTF-8", SqlDialect.GENERIC)
+            .validate(scripts);
+        assertEquals(Arrays.asList(new String[] {
+            "1.sql:1: empty statement",
+            "3.sql:1: empty statement",
+            "5.sql:1: empty statement",
+            "7.sql:1: empty statement",
+            "9.sql:1: empty statement",
+        }), problems);
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.nesting.maven2.db;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests telling code, literals, identifiers and comments apart.
+ */
+public class SqlLexerTest
+    extends TestCase {
+
+    /**
+     * Lexes a line.
+     * @param lexer the lexer
+     * @param line the line
+     * @return a character per character of the line: c for code,
+     *      ' for the opening quote, s for literals, q for a quote
+     *      that may end the literal, d for a doubled quote, e for
+     *      escapes, i for identifiers, l and b for comments, $ for
+     *      dollar quotes, with a + when a literal ended before the
+     *      character
+     */
+    private static String lex(SqlLexer lexer, String line) {
+        String kinds = "c'sqdeilb$";
+        StringBuffer ret = new StringBuffer();
+        for (int i=0; i<line.length(); i++) {
+            int kind = lexer.next(line.charAt(i));
+            if ((kind & SqlLexer.LITERAL_ENDED)!=0) {
+                ret.append('+');
+            }
+            ret.append(kinds.charAt(kind & ~SqlLexer.LITERAL_ENDED));
+        }
+        return ret.toString();
+    }
+
+    /**
+     * Tests literals, identifiers and comments.
+     */
+    public void testKinds() {
+        SqlLexer lexer = new SqlLexer(";", SqlDialect.GENERIC);
+        assertEquals("cc'sqdq+cc", lex(lexer, "a '1''' b"));
+        assertEquals("ciiic", lex(lexer, "x\"'\"y"));
+        assertEquals("cllll", lex(lexer, "--'--"));
+        assertEquals(SqlLexer.LINE_COMMENT, lexer.getState());
+        assertEquals(0, lexer.endLine());
+        assertEquals(SqlLexer.NORMAL, lexer.getState());
+        assertEquals("cbbbbbc", lex(lexer, "/*/'*/x"));
+    }
+
+    /**
+     * Tests backslash escapes, depending on the dialect and
+     * on the literal's prefix.
+     */
+    public void testEscapes() {
+        SqlLexer lexer = new SqlLexer(";", SqlDialect.forName("mysql"));
+        assertEquals("'seesq+c", lex(lexer, "'a\\'b';"));
+        lexer = new SqlLexer(";", SqlDialect.GENERIC);
+        assertEquals("'ssq+c'", lex(lexer, "'a\\'b'"));
+        lexer = new SqlLexer(";", SqlDialect.GENERIC);
+        assertEquals("c'seesq+c", lex(lexer, "E'a\\'b';"));
+        lexer = new SqlLexer(";", SqlDialect.GENERIC);
+        assertEquals("cc'ssq+c", lex(lexer, "DE'a\\';"));
+    }
+
+    /**
+     * Tests # comments, which only mysql and mariadb have.
+     */
+    public void testHashComments() {
+        SqlLexer lexer = new SqlLexer(";", SqlDialect.forName("mysql"));
+        assertEquals("'q+lll", lex(lexer, "''# '"));
+        assertEquals(0, lexer.endLine());
+        assertEquals(SqlLexer.NORMAL, lexer.getState());
+        lexer = new SqlLexer(";", SqlDialect.forName("postgresql"));
+        assertEquals("ccc'", lex(lexer, "1#2'"));
+    }
+
+    /**
+     * Tests dollar quotes, which only postgresql has, their
+     * tags, and that they hide the delimiter.
+     */
+    public void testDollarQuotes() {
+        SqlLexer lexer = new SqlLexer(";", SqlDialect.forName("postgresql"));
+        assertEquals("c$$$", lex(lexer, "$$'-"));
+        lexer.endLine();
+        assertEquals("$$$$$", lex(lexer, "a'; ;"));
+        assertFalse(lexer.endsWithDelimiter());
+        lexer.endLine();
+        assertEquals(SqlLexer.DOLLAR_QUOTE, lexer.getState());
+        assertEquals("$$cc", lex(lexer, "$$;;"));
+        assertTrue(lexer.endsWithDelimiter());
+        lexer.endLine();
+
+        assertEquals("cc$$$$$$$$$$$c", lex(lexer, "$f$$$ $g$ $f$;"));
+        assertEquals(SqlLexer.NORMAL, lexer.getState());
+        assertEquals("ccccc'", lex(lexer, "$1 a$'"));
+        lexer.endStatement();
+        lexer = new SqlLexer(";", SqlDialect.GENERIC);
+        assertEquals("cc'", lex(lexer, "$$'"));
+    }
+
+    /**
+     * Tests matching the delimiter at the end of the line.
+     */
+    public void testDelimiter() {
+        SqlLexer lexer = new SqlLexer("GO", SqlDialect.GENERIC);
+        lex(lexer, "SELECT 1 GO");
+        assertTrue(lexer.endsWithDelimiter());
+        lex(lexer, " ");
+        assertFalse(lexer.endsWithDelimiter());
+        lexer.endLine();
+        lex(lexer, "O");
+        assertFalse("matched across lines", lexer.endsWithDelimiter());
+        lexer.endLine();
+        lex(lexer, "'GO");
+        assertTrue(lexer.endsWithDelimiter());
+        assertEquals(SqlLexer.STRING, lexer.getState());
+        lexer.endStatement();
+        assertEquals(SqlLexer.NORMAL, lexer.getState());
+    }
+
+    /**
+     * Tests that a literal ending with the line is reported
+     * by the end of the line.
+     */
+    public void testLiteralEndsWithLine() {
+        SqlLexer lexer = new SqlLexer(";", SqlDialect.GENERIC);
+        lex(lexer, "'abc'");
+        assertEquals(SqlLexer.STRING_QUOTE, lexer.getState());
+        assertEquals(SqlLexer.LITERAL_ENDED, lexer.endLine());
+        assertEquals(SqlLexer.NORMAL, lexer.getState());
+    }
+
+    /**
+     * Tests finding dialects by jdbc url.
+     */
+    public void testDialectForUrl() {
+        assertTrue(SqlDialect.forUrl("jdbc:mysql://localhost/db").hasBackslashEscapes());
+        assertEquals("postgresql", SqlDialect.forUrl("jdbc:postgresql:db").getName());
+        assertEquals("oracle", SqlDialect.forUrl("jdbc:oracle:thin:@host:1521:db").getName());
+        assertSame(SqlDialect.GENERIC, SqlDialect.forUrl("jdbc:unknown:db"));
+        assertSame(SqlDialect.GENERIC, SqlDialect.forUrl(null));
+        assertFalse(SqlDialect.GENERIC.hasBackslashEscapes());
+        assertTrue(SqlDialect.forName("mariadb").hasHashComments());
+        assertFalse(SqlDialect.forName("postgresql").hasHashComments());
+        assertTrue(SqlDialect.forName("postgresql").hasDollarQuotes());
+        assertFalse(SqlDialect.GENERIC.hasDollarQuotes());
+    }
+
+}
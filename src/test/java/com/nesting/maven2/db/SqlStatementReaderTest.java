@@ -0,0 +1,389 @@
+package com.nesting.maven2.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Tests splitting scripts into statements and spilling
+ * large literals.
+ */
+public class SqlStatementReaderTest
+    extends TestCase {
+
+    /**
+     * Reads all of the statements of a script.
+     * @param script the script
+     * @param delimiter the delimiter
+     * @param lobThreshold the lob threshold
+     * @return the {@link SqlStatement}s
+     * @throws IOException on error
+     */
+    static List read(String script, String delimiter, int lobThreshold)
+        throws IOException {
+        return read(script, delimiter, lobThreshold, SqlDialect.GENERIC);
+    }
+
+    /**
+     * Reads all of the statements of a script.
+     * @param script the script
+     * @param delimiter the delimiter
+     * @param lobThreshold the lob threshold
+     * @param dialect the dialect
+     * @return the {@link SqlStatement}s
+     * @throws IOException on error
+     */
+    static List read(
+        String script, String delimiter, int lobThreshold, SqlDialect dialect)
+        throws IOException {
+        SqlStatementSource in = new SqlStatementReader(
+            new StringReader(script), delimiter, lobThreshold, dialect);
+        List ret = new ArrayList();
+        try {
+            SqlStatement sql;
+            while ((sql = in.next())!=null) {
+                ret.add(sql);
+            }
+        } finally {
+            in.close();
+        }
+        return ret;
+    }
+
+    /**
+     * @param statements the {@link SqlStatement}s
+     * @param index the index of a statement
+     * @return its trimmed sql
+     */
+    private static String sql(List statements, int index) {
+        return ((SqlStatement)statements.get(index)).getSql().trim();
+    }
+
+    /**
+     * Tests that statements end with the lines ending with
+     * the delimiter.
+     * @throws IOException on error
+     */
+    public void testSplitsOnDelimiterAtEndOfLine()
+        throws IOException {
+        List statements = read(
+            "CREATE TABLE t (a INT);\n"
+            + "INSERT INTO t VALUES (1); INSERT INTO t\n"
+            + "  VALUES (2);\r\n"
+            + "\n"
+            + "DELETE FROM t", ";", 0);
+        assertEquals(3, statements.size());
+        assertEquals("CREATE TABLE t (a INT)", sql(statements, 0));
+        assertEquals("INSERT INTO t VALUES (1); INSERT INTO t\n  VALUES (2)",
+            sql(statements, 1));
+        assertEquals("DELETE FROM t", sql(statements, 2));
+        assertEquals(1, ((SqlStatement)statements.get(0)).getLine());
+        assertEquals(2, ((SqlStatement)statements.get(1)).getLine());
+        assertEquals(5, ((SqlStatement)statements.get(2)).getLine());
+    }
+
+    /**
+     * Tests other delimiters.
+     * @throws IOException on error
+     */
+    public void testOtherDelimiter()
+        throws IOException {
+        List statements = read(
+            "CREATE PROCEDURE p AS\nBEGIN\n  SELECT 1;\nEND\nGO\nSELECT 2\nGO\n",
+            "GO", 0);
+        assertEquals(2, statements.size());
+        assertEquals("CREATE PROCEDURE p AS\nBEGIN\n  SELECT 1;\nEND",
+            sql(statements, 0));
+        assertEquals("SELECT 2", sql(statements, 1));
+    }
+
+    /**
+     * Tests that doubled quotes stay escaped and that comments
+     * and literals are kept.
+     * @throws IOException on error
+     */
+    public void testLiteralsAndComments()
+        throws IOException {
+        List statements = read(
+            "-- leading comment\n"
+            + "INSERT INTO t VALUES ('it''s;', /* note */ 'x');\n", ";", 0);
+        assertEquals(1, statements.size());
+        assertEquals("-- leading comment\nINSERT INTO t VALUES ('it''s;', /* note */ 'x')",
+            sql(statements, 0));
+        assertEquals("comment lines don't start the statement",
+            1, ((SqlStatement)statements.get(0)).getLine());
+    }
+
+    /**
+     * Tests that backslash escaped quotes don't end literals
+     * for the databases that take them, and that literals are
+     * kept as written.
+     * @throws IOException on error
+     */
+    public void testBackslashEscapes()
+        throws IOException {
+        String script = "INSERT INTO t VALUES ('O\\'Brien;', 'C:\\\\');\n"
+            + "SELECT 1;\n";
+        List statements = read(script, ";", 0, SqlDialect.forName("mysql"));
+        assertEquals(2, statements.size());
+        assertEquals("INSERT INTO t VALUES ('O\\'Brien;', 'C:\\\\')",
+            sql(statements, 0));
+
+        statements = read("SELECT E'it\\'s', 'a\\';\n", ";", 0);
+        assertEquals(1, statements.size());
+        assertEquals("SELECT E'it\\'s', 'a\\'", sql(statements, 0));
+    }
+
+    /**
+     * Tests that spilled literals have their escapes decoded.
+     * @throws IOException on error
+     */
+    public void testSpillsEscapedLiterals()
+        throws IOException {
+        List statements = read(
+            "INSERT INTO t VALUES ('line\\none\\\\two\\'s ''q'' \\%\\z');\n",
+            ";", 5, SqlDialect.forName("mysql"));
+        SqlStatement statement = (SqlStatement)statements.get(0);
+        assertEquals("INSERT INTO t VALUES (?)", statement.getSql().trim());
+        assertEquals("line\none\\two's 'q' \\%z",
+            lobText((SqlLob)statement.getLobs().get(0)));
+        statement.dispose();
+
+        statements = read(
+            "INSERT INTO t VALUES (E'\\101\\x42\\u0043\\t\\'\\q', 'xx\\nyy');\n",
+            ";", 5, SqlDialect.forName("postgresql"));
+        statement = (SqlStatement)statements.get(0);
+        assertEquals("INSERT INTO t VALUES (?, ?)", statement.getSql().trim());
+        assertEquals("ABC\t'q", lobText((SqlLob)statement.getLobs().get(0)));
+        assertEquals("xx\\nyy", lobText((SqlLob)statement.getLobs().get(1)));
+        statement.dispose();
+    }
+
+    /**
+     * Tests that quotes in quoted identifiers don't start
+     * literals, and that a line ending with the delimiter ends
+     * whatever is left open.
+     * @throws IOException on error
+     */
+    public void testIdentifiersAndOpenComments()
+        throws IOException {
+        List statements = read(
+            "INSERT INTO \"it's\" VALUES ('a long value');\n"
+            + "SELECT 1 /* unterminated;\n"
+            + "INSERT INTO t VALUES ('a long value');\n", ";", 5);
+        assertEquals(3, statements.size());
+        assertEquals("INSERT INTO \"it's\" VALUES (?)", sql(statements, 0));
+        assertEquals("INSERT INTO t VALUES (?)", sql(statements, 2));
+        for (int i=0; i<statements.size(); i++) {
+            ((SqlStatement)statements.get(i)).dispose();
+        }
+    }
+
+    /**
+     * @param lob a lob
+     * @return its text
+     * @throws IOException on error
+     */
+    private static String lobText(SqlLob lob)
+        throws IOException {
+        Reader reader = lob.openReader();
+        try {
+            return IOUtils.toString(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Tests that a long string literal is spilled and replaced
+     * by a parameter, and that disposing deletes the file.
+     * @throws IOException on error
+     */
+    public void testSpillsLongLiteral()
+        throws IOException {
+        List statements = read(
+            "INSERT INTO t VALUES (1, 'it''s a long value');\n", ";", 5);
+        SqlStatement statement = (SqlStatement)statements.get(0);
+        assertEquals("INSERT INTO t VALUES (1, ?)", statement.getSql().trim());
+        assertEquals(1, statement.getLobs().size());
+        SqlLob lob = (SqlLob)statement.getLobs().get(0);
+        assertFalse(lob.isBinary());
+        assertEquals(17, lob.getLength());
+        Reader reader = lob.openReader();
+        try {
+            assertEquals("it's a long value", IOUtils.toString(reader));
+        } finally {
+            reader.close();
+        }
+        File file = lob.getFile();
+        assertTrue(file.exists());
+        statement.dispose();
+        assertFalse(file.exists());
+    }
+
+    /**
+     * Tests that the prefix of national character and escape
+     * string literals is replaced along with the literal.
+     * @throws IOException on error
+     */
+    public void testSpillsPrefixedLiterals()
+        throws IOException {
+        List statements = read(
+            "INSERT INTO t VALUES (N'national value', n'lower case');\n"
+            + "UPDATE t SET a = E'escape string' WHERE b = 1;\n", ";", 5);
+        SqlStatement insert = (SqlStatement)statements.get(0);
+        assertEquals("INSERT INTO t VALUES (?, ?)", insert.getSql().trim());
+        assertEquals(2, insert.getLobs().size());
+        SqlStatement update = (SqlStatement)statements.get(1);
+        assertEquals("UPDATE t SET a = ? WHERE b = 1", update.getSql().trim());
+        Reader reader = ((SqlLob)update.getLobs().get(0)).openReader();
+        try {
+            assertEquals("escape string", IOUtils.toString(reader));
+        } finally {
+            reader.close();
+        }
+        insert.dispose();
+        update.dispose();
+    }
+
+    /**
+     * Tests that hex literals are spilled as binary values.
+     * @throws IOException on error
+     */
+    public void testSpillsHexLiteral()
+        throws IOException {
+        List statements = read(
+            "INSERT INTO t VALUES (X'00ff10ab');\n", ";", 4);
+        SqlStatement statement = (SqlStatement)statements.get(0);
+        assertEquals("INSERT INTO t VALUES (?)", statement.getSql().trim());
+        SqlLob lob = (SqlLob)statement.getLobs().get(0);
+        assertTrue(lob.isBinary());
+        assertEquals(4, lob.getLength());
+        InputStream ips = lob.openStream();
+        try {
+            byte[] bytes = IOUtils.toByteArray(ips);
+            assertEquals(4, bytes.length);
+            assertEquals(0x00, bytes[0] & 0xff);
+            assertEquals(0xff, bytes[1] & 0xff);
+            assertEquals(0x10, bytes[2] & 0xff);
+            assertEquals(0xab, bytes[3] & 0xff);
+        } finally {
+            ips.close();
+        }
+        statement.dispose();
+    }
+
+    /**
+     * Tests the literals that aren't spilled: those of other
+     * statements and those with other prefixes.
+     * @throws IOException on error
+     */
+    public void testDoesNotSpill()
+        throws IOException {
+        List statements = read(
+            "SELECT 'a long value' FROM t;\n"
+            + "INSERT INTO t VALUES (_utf8'a long value', B'010101010101');\n"
+            + "INSERT INTO t VALUES (Q'[a long value]');\n", ";", 5);
+        assertEquals(3, statements.size());
+        for (int i=0; i<statements.size(); i++) {
+            assertFalse(((SqlStatement)statements.get(i)).hasLobs());
+        }
+        assertEquals("INSERT INTO t VALUES (_utf8'a long value', B'010101010101')",
+            sql(statements, 1));
+    }
+
+    /**
+     * Tests that a line ending with the delimiter in a literal
+     * ends the statement whether or not the literal is spilled,
+     * so that the lob threshold never decides what's executed.
+     * @throws IOException on error
+     */
+    public void testDelimiterInLiteralWhateverItsLength()
+        throws IOException {
+        File dir = new File(System.getProperty("java.io.tmpdir"));
+        int before = countLobFiles(dir);
+        String script = "INSERT INTO t VALUES ('abcdefgh;\nmore');\nSELECT 1;\n";
+        int[] thresholds = {0, 5, 50};
+        for (int i=0; i<thresholds.length; i++) {
+            List statements = read(script, ";", thresholds[i]);
+            assertEquals(3, statements.size());
+            assertEquals("INSERT INTO t VALUES ('abcdefgh", sql(statements, 0));
+            assertEquals("more')", sql(statements, 1));
+            assertEquals("SELECT 1", sql(statements, 2));
+            assertFalse(((SqlStatement)statements.get(0)).hasLobs());
+        }
+        assertEquals(before, countLobFiles(dir));
+    }
+
+    /**
+     * Tests that a dollar quoted function body is read as is,
+     * the delimiters of its lines included.
+     * @throws IOException on error
+     */
+    public void testDollarQuotedBody()
+        throws IOException {
+        String body = "CREATE FUNCTION f() RETURNS text AS $$\n"
+            + "BEGIN\n"
+            + "    RETURN 'don''t';\n"
+            + "END;\n"
+            + "$$ LANGUAGE plpgsql";
+        List statements = read(body+";\nSELECT f();\n", ";", 5,
+            SqlDialect.forName("postgresql"));
+        assertEquals(2, statements.size());
+        assertEquals(body, sql(statements, 0));
+        assertFalse(((SqlStatement)statements.get(0)).hasLobs());
+        assertEquals("SELECT f()", sql(statements, 1));
+    }
+
+    /**
+     * Tests that the spill files of a statement that's never
+     * returned are deleted when the reader is closed.
+     * @throws IOException on error
+     */
+    public void testCloseDeletesPartialSpill()
+        throws IOException {
+        File dir = new File(System.getProperty("java.io.tmpdir"));
+        int before = countLobFiles(dir);
+        SqlStatementReader in = new SqlStatementReader(new StringReader(
+            "INSERT INTO t VALUES ('a long value', 'another long value"),
+            ";", 5);
+        in.close();
+        assertEquals(before, countLobFiles(dir));
+    }
+
+    /**
+     * @param dir a directory
+     * @return the number of spill files in it
+     */
+    static int countLobFiles(File dir) {
+        File[] files = dir.listFiles();
+        int ret = 0;
+        for (int i=0; files!=null && i<files.length; i++) {
+            if (files[i].getName().startsWith("dbLob-")) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Tests finding the first keyword.
+     */
+    public void testFirstKeyword() {
+        assertEquals("INSERT", SqlStatementReader.firstKeyword(
+            "  -- insert test data\n /* update */ INSERT INTO t"));
+        assertEquals("", SqlStatementReader.firstKeyword(" -- nothing"));
+        assertEquals("", SqlStatementReader.firstKeyword("/* unterminated *"));
+        assertEquals(10, SqlStatementReader.skipComments("-- a\n/**/ x", 0));
+        assertEquals(3, SqlStatementReader.skipComments("x  y", 1));
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.nesting.maven2.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests warning about and cancelling long running statements.
+ */
+public class StatementWatchdogTest
+    extends TestCase {
+
+    private RecordingLog log;
+    private StatementWatchdog watchdog;
+    private CountDownLatch cancelling;
+    private CountDownLatch release;
+    private int cancels;
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void setUp() {
+        log = new RecordingLog();
+        watchdog = new StatementWatchdog(log, 0, 10);
+        cancelling = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void tearDown() {
+        release.countDown();
+        watchdog.stop();
+    }
+
+    /**
+     * @return a statement whose cancel() blocks until released
+     */
+    private Statement statement() {
+        return (Statement)FakeConnection.proxy(Statement.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args)
+                throws InterruptedException {
+                if (method.getName().equals("cancel")) {
+                    synchronized (StatementWatchdogTest.this) {
+                        cancels++;
+                    }
+                    cancelling.countDown();
+                    release.await();
+                }
+                return FakeConnection.defaultValue(method);
+            } });
+    }
+
+    /**
+     * Tests that a statement running past its timeout is
+     * cancelled and reported as such.
+     * @throws Exception on error
+     */
+    public void testCancelsAfterTimeout()
+        throws Exception {
+        release.countDown();
+        watchdog.watch(statement(), "test.sql:1", 1);
+        assertTrue(cancelling.await(5, TimeUnit.SECONDS));
+        assertTrue(watchdog.finish());
+        assertTrue(log.contains("ERROR", "test.sql:1 exceeded its timeout of 1 second(s)"));
+    }
+
+    /**
+     * Tests that a statement finishing while it's being
+     * cancelled can't be reused until the cancel is done, so
+     * that the cancel never hits its next execution.
+     * @throws Exception on error
+     */
+    public void testCancelRacingWithReuse()
+        throws Exception {
+        Statement st = statement();
+        watchdog.watch(st, "test.sql:1", 1);
+        assertTrue(cancelling.await(5, TimeUnit.SECONDS));
+
+        // the statement completes while cancel() is blocked
+        final boolean[] cancelled = new boolean[1];
+        Thread executing = new Thread() {
+            public void run() {
+                cancelled[0] = watchdog.finish();
+            } };
+        executing.start();
+        executing.join(200);
+        assertTrue("finished while being cancelled", executing.isAlive());
+        release.countDown();
+        executing.join(5000);
+        assertFalse(executing.isAlive());
+        assertTrue(cancelled[0]);
+
+        // the next execution isn't cancelled
+        watchdog.watch(st, "test.sql:2", 0);
+        Thread.sleep(100);
+        assertFalse(watchdog.finish());
+        synchronized (this) {
+            assertEquals(1, cancels);
+        }
+    }
+
+    /**
+     * Tests warning about slow statements.
+     * @throws Exception on error
+     */
+    public void testWarnsAboutSlowStatements()
+        throws Exception {
+        watchdog.stop();
+        watchdog = new StatementWatchdog(log, 1, 10);
+        watchdog.watch(statement(), "test.sql:3", 0);
+        Thread.sleep(1200);
+        assertFalse(watchdog.finish());
+        assertTrue(log.contains("WARN", "test.sql:3 has been running for 1 second(s)"));
+        synchronized (this) {
+            assertEquals(0, cancels);
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.nesting.maven2.db;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests finding the tables written to by statements.
+ */
+public class TableTrackerTest
+    extends TestCase {
+
+    /**
+     * Tests the tables of the different statements.
+     */
+    public void testTracksTables() {
+        TableTracker tracker = new TableTracker();
+        tracker.track("INSERT INTO a VALUES (1)");
+        tracker.track("insert low_priority ignore into `b` (x) values (1)");
+        tracker.track("UPDATE ONLY c SET x = 1");
+        tracker.track("DELETE FROM s.d WHERE x = 1");
+        tracker.track("MERGE INTO e USING f ON (1 = 1)");
+        tracker.track("REPLACE INTO a VALUES (2)");
+        tracker.track("SELECT * FROM g");
+        tracker.track("CREATE TABLE h (x INT)");
+        assertEquals(Arrays.asList(new String[] {
+            "a", "`b`", "c", "s.d", "e",
+        }), tracker.getTables());
+    }
+
+    /**
+     * Tests that the verb isn't looked for in comments or in
+     * identifiers before it.
+     */
+    public void testCommentPrefixedStatements() {
+        TableTracker tracker = new TableTracker();
+        tracker.track("-- insert test data\nINSERT INTO foo VALUES (1)");
+        tracker.track("/* update the deleted rows */ UPDATE bar SET x = 1");
+        tracker.track("  -- delete\n  /* from x */\n DELETE /* from y */ FROM baz");
+        tracker.track("-- only a comment");
+        assertEquals(Arrays.asList(new String[] {
+            "foo", "bar", "baz",
+        }), tracker.getTables());
+    }
+
+}
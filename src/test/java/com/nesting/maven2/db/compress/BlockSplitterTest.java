@@ -0,0 +1,294 @@
+package com.nesting.maven2.db.compress;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Tests splitting compressed streams into blocks and
+ * decompressing them in parallel.
+ */
+public class BlockSplitterTest
+    extends TestCase {
+
+    private static final int MEMBERS = 40;
+
+    /**
+     * Returns the text of the given member of a test stream.
+     * @param member the member
+     * @return the text
+     */
+    private static String text(int member) {
+        StringBuffer ret = new StringBuffer();
+        for (int i=0; i<100; i++) {
+            ret.append("INSERT INTO t VALUES (").append(member*1000+i).append(");\n");
+        }
+        return ret.toString();
+    }
+
+    /**
+     * Compresses the given data into a BGZF member, as bgzip does.
+     * @param data the data
+     * @return the member
+     * @throws IOException on error
+     */
+    private static byte[] bgzf(byte[] data)
+        throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        while (!deflater.finished()) {
+            deflated.write(buf, 0, deflater.deflate(buf));
+        }
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        ByteArrayOutputStream ret = new ByteArrayOutputStream();
+        int blockSize = 18+deflated.size()+8;
+        ret.write(new byte[] {0x1f, (byte)0x8b, 8, 4, 0, 0, 0, 0, 0, (byte)0xff,
+            6, 0, 'B', 'C', 2, 0});
+        writeLittleEndian(ret, blockSize-1, 2);
+        deflated.writeTo(ret);
+        writeLittleEndian(ret, crc.getValue(), 4);
+        writeLittleEndian(ret, data.length, 4);
+        return ret.toByteArray();
+    }
+
+    /**
+     * Writes a little endian unsigned integer.
+     * @param out where to write it
+     * @param value the value
+     * @param len the size in bytes
+     */
+    private static void writeLittleEndian(ByteArrayOutputStream out, long value, int len) {
+        for (int i=0; i<len; i++) {
+            out.write((int)(value>>>(8*i)) & 0xff);
+        }
+    }
+
+    /**
+     * Compresses the given data into a bzip2 stream.
+     * @param data the data
+     * @return the stream
+     * @throws IOException on error
+     */
+    private static byte[] bzip2(byte[] data)
+        throws IOException {
+        ByteArrayOutputStream ret = new ByteArrayOutputStream();
+        BZip2CompressorOutputStream out = new BZip2CompressorOutputStream(ret, 1);
+        out.write(data);
+        out.close();
+        return ret.toByteArray();
+    }
+
+    /**
+     * Decompresses the given stream the way scripts are.
+     * @param compressed the compressed stream
+     * @param threads the number of threads
+     * @return the decompressed text
+     * @throws IOException on error
+     */
+    private static String decompress(byte[] compressed, int threads)
+        throws IOException {
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(compressed));
+        Decompressor decompressor = Decompressors.detect(in);
+        assertNotNull(decompressor);
+        InputStream ips = Decompressors.open(in, decompressor, threads);
+        try {
+            return new String(IOUtils.toByteArray(ips), "UTF-8");
+        } finally {
+            ips.close();
+        }
+    }
+
+    /**
+     * Tests that a BGZF stream is split into its members.
+     * @throws IOException on error
+     */
+    public void testBgzfSplitsMembers()
+        throws IOException {
+        byte[] first = bgzf(text(0).getBytes("UTF-8"));
+        byte[] second = bgzf(text(1).getBytes("UTF-8"));
+        byte[] eof = bgzf(new byte[0]);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(first);
+        stream.write(second);
+        stream.write(eof);
+
+        BlockSplitter splitter = new BgzfBlockSplitter(
+            new ByteArrayInputStream(stream.toByteArray()),
+            Decompressors.MAX_BLOCK_SIZE);
+        assertTrue(Arrays.equals(first, splitter.nextBlock()));
+        assertTrue(Arrays.equals(second, splitter.nextBlock()));
+        assertTrue(Arrays.equals(eof, splitter.nextBlock()));
+        assertNull(splitter.nextBlock());
+    }
+
+    /**
+     * Tests that the members of a BGZF stream come out in
+     * order when decompressed in parallel.
+     * @throws IOException on error
+     */
+    public void testBgzfParallel()
+        throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        StringBuffer expected = new StringBuffer();
+        for (int i=0; i<MEMBERS; i++) {
+            stream.write(bgzf(text(i).getBytes("UTF-8")));
+            expected.append(text(i));
+        }
+        assertEquals(expected.toString(), decompress(stream.toByteArray(), 4));
+        assertEquals(expected.toString(), decompress(stream.toByteArray(), 1));
+    }
+
+    /**
+     * Tests that the BGZF output stream writes members that
+     * split and decompress in parallel, whether or not their
+     * data can be compressed.
+     * @throws IOException on error
+     */
+    public void testBgzfOutputStream()
+        throws IOException {
+        byte[] data = new byte[300000];
+        new Random(1).nextBytes(data);
+        byte[] text = text(0).getBytes("UTF-8");
+        System.arraycopy(text, 0, data, 0, text.length);
+        for (int i=150000; i<data.length; i++) {
+            data[i] = text[i % text.length];
+        }
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        BgzfOutputStream out = new BgzfOutputStream(stream);
+        out.write(data, 0, 100);
+        out.write(data[100]);
+        out.write(data, 101, data.length-101);
+        out.close();
+        stream.write(BgzfOutputStream.EOF);
+
+        BlockSplitter splitter = new BgzfBlockSplitter(
+            new ByteArrayInputStream(stream.toByteArray()),
+            Decompressors.MAX_BLOCK_SIZE);
+        int members = 0;
+        for (byte[] block = splitter.nextBlock(); block!=null;
+            block = splitter.nextBlock()) {
+            assertTrue(block.length<=0x10000);
+            members++;
+        }
+        assertEquals(data.length/0xff00+2, members);
+        assertEquals(new String(data, "UTF-8"), decompress(stream.toByteArray(), 4));
+        assertTrue(Arrays.equals(BgzfOutputStream.EOF, bgzf(new byte[0])));
+    }
+
+    /**
+     * Tests that a plain gzip member after BGZF members is
+     * decompressed sequentially.
+     * @throws IOException on error
+     */
+    public void testPlainGzipFallsBack()
+        throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(bgzf(text(0).getBytes("UTF-8")));
+        GZIPOutputStream gzip = new GZIPOutputStream(stream);
+        gzip.write(text(1).getBytes("UTF-8"));
+        gzip.close();
+        assertEquals(text(0)+text(1), decompress(stream.toByteArray(), 3));
+
+        try {
+            BlockSplitter splitter = new BgzfBlockSplitter(
+                new ByteArrayInputStream(stream.toByteArray()),
+                Decompressors.MAX_BLOCK_SIZE);
+            splitter.nextBlock();
+            splitter.nextBlock();
+            fail("plain gzip member split");
+        } catch(UnsplittableBlockException ube) {
+            assertEquals(10+2, ube.getConsumed().length);
+        }
+    }
+
+    /**
+     * Tests that members bigger than the maximum block size are
+     * decompressed sequentially.
+     * @throws IOException on error
+     */
+    public void testBlockTooBig()
+        throws IOException {
+        byte[] member = bgzf(text(0).getBytes("UTF-8"));
+        BlockSplitter splitter = new BgzfBlockSplitter(
+            new ByteArrayInputStream(member), member.length-1);
+        try {
+            splitter.nextBlock();
+            fail("block bigger than the maximum split");
+        } catch(UnsplittableBlockException ube) {
+            assertTrue(ube.getConsumed().length<=member.length);
+        }
+    }
+
+    /**
+     * Tests that concatenated bzip2 streams, as written by
+     * pbzip2, are split into those streams.
+     * @throws IOException on error
+     */
+    public void testBzip2SplitsStreams()
+        throws IOException {
+        byte[] first = bzip2(text(0).getBytes("UTF-8"));
+        byte[] second = bzip2(text(1).getBytes("UTF-8"));
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(first);
+        stream.write(second);
+
+        BlockSplitter splitter = new Bzip2BlockSplitter(
+            new ByteArrayInputStream(stream.toByteArray()),
+            Decompressors.MAX_BLOCK_SIZE);
+        assertTrue(Arrays.equals(first, splitter.nextBlock()));
+        assertTrue(Arrays.equals(second, splitter.nextBlock()));
+        assertNull(splitter.nextBlock());
+
+        assertEquals(text(0)+text(1), decompress(stream.toByteArray(), 2));
+    }
+
+    /**
+     * Tests that the decompressing threads are daemon threads,
+     * so that a stream that isn't closed doesn't hold up the vm.
+     * @throws IOException on error
+     */
+    public void testDaemonThreads()
+        throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i=0; i<MEMBERS; i++) {
+            stream.write(bgzf(text(i).getBytes("UTF-8")));
+        }
+        InputStream in = new BufferedInputStream(
+            new ByteArrayInputStream(stream.toByteArray()));
+        InputStream ips = Decompressors.open(in, Decompressors.detect(in), 2);
+        try {
+            assertTrue(ips instanceof ParallelBlockInputStream);
+            assertTrue(ips.read()!=-1);
+            Thread[] threads = new Thread[Thread.activeCount()*2];
+            int found = 0;
+            for (int i=Thread.enumerate(threads)-1; i>=0; i--) {
+                if (threads[i].getName().equals("db-decompressor")) {
+                    assertTrue(threads[i].isDaemon());
+                    found++;
+                }
+            }
+            assertTrue(found>0);
+        } finally {
+            ips.close();
+        }
+    }
+
+}